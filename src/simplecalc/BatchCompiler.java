@@ -0,0 +1,272 @@
+package simplecalc;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compilador por lotes sin interfaz gráfica: compila todos los archivos .kt/.txt de un
+ * directorio (y sus subdirectorios) con Lexer -> Parser -> KotlinCodeGenerator, cada uno en
+ * su propia tarea, y reúne los resultados y diagnósticos en un reporte.
+ *
+ * Cada archivo se procesa en su propio hilo virtual, así que leer y escribir archivos no
+ * ocupa hilos de plataforma; la compilación en sí usa la CPU sin pausas, por eso sólo
+ * compilan a la vez tantos archivos como núcleos (un semáforo): con todas las compilaciones
+ * en curso a la vez sólo crecen la memoria y el trabajo del recolector. La compilación no
+ * comparte estado entre archivos (ni caché), así que el rendimiento escala con los núcleos.
+ *
+ * Uso: java -cp build/classes simplecalc.BatchCompiler <directorio> [--out <dir>] [--threads N] [--report <archivo>] [--watch]
+ *
+ *   --out      escribe el Kotlin optimizado de cada archivo correcto en <dir>, con la misma
+ *              estructura de subdirectorios (nombre.kt -> nombre.optimizado.kt)
+ *   --threads  compilaciones simultáneas (por defecto, los núcleos disponibles)
+ *   --report   escribe el reporte en un archivo en lugar de la salida estándar
+ *   --watch    después de la compilación inicial sigue vigilando el directorio y recompila
+ *              sólo los archivos que cambian (ver WatchCompiler)
+ *
+ * Termina con código 0 si todos los archivos compilaron, 1 si alguno tuvo errores y 2 si
+ * los argumentos no son válidos.
+ */
+public class BatchCompiler {
+
+    // Resultado de compilar un archivo (o de no poder leerlo)
+    public static class FileReport {
+        public final Path file;
+        public final boolean successful;
+        public final List<String> diagnostics;
+        public final int lines;
+        public final int programQuadruples;
+        public final long nanos; // Sólo la compilación: sin la lectura ni la espera de turno
+
+        FileReport(Path file, boolean successful, List<String> diagnostics, int lines, int programQuadruples, long nanos) {
+            this.file = file;
+            this.successful = successful;
+            this.diagnostics = diagnostics;
+            this.lines = lines;
+            this.programQuadruples = programQuadruples;
+            this.nanos = nanos;
+        }
+    }
+
+    private final Path sourceDirectory;
+    private final Path outputDirectory; // null: no se escribe el Kotlin generado
+    private final Path reportFile; // null: sin reporte en archivo (si está entre las fuentes, no se compila)
+    private final int parallelism;
+    private final Semaphore compilationPermits;
+    private final CompilerPipeline pipeline = new CompilerPipeline(); // Compartido por todos los hilos
+
+    public BatchCompiler(Path sourceDirectory, Path outputDirectory, int parallelism) {
+        this(sourceDirectory, outputDirectory, parallelism, null);
+    }
+
+    public BatchCompiler(Path sourceDirectory, Path outputDirectory, int parallelism, Path reportFile) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Número de compilaciones simultáneas inválido: " + parallelism);
+        }
+        this.sourceDirectory = sourceDirectory;
+        this.outputDirectory = outputDirectory;
+        this.reportFile = reportFile;
+        this.parallelism = parallelism;
+        this.compilationPermits = new Semaphore(parallelism);
+    }
+
+    public static void main(String[] args) {
+        Path source = null;
+        Path output = null;
+        Path report = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean watch = false;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--out":     output = Path.of(args[++i]); break;
+                    case "--report":  report = Path.of(args[++i]); break;
+                    case "--threads": threads = Integer.parseInt(args[++i]); break;
+                    case "--watch":   watch = true; break;
+                    default:
+                        if (source != null || args[i].startsWith("--")) {
+                            throw new IllegalArgumentException("Argumento no reconocido: " + args[i]);
+                        }
+                        source = Path.of(args[i]);
+                        break;
+                }
+            }
+            if (source == null || !Files.isDirectory(source) || threads < 1) {
+                throw new IllegalArgumentException("Se esperaba un directorio de fuentes.");
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println(e.getMessage() != null ? e.getMessage() : "Falta el valor de una opción.");
+            System.err.println("Uso: java simplecalc.BatchCompiler <directorio> [--out <dir>] [--threads N] [--report <archivo>] [--watch]");
+            System.exit(2);
+            return;
+        }
+
+        try {
+            BatchCompiler compiler = new BatchCompiler(source, output, threads, report);
+            long start = System.nanoTime();
+            List<FileReport> reports = compiler.compileAll();
+            long wallNanos = System.nanoTime() - start;
+
+            if (report != null) {
+                try (PrintStream out = new PrintStream(Files.newOutputStream(report), false, StandardCharsets.UTF_8)) {
+                    compiler.printReport(reports, wallNanos, out);
+                }
+                System.out.println("Reporte escrito en " + report.toAbsolutePath());
+            } else {
+                compiler.printReport(reports, wallNanos, System.out);
+            }
+            if (watch) {
+                new WatchCompiler(compiler, reports, report, System.out).run(); // Hasta que se interrumpa el proceso
+            }
+            System.exit(reports.stream().allMatch(r -> r.successful) ? 0 : 1);
+        } catch (InterruptedException e) {
+            System.exit(0);
+        } catch (IOException e) {
+            System.err.println("Error en la compilación por lotes: " + e.getMessage());
+            System.exit(2);
+        }
+    }
+
+    // Compila todos los archivos del directorio; el reporte sale en orden de ruta
+    public List<FileReport> compileAll() throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(sourceDirectory)) {
+            files = walk.filter(Files::isRegularFile)
+                        .filter(this::isSourceFile)
+                        .sorted()
+                        .collect(Collectors.toList());
+        }
+        return compileFiles(files);
+    }
+
+    // Compila los archivos indicados, cada uno en su hilo virtual; el reporte sale en el mismo orden
+    public List<FileReport> compileFiles(List<Path> files) throws IOException {
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            List<Future<FileReport>> futures = new ArrayList<>(files.size());
+            for (Path file : files) {
+                futures.add(executor.submit(() -> compileFile(file)));
+            }
+            List<FileReport> reports = new ArrayList<>(files.size());
+            for (Future<FileReport> future : futures) {
+                reports.add(future.get());
+            }
+            return reports;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Compilación por lotes interrumpida.", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Fallo inesperado en la compilación por lotes.", e.getCause()); // compileFile no lanza
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Nunca lanza: un archivo ilegible o un fallo interno del compilador quedan como diagnóstico
+    FileReport compileFile(Path file) {
+        long start = System.nanoTime();
+        try {
+            String sourceCode = Files.readString(file, StandardCharsets.UTF_8);
+            int lines = (int) sourceCode.lines().count();
+            CompilationResult result;
+            compilationPermits.acquire();
+            try {
+                start = System.nanoTime();
+                result = pipeline.compile(sourceCode);
+            } finally {
+                compilationPermits.release();
+            }
+            long nanos = System.nanoTime() - start;
+
+            List<String> diagnostics = new ArrayList<>();
+            for (Diagnostic diagnostic : result.getLexicalErrors()) {
+                diagnostics.add(diagnostic.format());
+            }
+            for (Diagnostic diagnostic : result.getParserErrors()) {
+                diagnostics.add(diagnostic.format());
+            }
+            if (result.isSuccessful() && outputDirectory != null) {
+                writeKotlin(file, result.getKotlinCode());
+            }
+            return new FileReport(file, result.isSuccessful(), diagnostics, lines,
+                                  result.isSuccessful() ? result.getProgramQuadruples().size() : 0, nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new FileReport(file, false, List.of("Compilación cancelada."), 0, 0, 0);
+        } catch (IOException | UncheckedIOException e) {
+            return new FileReport(file, false, List.of("Error de E/S: " + e.getMessage()), 0, 0, System.nanoTime() - start);
+        } catch (RuntimeException e) {
+            return new FileReport(file, false, List.of("Error interno del compilador: " + e), 0, 0, System.nanoTime() - start);
+        }
+    }
+
+    // Fuente a compilar: .kt o .txt que no sea una salida nuestra (--out puede estar dentro del directorio)
+    boolean isSourceFile(Path file) {
+        String name = file.getFileName().toString();
+        Path absolute = file.toAbsolutePath().normalize();
+        return (name.endsWith(".kt") || name.endsWith(".txt"))
+               && (outputDirectory == null || !absolute.startsWith(outputDirectory.toAbsolutePath().normalize()))
+               && (reportFile == null || !absolute.equals(reportFile.toAbsolutePath().normalize()));
+    }
+
+    Path getSourceDirectory() {
+        return sourceDirectory;
+    }
+
+    // Archivo de salida de un fuente (nombre.kt -> nombre.optimizado.kt); null si no hay --out
+    Path outputFile(Path file) {
+        if (outputDirectory == null) {
+            return null;
+        }
+        Path relative = sourceDirectory.relativize(file);
+        String name = relative.getFileName().toString();
+        String baseName = name.substring(0, name.lastIndexOf('.'));
+        return outputDirectory.resolve(relative).resolveSibling(baseName + ".optimizado.kt");
+    }
+
+    private void writeKotlin(Path file, String kotlinCode) throws IOException {
+        Path target = outputFile(file);
+        Files.createDirectories(target.getParent());
+        Files.writeString(target, kotlinCode, StandardCharsets.UTF_8);
+    }
+
+    public void printReport(List<FileReport> reports, long wallNanos, PrintStream out) {
+        out.println("=== Compilación por lotes: " + sourceDirectory.toAbsolutePath() + " ===");
+        long compileNanos = 0;
+        long lines = 0;
+        int failed = 0;
+        for (FileReport report : reports) {
+            compileNanos += report.nanos;
+            lines += report.lines;
+            out.printf("%-5s %s  (%d líneas, %d cuádruplos, %.2f ms)%n", report.successful ? "OK" : "ERROR",
+                       sourceDirectory.relativize(report.file), report.lines, report.programQuadruples, report.nanos / 1e6);
+            if (!report.successful) {
+                failed++;
+                for (String diagnostic : report.diagnostics) {
+                    out.println("        " + diagnostic);
+                }
+            }
+        }
+        double wallSeconds = wallNanos / 1e9;
+        out.println();
+        out.printf("Archivos: %d (%d correctos, %d con errores)%n", reports.size(), reports.size() - failed, failed);
+        out.printf("Hilos virtuales, %d compilaciones simultáneas, %d núcleos disponibles%n",
+                   parallelism, Runtime.getRuntime().availableProcessors());
+        out.printf("Tiempo total: %.2f ms (suma de compilaciones %.2f ms, paralelismo efectivo %.2fx)%n",
+                   wallNanos / 1e6, compileNanos / 1e6, wallNanos > 0 ? compileNanos / (double) wallNanos : 0);
+        out.printf("Rendimiento: %.1f archivos/s, %.0f líneas/s%n",
+                   wallSeconds > 0 ? reports.size() / wallSeconds : 0, wallSeconds > 0 ? lines / wallSeconds : 0);
+    }
+}
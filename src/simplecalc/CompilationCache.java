@@ -0,0 +1,173 @@
+package simplecalc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Caché de compilaciones indexada por el contenido: la clave es el SHA-256 del texto fuente
+ * junto con las opciones del compilador, así que volver a pulsar un botón sin haber editado
+ * nada devuelve el CompilationResult anterior sin lexer ni parser.
+ *
+ * En memoria es un LRU acotado (LinkedHashMap en orden de acceso). Opcionalmente guarda cada
+ * resultado serializado en un directorio (un archivo por clave), que sobrevive entre
+ * ejecuciones; un archivo ilegible o de otra versión se trata como fallo de caché.
+ *
+ * Cuando el texto sí cambió, la compilación reutiliza lo que pueda de las sentencias que no
+ * cambiaron a través de la StatementCache compartida.
+ */
+public class CompilationCache {
+
+    // Cambia cuando cambia el compilador: invalida lo guardado en disco por versiones anteriores
+    private static final String COMPILER_VERSION = "simplecalc-6";
+    private static final String FILE_SUFFIX = ".sccache";
+    private static final String DEFAULT_OPTIONS = "optimizado";
+
+    private final int maxEntries;
+    private final Path diskDirectory; // null: sólo memoria
+    private final Map<String, CompilationResult> entries;
+    private final StatementCache statementCache = new StatementCache();
+    private final CompilerPipeline pipeline = new CompilerPipeline(statementCache);
+
+    private long hits;
+    private long diskHits;
+    private long misses;
+
+    public CompilationCache(int maxEntries) {
+        this(maxEntries, null);
+    }
+
+    public CompilationCache(int maxEntries, Path diskDirectory) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("La caché necesita al menos una entrada: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.diskDirectory = diskDirectory;
+        this.entries = new LinkedHashMap<String, CompilationResult>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompilationResult> eldest) {
+                return size() > CompilationCache.this.maxEntries;
+            }
+        };
+    }
+
+    // Compilación con el Parser optimizado y las opciones por defecto
+    public CompilationResult compile(CharSequence sourceCode) {
+        return get(sourceCode, DEFAULT_OPTIONS, pipeline::compile);
+    }
+
+    /**
+     * Devuelve el resultado guardado para (sourceCode, options) o lo calcula con 'compiler'
+     * y lo guarda. 'options' debe distinguir todo lo que cambie la salida de 'compiler'.
+     *
+     * Sólo la consulta y la inserción toman el candado: la lectura del disco y la compilación
+     * no, así que varios hilos pueden compilar textos distintos a la vez. Si dos piden el mismo
+     * texto al mismo tiempo, ambos lo compilan y se guarda uno de los resultados (equivalentes).
+     */
+    public CompilationResult get(CharSequence sourceCode, String options, Function<CharSequence, CompilationResult> compiler) {
+        String key = key(sourceCode, options);
+        synchronized (this) {
+            CompilationResult result = entries.get(key);
+            if (result != null) {
+                hits++;
+                return result;
+            }
+        }
+        CompilationResult result = readFromDisk(key);
+        boolean fromDisk = result != null;
+        if (!fromDisk) {
+            result = compiler.apply(sourceCode);
+            writeToDisk(key, result);
+        }
+        synchronized (this) {
+            if (fromDisk) {
+                diskHits++;
+            } else {
+                misses++;
+            }
+            entries.put(key, result);
+        }
+        return result;
+    }
+
+    // true si compile(sourceCode) no necesitaría compilar (en memoria o en disco)
+    public boolean isCached(CharSequence sourceCode) {
+        String key = key(sourceCode, DEFAULT_OPTIONS);
+        synchronized (this) {
+            if (entries.containsKey(key)) {
+                return true;
+            }
+        }
+        return diskDirectory != null && Files.isRegularFile(diskDirectory.resolve(key + FILE_SUFFIX));
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        statementCache.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized String getStatistics() {
+        return String.format("%d aciertos en memoria, %d en disco, %d fallos (%d/%d entradas); %s",
+                             hits, diskHits, misses, entries.size(), maxEntries, statementCache.getStatistics());
+    }
+
+    // El texto puede ser un archivo mapeado: se codifica por partes, sin copiarlo a un String
+    private static String key(CharSequence sourceCode, String options) {
+        return StatementCache.sha256(COMPILER_VERSION + '\0' + options + '\0', sourceCode);
+    }
+
+    private CompilationResult readFromDisk(String key) {
+        if (diskDirectory == null) {
+            return null;
+        }
+        Path file = diskDirectory.resolve(key + FILE_SUFFIX);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file));
+             ObjectInputStream objects = new ObjectInputStream(in)) {
+            return (CompilationResult) objects.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            System.err.println("Entrada de caché descartada (" + file.getFileName() + "): " + e.getMessage());
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+                // Se volverá a sobrescribir en la próxima compilación
+            }
+            return null;
+        }
+    }
+
+    // Se escribe a un archivo temporal y se renombra, para no dejar entradas a medias
+    private void writeToDisk(String key, CompilationResult result) {
+        if (diskDirectory == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(diskDirectory);
+            Path temporary = Files.createTempFile(diskDirectory, key, ".tmp");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temporary));
+                 ObjectOutputStream objects = new ObjectOutputStream(out)) {
+                objects.writeObject(result);
+            }
+            Files.move(temporary, diskDirectory.resolve(key + FILE_SUFFIX),
+                       StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("No se pudo guardar la compilación en la caché de disco: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package simplecalc;
+
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Tiempo (en nanosegundos) y memoria asignada por cada fase de una compilación.
+ *
+ * Las fases se intercalan: la conversión a prefija ocurre en medio del análisis sintáctico, y
+ * la simplificación de cada expresión entre la generación de cuádruplos de una y la siguiente.
+ * Por eso se mide por cambio de fase: Recorder.switchTo le carga a la fase que termina el
+ * tiempo y los bytes asignados por el hilo desde el cambio anterior, así cada fase suma sólo
+ * lo propio y la suma de todas es la compilación completa.
+ *
+ * Los bytes salen de getCurrentThreadAllocatedBytes de com.sun.management.ThreadMXBean; si la
+ * JVM no los informa quedan en -1.
+ */
+public final class CompilationMetrics implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Phase {
+        LEXER("Análisis léxico", "Léxico"),
+        PARSER("Análisis sintáctico y semántico", "Sintaxis"),
+        PREFIX("Conversión a prefija", "Prefija"),
+        QUADRUPLES("Generación de cuádruplos", "Cuádruplos"),
+        OPTIMIZATION("Optimización", "Optim."),
+        CODEGEN("Generación de código Kotlin", "Código");
+
+        private final String label;
+        private final String shortLabel;
+
+        Phase(String label, String shortLabel) {
+            this.label = label;
+            this.shortLabel = shortLabel;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public String getShortLabel() {
+            return shortLabel;
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    // null si la JVM no mide la memoria asignada por hilo
+    private static final com.sun.management.ThreadMXBean ALLOCATIONS = allocationCounter();
+
+    private final long[] nanos;
+    private final long[] allocatedBytes; // null: no se midió
+    private final long recordedAtMillis;
+
+    private CompilationMetrics(long[] nanos, long[] allocatedBytes, long recordedAtMillis) {
+        this.nanos = nanos;
+        this.allocatedBytes = allocatedBytes;
+        this.recordedAtMillis = recordedAtMillis;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean counter
+                && counter.isThreadAllocatedMemorySupported() && counter.isThreadAllocatedMemoryEnabled()) {
+            return counter;
+        }
+        return null;
+    }
+
+    public long getNanos(Phase phase) {
+        return nanos[phase.ordinal()];
+    }
+
+    public long getAllocatedBytes(Phase phase) {
+        return allocatedBytes != null ? allocatedBytes[phase.ordinal()] : -1;
+    }
+
+    public boolean hasAllocatedBytes() {
+        return allocatedBytes != null;
+    }
+
+    public long getTotalNanos() {
+        long total = 0;
+        for (long phaseNanos : nanos) {
+            total += phaseNanos;
+        }
+        return total;
+    }
+
+    public long getTotalAllocatedBytes() {
+        if (allocatedBytes == null) {
+            return -1;
+        }
+        long total = 0;
+        for (long bytes : allocatedBytes) {
+            total += bytes;
+        }
+        return total;
+    }
+
+    // Cuándo terminó la compilación (System.currentTimeMillis)
+    public long getRecordedAtMillis() {
+        return recordedAtMillis;
+    }
+
+    /**
+     * Medición en curso; la usa sólo el hilo que compila. El patrón para una fase anidada es
+     * Phase outer = recorder.switchTo(inner); ...; recorder.switchTo(outer).
+     */
+    static final class Recorder {
+        private final long[] nanos = new long[PHASES.length];
+        private final long[] allocatedBytes = new long[PHASES.length];
+        private Phase current; // null: nada se está midiendo
+        private long lastNanos;
+        private long lastAllocated;
+
+        // Cierra la fase actual y empieza 'next' (null para no medir); devuelve la que estaba
+        Phase switchTo(Phase next) {
+            long now = System.nanoTime();
+            long allocated = ALLOCATIONS != null ? ALLOCATIONS.getCurrentThreadAllocatedBytes() : 0;
+            Phase previous = current;
+            if (previous != null) {
+                nanos[previous.ordinal()] += now - lastNanos;
+                allocatedBytes[previous.ordinal()] += allocated - lastAllocated;
+            }
+            current = next;
+            lastNanos = now;
+            lastAllocated = allocated;
+            return previous;
+        }
+
+        CompilationMetrics finish() {
+            switchTo(null);
+            return new CompilationMetrics(nanos.clone(), ALLOCATIONS != null ? allocatedBytes.clone() : null,
+                                          System.currentTimeMillis());
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package simplecalc;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resultado completo de compilar un texto fuente con el Parser optimizado (CompilerPipeline):
+ * tokens, errores, expresiones (ExpressionData), código de tres direcciones del programa y
+ * código Kotlin generado. No depende del Parser que lo produjo, por eso se puede guardar en la
+ * CompilationCache (y serializar a disco) y compartir entre varias acciones de la interfaz.
+ *
+ * Las listas y mapas que expone no deben modificarse.
+ */
+public class CompilationResult implements Serializable {
+
+    private static final long serialVersionUID = 3L;
+
+    private final List<Token> tokens;
+    private final List<Diagnostic> lexicalErrors;
+    private final List<Diagnostic> parserErrors;
+    private final List<Parser.ExpressionData> expressions;
+    private final List<String> programQuadruples;
+    private final Map<String, String> variableTypes;
+    private final Map<String, Boolean> variableIsVar;
+    private final int maxTemporaryPressure;
+    private final String kotlinCode; // null si hubo errores
+    private final CompilationMetrics metrics;
+
+    CompilationResult(List<Token> tokens, List<Diagnostic> lexicalErrors, Parser parser, String kotlinCode, CompilationMetrics metrics) {
+        this.tokens = tokens;
+        this.lexicalErrors = lexicalErrors;
+        this.parserErrors = new ArrayList<>(parser.getErrors());
+        this.expressions = new ArrayList<>(parser.getCollectedExpressions());
+        this.programQuadruples = new ArrayList<>(parser.getProgramQuadruples());
+        this.variableTypes = new HashMap<>(parser.getVariableTypes());
+        this.variableIsVar = new HashMap<>(parser.getVariableIsVar());
+        this.maxTemporaryPressure = parser.getMaxTemporaryPressure();
+        this.kotlinCode = kotlinCode;
+        this.metrics = metrics;
+    }
+
+    private static final CompilerPipeline DEFAULT_PIPELINE = new CompilerPipeline();
+
+    // Ejecuta el lexer, el parser y (si no hay errores) el generador de código Kotlin
+    public static CompilationResult compile(String sourceCode) {
+        return DEFAULT_PIPELINE.compile(sourceCode);
+    }
+
+    // Igual, reutilizando el análisis de las sentencias que no cambiaron (statementCache puede ser null).
+    // Para compilar muchas veces con la misma caché conviene un CompilerPipeline propio.
+    public static CompilationResult compile(String sourceCode, StatementCache statementCache) {
+        return new CompilerPipeline(statementCache).compile(sourceCode);
+    }
+
+    public boolean isSuccessful() {
+        return lexicalErrors.isEmpty() && parserErrors.isEmpty();
+    }
+
+    public List<Token> getTokens() {
+        return Collections.unmodifiableList(tokens);
+    }
+
+    public List<Diagnostic> getLexicalErrors() {
+        return Collections.unmodifiableList(lexicalErrors);
+    }
+
+    // Errores sintácticos y semánticos, los mismos que Parser.getErrors()
+    public List<Diagnostic> getParserErrors() {
+        return Collections.unmodifiableList(parserErrors);
+    }
+
+    public List<Parser.ExpressionData> getCollectedExpressions() {
+        return Collections.unmodifiableList(expressions);
+    }
+
+    public List<String> getProgramQuadruples() {
+        return Collections.unmodifiableList(programQuadruples);
+    }
+
+    public Map<String, String> getVariableTypes() {
+        return Collections.unmodifiableMap(variableTypes);
+    }
+
+    public Map<String, Boolean> getVariableIsVar() {
+        return Collections.unmodifiableMap(variableIsVar);
+    }
+
+    public int getMaxTemporaryPressure() {
+        return maxTemporaryPressure;
+    }
+
+    public String getKotlinCode() {
+        return kotlinCode;
+    }
+
+    // Tiempo que tomó la compilación original (no el de una consulta a la caché)
+    public long getCompilationNanos() {
+        return metrics.getTotalNanos();
+    }
+
+    // Tiempo y memoria por fase de la compilación original
+    public CompilationMetrics getMetrics() {
+        return metrics;
+    }
+}
@@ -0,0 +1,72 @@
+package simplecalc;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Cliente mínimo del CompileDaemon: envía el código fuente por el socket y escribe el Kotlin
+ * generado en la salida estándar y los diagnósticos en la de errores. No carga el
+ * compilador, así que arranca en lo que tarda la JVM en abrir un socket.
+ *
+ * Uso: java -cp build/classes simplecalc.CompileClient [--socket <ruta>] [<archivo> | - | --status | --stop]
+ *
+ * Sin archivo (o con '-') lee el código de la entrada estándar. Termina con código 0 si
+ * compiló, 1 si hubo errores de compilación y 2 si no pudo hablar con el servidor.
+ */
+public class CompileClient {
+
+    public static void main(String[] args) {
+        Path socket = CompileDaemon.defaultSocketPath();
+        String input = "-";
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--socket")) {
+                    socket = Path.of(args[++i]);
+                } else {
+                    input = args[i];
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            System.err.println("Uso: java simplecalc.CompileClient [--socket <ruta>] [<archivo> | - | --status | --stop]");
+            System.exit(2);
+            return;
+        }
+
+        try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(socket));
+            switch (input) {
+                case "--status": CompileDaemon.writeFrame(channel, CompileDaemon.STATUS, ""); break;
+                case "--stop":   CompileDaemon.writeFrame(channel, CompileDaemon.STOP, ""); break;
+                default:
+                    String sourceCode = input.equals("-")
+                            ? new String(System.in.readAllBytes(), StandardCharsets.UTF_8)
+                            : Files.readString(Path.of(input), StandardCharsets.UTF_8);
+                    CompileDaemon.writeFrame(channel, CompileDaemon.COMPILE, sourceCode);
+                    break;
+            }
+            System.exit(readResponse(channel) ? 0 : 1);
+        } catch (IOException e) {
+            System.err.println("Error de comunicación con el servidor de compilación (" + socket + "): " + e.getMessage());
+            System.exit(2);
+        }
+    }
+
+    // Muestra las tramas de una respuesta hasta la de resultado; true si fue "OK"
+    private static boolean readResponse(SocketChannel channel) throws IOException {
+        while (true) {
+            CompileDaemon.Frame frame = CompileDaemon.readFrame(channel);
+            switch (frame.type) {
+                case CompileDaemon.DIAGNOSTIC: System.err.println(frame.payload); break;
+                case CompileDaemon.KOTLIN:     System.out.print(frame.payload); break;
+                case CompileDaemon.INFO:       System.out.print(frame.payload); break;
+                case CompileDaemon.RESULT:     return frame.payload.equals("OK");
+                default: throw new IOException("Trama no reconocida: '" + (char) frame.type + "'");
+            }
+        }
+    }
+}
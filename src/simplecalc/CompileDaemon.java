@@ -0,0 +1,339 @@
+package simplecalc;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Servidor de compilación local: se queda en ejecución escuchando en un socket de dominio
+ * Unix y compila lo que le envía CompileClient. Así cada compilación corta no paga el
+ * arranque de la JVM ni el calentamiento del JIT, y la CompilationCache (con la
+ * StatementCache de sentencias) sigue en memoria entre una petición y otra.
+ *
+ * Cada conexión se atiende en su propio hilo virtual y puede enviar varias peticiones; sólo
+ * compilan a la vez tantas como núcleos (un semáforo, como en BatchCompiler).
+ *
+ * Protocolo: tramas con tipo (1 byte), longitud (u32 big-endian) y contenido en UTF-8.
+ *
+ *   Cliente -> servidor
+ *     'C' código fuente       compilar
+ *     'S' vacío               estadísticas del servidor
+ *     'Q' vacío               detener el servidor
+ *   Servidor -> cliente (por petición, en este orden)
+ *     'D' diagnóstico         uno por cada error léxico, sintáctico o semántico
+ *     'K' código Kotlin       sólo si compiló sin errores
+ *     'I' texto               respuesta a 'S'
+ *     'R' "OK" | "ERROR"      fin de la respuesta
+ *
+ * Uso: java -cp build/classes simplecalc.CompileDaemon [--socket <ruta>] [--cache <entradas>] [--cache-dir <dir>]
+ */
+public class CompileDaemon {
+
+    static final byte COMPILE = 'C';
+    static final byte STATUS = 'S';
+    static final byte STOP = 'Q';
+    static final byte DIAGNOSTIC = 'D';
+    static final byte KOTLIN = 'K';
+    static final byte INFO = 'I';
+    static final byte RESULT = 'R';
+
+    // Una trama más grande que esto es un cliente que no habla el protocolo
+    static final int MAX_FRAME_LENGTH = 64 << 20;
+
+    private static final int WARMUP_COMPILATIONS = 200;
+    private static final String WARMUP_SOURCE =
+            "fun main() {\n"
+            + "    val numero: Int = 42\n"
+            + "    var resultado: Int = numero + 10 * 2\n"
+            + "    for (i in 1..5) {\n"
+            + "        resultado = resultado + i\n"
+            + "    }\n"
+            + "    while (resultado > 50) {\n"
+            + "        resultado = resultado - 3\n"
+            + "    }\n"
+            + "    if (resultado > 40) {\n"
+            + "        print(\"Mayor que 40\")\n"
+            + "    }\n"
+            + "    print(resultado)\n"
+            + "}\n";
+
+    // Trama recibida
+    static final class Frame {
+        final byte type;
+        final String payload;
+
+        Frame(byte type, String payload) {
+            this.type = type;
+            this.payload = payload;
+        }
+    }
+
+    private final Path socketPath;
+    private final CompilationCache cache;
+    private final Semaphore compilationPermits = new Semaphore(Runtime.getRuntime().availableProcessors());
+    private volatile ServerSocketChannel server;
+    private long requests; // Sólo se usa para las estadísticas; se actualiza bajo 'this'
+
+    public CompileDaemon(Path socketPath, CompilationCache cache) {
+        this.socketPath = socketPath;
+        this.cache = cache;
+    }
+
+    // Socket por usuario en el directorio temporal, para que varios usuarios no se pisen
+    public static Path defaultSocketPath() {
+        return Path.of(System.getProperty("java.io.tmpdir"), "simplecalc-" + System.getProperty("user.name") + ".sock");
+    }
+
+    public static void main(String[] args) {
+        Path socket = defaultSocketPath();
+        Path cacheDirectory = null;
+        int cacheEntries = 256;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--socket":    socket = Path.of(args[++i]); break;
+                    case "--cache":     cacheEntries = Integer.parseInt(args[++i]); break;
+                    case "--cache-dir": cacheDirectory = Path.of(args[++i]); break;
+                    default: throw new IllegalArgumentException("Argumento no reconocido: " + args[i]);
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println(e.getMessage() != null ? e.getMessage() : "Falta el valor de una opción.");
+            System.err.println("Uso: java simplecalc.CompileDaemon [--socket <ruta>] [--cache <entradas>] [--cache-dir <dir>]");
+            System.exit(2);
+            return;
+        }
+
+        try {
+            CompileDaemon daemon = new CompileDaemon(socket, new CompilationCache(cacheEntries, cacheDirectory));
+            daemon.warmUp();
+            daemon.serve();
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("No se pudo iniciar el servidor de compilación: " + e.getMessage());
+            System.exit(2);
+        }
+    }
+
+    // Compila un programa pequeño varias veces para que el JIT ya haya optimizado el compilador
+    // cuando llegue la primera petición real (sin pasar por la caché, que lo resolvería de una vez)
+    public void warmUp() {
+        CompilerPipeline pipeline = new CompilerPipeline();
+        for (int i = 0; i < WARMUP_COMPILATIONS; i++) {
+            pipeline.compile(WARMUP_SOURCE + "// " + i);
+        }
+    }
+
+    // Atiende conexiones hasta recibir 'Q' (o hasta close()); borra el archivo del socket al salir
+    public void serve() throws IOException {
+        bind();
+        System.out.println("Servidor de compilación escuchando en " + socketPath.toAbsolutePath());
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            while (true) {
+                SocketChannel client = server.accept();
+                executor.submit(() -> handle(client));
+            }
+        } catch (ClosedChannelException e) {
+            // close(): fin normal
+        } finally {
+            executor.shutdown();
+            close();
+            Files.deleteIfExists(socketPath);
+        }
+    }
+
+    public void close() throws IOException {
+        ServerSocketChannel channel = server;
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private void bind() throws IOException {
+        if (Files.exists(socketPath)) {
+            removeStaleSocket();
+        }
+        ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            bindPrivately(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        server = channel;
+    }
+
+    // Un archivo que quedó de un servidor que terminó mal se borra; si alguien atiende en él, no
+    private void removeStaleSocket() throws IOException {
+        boolean alive;
+        try (SocketChannel probe = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+            alive = probe.isConnected();
+        } catch (IOException e) {
+            alive = false;
+        }
+        if (alive) {
+            throw new IOException("Ya hay un servidor escuchando en " + socketPath);
+        }
+        Files.deleteIfExists(socketPath);
+    }
+
+    // Sólo el usuario que lo inició puede enviar código a compilar. El socket se crea dentro de un
+    // directorio 0700 junto a su ruta, se le quitan los permisos de los demás y recién entonces se
+    // enlaza en su ruta, así no hay un momento en que otro usuario pueda conectarse. En un sistema de
+    // archivos sin permisos POSIX se crea directamente en su ruta con los permisos por defecto.
+    //
+    // El enlace duro (no un rename) es lo que impide pisar a otro servidor: falla si la ruta ya
+    // existe, aunque otro servidor la haya creado después de la revisión de bind().
+    private void bindPrivately(ServerSocketChannel channel) throws IOException {
+        Path directory;
+        try {
+            directory = Files.createTempDirectory(socketPath.toAbsolutePath().getParent(), ".simplecalc-",
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        } catch (UnsupportedOperationException e) {
+            channel.bind(UnixDomainSocketAddress.of(socketPath));
+            return;
+        }
+        Path privateSocket = directory.resolve("sock");
+        try {
+            channel.bind(UnixDomainSocketAddress.of(privateSocket));
+            Files.setPosixFilePermissions(privateSocket, PosixFilePermissions.fromString("rw-------"));
+            try {
+                Files.createLink(socketPath, privateSocket);
+            } catch (FileAlreadyExistsException e) {
+                removeStaleSocket(); // Si otro vuelve a ganar, el segundo intento también falla
+                Files.createLink(socketPath, privateSocket);
+            }
+        } finally {
+            Files.deleteIfExists(privateSocket);
+            Files.delete(directory);
+        }
+    }
+
+    // Una conexión: peticiones en secuencia hasta que el cliente cierra
+    private void handle(SocketChannel client) {
+        try (client) {
+            while (true) {
+                Frame request;
+                try {
+                    request = readFrame(client);
+                } catch (EOFException e) {
+                    return;
+                }
+                switch (request.type) {
+                    case COMPILE:
+                        compile(client, request.payload);
+                        break;
+                    case STATUS:
+                        writeFrame(client, INFO, status());
+                        writeFrame(client, RESULT, "OK");
+                        break;
+                    case STOP:
+                        writeFrame(client, RESULT, "OK");
+                        close();
+                        return;
+                    default:
+                        writeFrame(client, DIAGNOSTIC, "Petición no reconocida: '" + (char) request.type + "'");
+                        writeFrame(client, RESULT, "ERROR");
+                        return; // No se puede confiar en lo que siga
+                }
+            }
+        } catch (IOException e) {
+            // El cliente se fue a mitad de la respuesta o envió una trama inválida: sólo se pierde esa conexión
+        }
+    }
+
+    private void compile(SocketChannel client, String sourceCode) throws IOException {
+        CompilationResult result;
+        try {
+            compilationPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Servidor detenido.", e);
+        }
+        try {
+            result = cache.compile(sourceCode);
+        } catch (RuntimeException e) {
+            writeFrame(client, DIAGNOSTIC, "Error interno del compilador: " + e);
+            writeFrame(client, RESULT, "ERROR");
+            return;
+        } finally {
+            compilationPermits.release();
+        }
+        synchronized (this) {
+            requests++;
+        }
+
+        for (Diagnostic error : result.getLexicalErrors()) {
+            writeFrame(client, DIAGNOSTIC, error.format());
+        }
+        for (Diagnostic error : result.getParserErrors()) {
+            writeFrame(client, DIAGNOSTIC, error.format());
+        }
+        if (result.isSuccessful()) {
+            writeFrame(client, KOTLIN, result.getKotlinCode());
+        }
+        writeFrame(client, RESULT, result.isSuccessful() ? "OK" : "ERROR");
+    }
+
+    private synchronized String status() {
+        Runtime runtime = Runtime.getRuntime();
+        return String.format("Compilaciones atendidas: %d%n%s%nMemoria usada: %d MB de %d MB%n", requests,
+                             cache.getStatistics(), (runtime.totalMemory() - runtime.freeMemory()) >> 20, runtime.maxMemory() >> 20);
+    }
+
+    // Cabecera y contenido en una sola escritura (gathering) para no partir la trama en dos paquetes
+    static void writeFrame(SocketChannel channel, byte type, String payload) throws IOException {
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(5).put(type).putInt(bytes.length).flip();
+        ByteBuffer body = ByteBuffer.wrap(bytes);
+        ByteBuffer[] frame = {header, body};
+        while (header.hasRemaining() || body.hasRemaining()) {
+            channel.write(frame);
+        }
+    }
+
+    // EOFException sólo si el canal se cierra justo entre dos tramas
+    static Frame readFrame(SocketChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(5);
+        if (!readFully(channel, header) && header.position() == 0) {
+            throw new EOFException();
+        }
+        if (header.hasRemaining()) {
+            throw new IOException("Conexión cerrada a mitad de una trama.");
+        }
+        header.flip();
+        byte type = header.get();
+        int length = header.getInt();
+        if (length < 0 || length > MAX_FRAME_LENGTH) {
+            throw new IOException("Longitud de trama inválida: " + length);
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        if (!readFully(channel, payload) && payload.hasRemaining()) {
+            throw new IOException("Conexión cerrada a mitad de una trama.");
+        }
+        return new Frame(type, new String(payload.array(), StandardCharsets.UTF_8));
+    }
+
+    // false si el canal llegó al final antes de llenar el búfer
+    private static boolean readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,116 @@
+package simplecalc;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Eventos de Java Flight Recorder del compilador, para ver en JDK Mission Control lo que tarda
+ * cada fase junto a los datos de GC y de asignación de memoria.
+ *
+ * Se usan con el patrón habitual de JFR: begin() al empezar, end() al terminar y, sólo si
+ * shouldCommit() (hay una grabación con el evento activo y se superó el umbral), se llenan
+ * los conteos y se hace commit(). Sin grabación el JIT elimina el objeto del evento y el costo
+ * es prácticamente nulo.
+ *
+ * Los eventos por expresión tienen un umbral de 1 ms y no guardan la pila, para no llenar la
+ * grabación con miles de eventos cortos; se cambia al grabar, por ejemplo con
+ * -XX:StartFlightRecording:+simplecalc.GenerateQuadruples#threshold=0ms (el + porque no está en la plantilla).
+ */
+final class CompilerEvents {
+
+    private CompilerEvents() {
+    }
+
+    @Name("simplecalc.ScanTokens")
+    @Label("Análisis léxico")
+    @Category({"SimpleCalc", "Compilador"})
+    @Description("Lexer.scanTokens sobre un texto completo o un fragmento (IncrementalLexer)")
+    static final class ScanTokens extends Event {
+        @Label("Caracteres")
+        int characters;
+
+        @Label("Tokens")
+        int tokens;
+
+        @Label("Errores léxicos")
+        int errors;
+    }
+
+    @Name("simplecalc.Parse")
+    @Label("Análisis y generación de código intermedio")
+    @Category({"SimpleCalc", "Compilador"})
+    @Description("Parser.parse: análisis sintáctico y semántico, cuádruplos y optimizaciones")
+    static final class Parse extends Event {
+        @Label("Tokens")
+        int tokens;
+
+        @Label("Sentencias de primer nivel")
+        int statements;
+
+        @Label("Expresiones")
+        int expressions;
+
+        @Label("Cuádruplos del programa")
+        int quadruples;
+
+        @Label("Presión máxima de temporales")
+        int temporaries;
+
+        @Label("Errores")
+        int errors;
+    }
+
+    @Name("simplecalc.CollectExpression")
+    @Label("Recolección de expresión")
+    @Category({"SimpleCalc", "Compilador", "Expresiones"})
+    @Description("Parser.collectExpression de una expresión aritmética: conversión a prefija")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static final class CollectExpression extends Event {
+        @Label("Línea")
+        int line;
+
+        @Label("Tokens")
+        int tokens;
+    }
+
+    @Name("simplecalc.GenerateQuadruples")
+    @Label("Generación de cuádruplos")
+    @Category({"SimpleCalc", "Compilador", "Expresiones"})
+    @Description("Parser.generateQuadruples de una expresión (las que salen de la StatementCache no se generan)")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static final class GenerateQuadruples extends Event {
+        @Label("Línea")
+        int line;
+
+        @Label("Tokens")
+        int tokens;
+
+        @Label("Cuádruplos")
+        int quadruples;
+
+        @Label("Temporales")
+        int temporaries;
+    }
+
+    @Name("simplecalc.GenerateKotlin")
+    @Label("Generación de código Kotlin")
+    @Category({"SimpleCalc", "Compilador"})
+    @Description("KotlinCodeGenerator.generateOptimizedKotlinCode sobre el programa completo")
+    static final class GenerateKotlin extends Event {
+        @Label("Cuádruplos")
+        int quadruples;
+
+        @Label("Variables")
+        int variables;
+
+        @Label("Etiquetas")
+        int labels;
+    }
+}
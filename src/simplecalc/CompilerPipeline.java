@@ -0,0 +1,101 @@
+package simplecalc;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Compilador configurado una vez y reutilizable: Lexer -> Parser -> KotlinCodeGenerator.
+ *
+ * Es inmutable y thread-safe: todo el estado de una compilación (tokens, tabla de símbolos,
+ * cuádruplos, errores) vive en un contexto Compilation que se crea por llamada y no se
+ * comparte. Lo único compartido entre compilaciones concurrentes es la StatementCache (si se
+ * configuró, sincronizada y con entradas que no se modifican) y el pool de ScratchBuffers:
+ * cada compilación toma uno, lo usa sola y lo devuelve limpio, así que los búferes de las
+ * claves de memoización, el digest SHA-256 y el búfer de salida de Kotlin no se vuelven a
+ * crear en cada compilación.
+ *
+ * Si se interrumpe el hilo que compila, la compilación se abandona con una
+ * CancellationException entre fases (y entre sentencias del Parser), sin guardar nada en
+ * las cachés.
+ */
+public final class CompilerPipeline {
+
+    private final StatementCache statementCache; // null: sin memoización entre compilaciones
+    private final BlockingQueue<ScratchBuffers> scratchPool;
+    private final boolean debugOutput; // Trazas DEBUG de cada Parser (Parser.setDebugOutput)
+
+    public CompilerPipeline() {
+        this(null);
+    }
+
+    public CompilerPipeline(StatementCache statementCache) {
+        this(statementCache, false);
+    }
+
+    public CompilerPipeline(StatementCache statementCache, boolean debugOutput) {
+        this.statementCache = statementCache;
+        this.debugOutput = debugOutput;
+        // Más búferes que hilos compilando a la vez no se reutilizarían nunca
+        this.scratchPool = new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors());
+    }
+
+    public CompilationResult compile(CharSequence sourceCode) {
+        ScratchBuffers scratch = scratchPool.poll();
+        if (scratch == null) {
+            scratch = new ScratchBuffers();
+        }
+        try {
+            return new Compilation(sourceCode, statementCache, scratch, debugOutput).run();
+        } finally {
+            scratch.trim();
+            scratchPool.offer(scratch); // Si el pool está lleno se descarta
+        }
+    }
+
+    // Contexto de una sola compilación: se crea por llamada y sólo lo usa el hilo que compila
+    private static final class Compilation {
+        private final CharSequence sourceCode;
+        private final StatementCache statementCache;
+        private final ScratchBuffers scratch;
+        private final boolean debugOutput;
+        private final CompilationMetrics.Recorder metrics = new CompilationMetrics.Recorder();
+
+        Compilation(CharSequence sourceCode, StatementCache statementCache, ScratchBuffers scratch, boolean debugOutput) {
+            this.sourceCode = sourceCode;
+            this.statementCache = statementCache;
+            this.scratch = scratch;
+            this.debugOutput = debugOutput;
+        }
+
+        CompilationResult run() {
+            metrics.switchTo(CompilationMetrics.Phase.LEXER);
+            List<Token> tokens = new Lexer(sourceCode).scanTokens();
+            List<Diagnostic> lexicalErrors = Lexer.lexicalErrors(tokens);
+            Parser.checkInterrupted();
+            metrics.switchTo(CompilationMetrics.Phase.PARSER);
+            Parser parser = new Parser(tokens, statementCache, scratch);
+            parser.setMetrics(metrics);
+            parser.setDebugOutput(debugOutput);
+            parser.parse();
+
+            String kotlinCode = null;
+            if (lexicalErrors.isEmpty() && parser.getErrors().isEmpty()) {
+                Parser.checkInterrupted();
+                metrics.switchTo(CompilationMetrics.Phase.CODEGEN);
+                StringBuilder output = scratch.outputBuffer();
+                try {
+                    new KotlinCodeGenerator(parser.getProgramQuadruples(), parser.getVariableTypes(),
+                                            parser.getVariableIsVar()).generateOptimizedKotlinCode(output);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e); // Un StringBuilder nunca la lanza
+                }
+                kotlinCode = output.toString();
+            }
+            return new CompilationResult(new ArrayList<>(tokens), lexicalErrors, parser, kotlinCode, metrics.finish());
+        }
+    }
+}
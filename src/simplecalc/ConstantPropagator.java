@@ -0,0 +1,307 @@
+package simplecalc;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Propagación de constantes entre sentencias por análisis de flujo de datos.
+ *
+ * Trabaja sobre el código de tres direcciones del programa completo (con etiquetas y saltos):
+ * se parte en bloques básicos y se resuelve hacia adelante el retículo clásico de constantes
+ * (indefinido / constante c / no constante) con una lista de trabajo. En los puntos de unión
+ * (la cabecera de un ciclo, el final de un 'if') una variable sólo sigue siendo constante si
+ * todas las definiciones que la alcanzan le dan el mismo valor, así que una 'var' reasignada
+ * dentro de un ciclo deja de propagarse en todo el ciclo.
+ *
+ * Las 'val' (variableIsVar = false) se asignan una sola vez: si su valor es constante lo es en
+ * todo el programa y no participan en la iteración.
+ */
+public class ConstantPropagator {
+
+    private final List<String> quadruples;
+    private final List<Quad> program; // Los mismos cuádruplos, ya separados en sus campos
+    private final Map<String, Boolean> variableIsVar;
+
+    private final Map<String, Integer> valConstants = new HashMap<>(); // 'val' con valor constante
+    private final List<Integer> blockStarts = new ArrayList<>();
+    private int[] blockOf;
+    // Hechos a la entrada de cada bloque: variable -> valor; un valor null significa "no constante"
+    // y una variable ausente, "no definida en ningún camino". null para un bloque aún no alcanzado.
+    private List<Map<String, Integer>> blockIn;
+    // Última consulta de valueBefore: hechos justo antes de cursorIndex dentro de cursorBlock
+    private int cursorBlock;
+    private int cursorIndex;
+    private Map<String, Integer> cursorFacts;
+
+    public ConstantPropagator(List<String> programQuadruples, Map<String, Boolean> variableIsVar) {
+        this.quadruples = programQuadruples;
+        this.program = Quad.parseAll(programQuadruples);
+        this.variableIsVar = variableIsVar;
+        analyze();
+    }
+
+    /**
+     * Valor constante de 'variable' justo antes del cuádruplo 'index' (index == tamaño del
+     * programa significa el final), o null si ahí no es constante. Sólo responde por variables
+     * del programa, nunca por temporales.
+     *
+     * Se consulta nombre por nombre (los de cada expresión) en lugar de armar el mapa de todas
+     * las constantes: con miles de variables eso era una copia de miles de entradas por expresión.
+     */
+    public Integer valueBefore(int index, String variable) {
+        Map<String, Integer> facts = factsBefore(index);
+        Integer value = facts != null && !Quad.isTemporary(variable) ? facts.get(variable) : null;
+        return value != null ? value : valConstants.get(variable);
+    }
+
+    // Hechos justo antes de 'index', o null si no hay programa o el código es inalcanzable.
+    // El mapa es el cursor interno: no se debe modificar ni guardar.
+    private Map<String, Integer> factsBefore(int index) {
+        if (quadruples.isEmpty()) {
+            return null;
+        }
+        int block = index < quadruples.size() ? blockOf[index] : blockStarts.size() - 1;
+        if (blockIn.get(block) == null) {
+            return null; // Código inalcanzable
+        }
+        // Las consultas suelen llegar en orden de programa: se continúa desde la anterior si es
+        // del mismo bloque, en lugar de recorrer el bloque desde su inicio (cuadrático en código lineal)
+        if (cursorFacts == null || cursorBlock != block || cursorIndex > index) {
+            cursorBlock = block;
+            cursorIndex = blockStarts.get(block);
+            cursorFacts = new HashMap<>(blockIn.get(block));
+        }
+        for (; cursorIndex < index; cursorIndex++) {
+            transfer(program.get(cursorIndex), cursorFacts);
+        }
+        return cursorFacts;
+    }
+
+    /**
+     * Programa con los usos de variables constantes sustituidos por su valor y vuelto a
+     * simplificar (plegado, identidades algebraicas y saltos condicionales resueltos).
+     */
+    public List<String> rewrite() {
+        List<String> rewritten = new ArrayList<>(quadruples.size());
+        for (int block = 0; block < blockStarts.size(); block++) {
+            int start = blockStarts.get(block);
+            int end = block + 1 < blockStarts.size() ? blockStarts.get(block + 1) : quadruples.size();
+            Map<String, Integer> facts = blockIn.get(block) == null ? null : new HashMap<>(blockIn.get(block));
+            for (int i = start; i < end; i++) {
+                if (facts == null) {
+                    rewritten.add(quadruples.get(i));
+                    continue;
+                }
+                Quad quad = program.get(i);
+                rewritten.add(substitute(quad, facts));
+                transfer(quad, facts);
+            }
+        }
+        return new QuadOptimizer().simplify(rewritten);
+    }
+
+    private void analyze() {
+        findValConstants();
+        buildBlocks();
+
+        int blockCount = blockStarts.size();
+        blockIn = new ArrayList<>(blockCount);
+        for (int b = 0; b < blockCount; b++) {
+            blockIn.add(null);
+        }
+        if (blockCount == 0) {
+            return;
+        }
+
+        Map<String, Integer> labelBlocks = new HashMap<>();
+        for (int b = 0; b < blockCount; b++) {
+            Quad first = program.get(blockStarts.get(b));
+            if (first.kind == Quad.Kind.LABEL) {
+                labelBlocks.put(first.label, b);
+            }
+        }
+
+        blockIn.set(0, new HashMap<>());
+        Deque<Integer> worklist = new ArrayDeque<>();
+        worklist.add(0);
+        while (!worklist.isEmpty()) {
+            int b = worklist.poll();
+            int start = blockStarts.get(b);
+            int end = b + 1 < blockCount ? blockStarts.get(b + 1) : quadruples.size();
+
+            Map<String, Integer> out = new HashMap<>(blockIn.get(b));
+            for (int i = start; i < end; i++) {
+                transfer(program.get(i), out);
+            }
+
+            Quad last = program.get(end - 1);
+            List<Integer> successors = new ArrayList<>(2);
+            if (last.kind == Quad.Kind.GOTO) {
+                successors.add(labelBlocks.get(last.label));
+            } else {
+                if (isConditionalJump(last)) {
+                    successors.add(labelBlocks.get(last.label));
+                }
+                if (b + 1 < blockCount) {
+                    successors.add(b + 1);
+                }
+            }
+
+            for (Integer successor : successors) {
+                if (successor != null && mergeInto(successor, out)) {
+                    worklist.add(successor);
+                }
+            }
+        }
+    }
+
+    // Confluencia: combina 'out' con la entrada del sucesor. Devuelve true si ésta cambió.
+    private boolean mergeInto(int block, Map<String, Integer> out) {
+        Map<String, Integer> in = blockIn.get(block);
+        if (in == null) {
+            blockIn.set(block, new HashMap<>(out));
+            return true;
+        }
+        // Una variable definida sólo por algunos caminos tampoco es constante en la unión
+        boolean changed = false;
+        for (Map.Entry<String, Integer> entry : in.entrySet()) {
+            Integer current = entry.getValue();
+            if (current != null && (!out.containsKey(entry.getKey()) || !current.equals(out.get(entry.getKey())))) {
+                entry.setValue(null);
+                changed = true;
+            }
+        }
+        for (String variable : out.keySet()) {
+            if (!in.containsKey(variable)) {
+                in.put(variable, null);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    // Función de transferencia de un cuádruplo sobre los hechos (se modifican en el lugar).
+    private void transfer(Quad quad, Map<String, Integer> facts) {
+        switch (quad.kind) {
+            case BINARY:
+                define(quad.target, evaluate(valueOf(quad.arg1, facts), quad.operator, valueOf(quad.arg2, facts)), facts);
+                break;
+            case COPY:
+                define(quad.target, valueOf(quad.arg1, facts), facts);
+                break;
+            case READ:
+                define(quad.target, null, facts);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void define(String variable, Integer value, Map<String, Integer> facts) {
+        if (isVal(variable)) {
+            return; // Su valor (si es constante) ya está en valConstants
+        }
+        facts.put(variable, value);
+    }
+
+    private String substitute(Quad quad, Map<String, Integer> facts) {
+        switch (quad.kind) {
+            case BINARY:
+                String arg2 = quad.operator.equals("/") && Integer.valueOf(0).equals(valueOf(quad.arg2, facts))
+                        ? quad.arg2 // x / 0 se conserva para que falle en ejecución
+                        : constantOrSelf(quad.arg2, facts);
+                return quad.target + " = " + constantOrSelf(quad.arg1, facts) + " " + quad.operator + " " + arg2;
+            case COPY:
+                return quad.target + " = " + constantOrSelf(quad.arg1, facts);
+            case PRINT:
+                return "PRINT " + constantOrSelf(quad.arg1, facts);
+            case IF:
+            case IF_FALSE:
+                return quad.kind + " " + constantOrSelf(quad.arg1, facts) + " " + quad.operator + " "
+                        + constantOrSelf(quad.arg2, facts) + " GOTO " + quad.label;
+            default:
+                return quad.toString();
+        }
+    }
+
+    private String constantOrSelf(String operand, Map<String, Integer> facts) {
+        if (Quad.isTemporary(operand)) {
+            return operand; // Las temporales ya las resuelve QuadOptimizer dentro de la sentencia
+        }
+        Integer value = valueOf(operand, facts);
+        return value != null ? String.valueOf(value) : operand;
+    }
+
+    // Valor constante de un operando, o null si no lo es (una variable indefinida tampoco se propaga)
+    private Integer valueOf(String operand, Map<String, Integer> facts) {
+        if (Quad.isIntLiteral(operand)) {
+            return Integer.parseInt(operand);
+        }
+        if (valConstants.containsKey(operand)) {
+            return valConstants.get(operand);
+        }
+        return facts.get(operand);
+    }
+
+    private Integer evaluate(Integer val1, String op, Integer val2) {
+        if (val1 == null || val2 == null) {
+            return null;
+        }
+        switch (op) {
+            case "+": return val1 + val2;
+            case "-": return val1 - val2;
+            case "*": return val1 * val2;
+            case "<<": return val1 << val2;
+            default:   return val2 == 0 ? null : val1 / val2;
+        }
+    }
+
+    // Recorrido lineal: cada 'val' se define una vez y antes de usarse, y las temporales son locales a su sentencia.
+    private void findValConstants() {
+        Map<String, Integer> local = new HashMap<>();
+        for (Quad quad : program) {
+            String target = quad.target;
+            Integer value;
+            if (quad.kind == Quad.Kind.BINARY) {
+                value = evaluate(valueOf(quad.arg1, local), quad.operator, valueOf(quad.arg2, local));
+            } else if (quad.kind == Quad.Kind.COPY) {
+                value = valueOf(quad.arg1, local);
+            } else {
+                continue;
+            }
+            if (Quad.isTemporary(target)) {
+                local.put(target, value);
+            } else if (isVal(target) && value != null) {
+                valConstants.put(target, value);
+            }
+        }
+    }
+
+    // Líderes: el primer cuádruplo, cada etiqueta y lo que sigue a un salto
+    private void buildBlocks() {
+        blockOf = new int[program.size()];
+        for (int i = 0; i < program.size(); i++) {
+            boolean leader = i == 0 || program.get(i).kind == Quad.Kind.LABEL;
+            if (i > 0) {
+                Quad previous = program.get(i - 1);
+                leader |= previous.kind == Quad.Kind.GOTO || isConditionalJump(previous);
+            }
+            if (leader) {
+                blockStarts.add(i);
+            }
+            blockOf[i] = blockStarts.size() - 1;
+        }
+    }
+
+    private boolean isVal(String variable) {
+        return Boolean.FALSE.equals(variableIsVar.get(variable));
+    }
+
+    private static boolean isConditionalJump(Quad quad) {
+        return quad.kind == Quad.Kind.IF || quad.kind == Quad.Kind.IF_FALSE;
+    }
+}
@@ -0,0 +1,76 @@
+package simplecalc;
+
+import java.io.Serializable;
+
+/**
+ * Diagnóstico del Lexer o del Parser con su ubicación en el texto fuente: desplazamiento y
+ * longitud (para resaltarlo en el editor sin buscar nada) y línea y columna desde 1 (para el
+ * mensaje). El texto "[Línea l, Col c] ..." se arma recién en format(), al mostrarlo.
+ *
+ * Un diagnóstico sin ubicación (un error interno) tiene offset -1 y line 0. lexeme es el
+ * token señalado, o null si el error está al final de la entrada.
+ */
+public record Diagnostic(Kind kind, Severity severity, int offset, int length, int line, int column,
+                         String lexeme, String message) implements Serializable {
+
+    public enum Kind {
+        LEXICAL, SYNTAX, SEMANTIC, INTERNAL
+    }
+
+    // Por ahora el compilador sólo informa errores
+    public enum Severity {
+        ERROR, WARNING
+    }
+
+    static Diagnostic lexical(Token token, String message) {
+        return at(Kind.LEXICAL, token, message);
+    }
+
+    static Diagnostic syntax(Token token, String message) {
+        return at(Kind.SYNTAX, token, message);
+    }
+
+    static Diagnostic semantic(Token token, String message) {
+        return at(Kind.SEMANTIC, token, message);
+    }
+
+    static Diagnostic internal(String message) {
+        return new Diagnostic(Kind.INTERNAL, Severity.ERROR, -1, 0, 0, 0, null, message);
+    }
+
+    private static Diagnostic at(Kind kind, Token token, String message) {
+        if (token == null) {
+            return new Diagnostic(kind, Severity.ERROR, -1, 0, 0, 0, null, message);
+        }
+        String lexeme = token.type == Token.TokenType.EOF ? null : token.lexeme;
+        return new Diagnostic(kind, Severity.ERROR, token.offset, Math.max(1, token.lexeme.length()),
+                              token.line, token.column, lexeme, message);
+    }
+
+    public boolean hasLocation() {
+        return offset >= 0;
+    }
+
+    // Mensaje para el usuario, con el mismo formato que mostraba el compilador
+    public String format() {
+        if (!hasLocation()) {
+            return message;
+        }
+        switch (kind) {
+            case LEXICAL:
+                return String.format("[Línea %d, Col %d] Error Léxico: %s", line, column, message);
+            case SEMANTIC:
+                return String.format("[Línea %d, Col %d] Error semántico cerca de '%s': %s", line, column,
+                                     lexeme != null ? lexeme : "", message);
+            default:
+                return lexeme != null
+                       ? String.format("[Línea %d, Col %d] Error en '%s': %s", line, column, lexeme, message)
+                       : String.format("[Línea %d, Col %d] Error al final de la entrada: %s", line, column, message);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return format();
+    }
+}
@@ -0,0 +1,212 @@
+package simplecalc;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Insets;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.beans.PropertyChangeListener;
+import java.util.Arrays;
+import java.util.List;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.JTextComponent;
+
+/**
+ * Highlighter del editor que además dibuja los errores de compilación.
+ *
+ * Con addHighlight cada error era un objeto con dos Position en el documento y cada
+ * llamada pedía su propio repintado, así que miles de errores bloqueaban el editor. Aquí los
+ * errores son dos arreglos de desplazamientos [inicio, fin) ordenados y sin solapamientos,
+ * que se arman fuera del EDT (ranges) y se reemplazan de una vez con un solo repintado
+ * (setErrors). Al pintar se buscan por bisección sólo los que caen en el recorte. La
+ * selección y los demás resaltados siguen a cargo de DefaultHighlighter.
+ *
+ * Mientras no llegan los errores nuevos, los rangos siguen a las ediciones del documento
+ * (se corren o se achican) como harían las Position.
+ */
+public class ErrorHighlighter extends DefaultHighlighter {
+
+    // Rangos listos para setErrors
+    public static final class Ranges {
+        final int[] starts;
+        final int[] ends;
+        final int count;
+
+        Ranges(int[] starts, int[] ends, int count) {
+            this.starts = starts;
+            this.ends = ends;
+            this.count = count;
+        }
+    }
+
+    private final DefaultHighlighter.DefaultHighlightPainter painter;
+    private JTextComponent component;
+    private int[] starts = new int[0];
+    private int[] ends = new int[0];
+    private int count;
+
+    private final DocumentListener shifter = new DocumentListener() {
+        @Override
+        public void insertUpdate(DocumentEvent e) {
+            int offset = e.getOffset();
+            int length = e.getLength();
+            for (int i = 0; i < count; i++) {
+                if (starts[i] >= offset) {
+                    starts[i] += length;
+                }
+                if (ends[i] > offset) {
+                    ends[i] += length;
+                }
+            }
+        }
+
+        @Override
+        public void removeUpdate(DocumentEvent e) {
+            int offset = e.getOffset();
+            int length = e.getLength();
+            for (int i = 0; i < count; i++) {
+                starts[i] = shiftRemoved(starts[i], offset, length);
+                ends[i] = shiftRemoved(ends[i], offset, length);
+            }
+        }
+
+        @Override
+        public void changedUpdate(DocumentEvent e) {
+            // Sólo atributos
+        }
+    };
+
+    private final PropertyChangeListener documentReplaced = evt -> {
+        ((Document) evt.getOldValue()).removeDocumentListener(shifter);
+        ((Document) evt.getNewValue()).addDocumentListener(shifter);
+        clearErrors();
+    };
+
+    public ErrorHighlighter(Color color) {
+        painter = new DefaultHighlighter.DefaultHighlightPainter(color);
+    }
+
+    // Un desplazamiento dentro de lo borrado queda al inicio del borrado
+    private static int shiftRemoved(int position, int offset, int length) {
+        return position <= offset ? position : Math.max(offset, position - length);
+    }
+
+    // Ordena los diagnósticos con ubicación y une los que se tocan; puede correr en cualquier hilo
+    public static Ranges ranges(List<Diagnostic> diagnostics) {
+        long[] packed = new long[diagnostics.size()];
+        int n = 0;
+        for (Diagnostic diagnostic : diagnostics) {
+            if (diagnostic.hasLocation()) {
+                int start = diagnostic.offset();
+                packed[n++] = ((long) start << 32) | (start + Math.max(1, diagnostic.length()));
+            }
+        }
+        Arrays.sort(packed, 0, n);
+        int[] starts = new int[n];
+        int[] ends = new int[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            int start = (int) (packed[i] >>> 32);
+            int end = (int) packed[i];
+            if (count > 0 && start <= ends[count - 1]) {
+                ends[count - 1] = Math.max(ends[count - 1], end);
+            } else {
+                starts[count] = start;
+                ends[count] = end;
+                count++;
+            }
+        }
+        return new Ranges(starts, ends, count);
+    }
+
+    @Override
+    public void install(JTextComponent c) {
+        super.install(c);
+        component = c;
+        c.getDocument().addDocumentListener(shifter);
+        c.addPropertyChangeListener("document", documentReplaced);
+    }
+
+    @Override
+    public void deinstall(JTextComponent c) {
+        c.removePropertyChangeListener("document", documentReplaced);
+        c.getDocument().removeDocumentListener(shifter);
+        component = null;
+        count = 0;
+        super.deinstall(c);
+    }
+
+    // Reemplaza todos los errores; sólo en el EDT
+    public void setErrors(Ranges ranges) {
+        starts = Arrays.copyOf(ranges.starts, ranges.count);
+        ends = Arrays.copyOf(ranges.ends, ranges.count);
+        count = ranges.count;
+        if (component != null) {
+            component.repaint();
+        }
+    }
+
+    public void clearErrors() {
+        if (count > 0) {
+            count = 0;
+            if (component != null) {
+                component.repaint();
+            }
+        }
+    }
+
+    @Override
+    public void paint(Graphics g) {
+        if (count > 0 && component != null) {
+            paintErrors(g);
+        }
+        super.paint(g); // La selección va encima
+    }
+
+    private void paintErrors(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, component.getWidth(), component.getHeight());
+        }
+        Document document = component.getDocument();
+        int documentLength = document.getLength();
+        // Desde el inicio de la primera línea visible hasta el final de la última
+        Element root = document.getDefaultRootElement();
+        int firstVisible = root.getElement(root.getElementIndex(component.viewToModel2D(new Point(clip.x, clip.y)))).getStartOffset();
+        int lastVisible = root.getElement(root.getElementIndex(
+                component.viewToModel2D(new Point(clip.x + clip.width, clip.y + clip.height)))).getEndOffset();
+
+        Insets insets = component.getInsets();
+        Rectangle bounds = new Rectangle(insets.left, insets.top,
+                                         component.getWidth() - insets.left - insets.right,
+                                         component.getHeight() - insets.top - insets.bottom);
+        for (int i = firstEndAfter(firstVisible); i < count && starts[i] < lastVisible; i++) {
+            int start = starts[i];
+            int end = Math.min(ends[i], documentLength);
+            if (start < end) {
+                painter.paint(g, start, end, bounds, component);
+            }
+        }
+    }
+
+    // Primer rango que termina después de 'offset' (los fines también están ordenados). Tras
+    // un borrado varios rangos pueden quedar con el mismo fin, así que no sirve
+    // Arrays.binarySearch, que devuelve cualquiera de los iguales.
+    private int firstEndAfter(int offset) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ends[middle] <= offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
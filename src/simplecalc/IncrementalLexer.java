@@ -0,0 +1,96 @@
+package simplecalc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lexer que recuerda el texto y los tokens de la llamada anterior y, al recibir el texto
+ * editado, sólo vuelve a analizar las líneas que cambiaron.
+ *
+ * Funciona porque el análisis léxico es local a cada línea: ningún token cruza un salto de
+ * línea (una cadena sin cerrar termina en él) y el mensaje de un error sólo mira el token
+ * anterior de la misma línea. Se buscan el prefijo y el sufijo comunes con el texto anterior,
+ * se reanalizan con Lexer las líneas completas entre ambos y se reutilizan los tokens del
+ * resto; los del sufijo se copian con su número de línea corrido si la edición agregó o
+ * quitó saltos de línea (y su desplazamiento, si cambió la longitud). El resultado es idéntico a new Lexer(texto).scanTokens().
+ *
+ * Es thread-safe (update es synchronized) para que una tarea cancelada que todavía no
+ * terminó no lo comparta con la siguiente.
+ */
+public class IncrementalLexer {
+
+    private String text = "";
+    private List<Token> tokens = new Lexer("").scanTokens();
+
+    // Tokens del texto completo; la lista devuelta no se modifica después
+    public synchronized List<Token> update(String newText) {
+        String oldText = text;
+        int oldLength = oldText.length();
+        int newLength = newText.length();
+
+        int prefix = 0;
+        int maxCommon = Math.min(oldLength, newLength);
+        while (prefix < maxCommon && oldText.charAt(prefix) == newText.charAt(prefix)) {
+            prefix++;
+        }
+        if (prefix == oldLength && prefix == newLength) {
+            return tokens; // Sin cambios
+        }
+        int suffix = 0;
+        while (suffix < maxCommon - prefix
+               && oldText.charAt(oldLength - 1 - suffix) == newText.charAt(newLength - 1 - suffix)) {
+            suffix++;
+        }
+
+        // Líneas intactas: las que terminan antes del primer cambio y las que empiezan después del último
+        int changeStart = newText.lastIndexOf('\n', prefix - 1) + 1;
+        // El salto de línea que cierra la zona cambiada tiene que estar en el sufijo común: así
+        // la línea siguiente empieza en el mismo lugar relativo en ambos textos
+        int newline = newText.indexOf('\n', newLength - suffix);
+        int changeEnd = newline < 0 ? newLength : newline + 1;
+        int oldChangeEnd = changeEnd + (oldLength - newLength);
+        int firstChangedLine = countLines(newText, 0, changeStart) + 1;
+        int lineShift = countLines(newText, 0, changeEnd) - countLines(oldText, 0, oldChangeEnd);
+        int offsetShift = newLength - oldLength;
+
+        List<Token> result = new ArrayList<>(tokens.size() + 16);
+        int i = 0;
+        while (i < tokens.size() - 1 && tokens.get(i).line < firstChangedLine) {
+            result.add(tokens.get(i++));
+        }
+
+        List<Token> changed = new Lexer(newText.substring(changeStart, changeEnd), firstChangedLine, changeStart).scanTokens();
+        result.addAll(changed.subList(0, changed.size() - 1)); // Sin su EOF
+
+        // Si la zona cambiada llega al final no queda sufijo (su "primera línea" sería la última cambiada)
+        int firstSuffixLine = oldChangeEnd < oldLength ? countLines(oldText, 0, oldChangeEnd) + 1 : Integer.MAX_VALUE;
+        while (i < tokens.size() - 1 && tokens.get(i).line < firstSuffixLine) {
+            i++;
+        }
+        for (; i < tokens.size() - 1; i++) {
+            Token token = tokens.get(i);
+            result.add(lineShift == 0 && offsetShift == 0 ? token
+                       : new Token(token.type, token.lexeme, token.literal, token.line + lineShift, token.column,
+                                   token.offset + offsetShift, token.errorMessage));
+        }
+
+        // El EOF va en la última línea, en la columna siguiente a su último caracter (como en Lexer)
+        int lastLineStart = newText.lastIndexOf('\n') + 1;
+        result.add(new Token(Token.TokenType.EOF, "", null, countLines(newText, 0, newLength) + 1,
+                             newLength - lastLineStart + 1, newLength));
+
+        text = newText;
+        tokens = result;
+        return result;
+    }
+
+    private static int countLines(String text, int from, int to) {
+        int lines = 0;
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,347 @@
+package simplecalc;
+
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.Label;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.ConstantDesc;
+import java.lang.constant.MethodTypeDesc;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import static java.lang.constant.ConstantDescs.*;
+
+/**
+ * Backend que genera una clase JVM real a partir del código de tres direcciones del programa
+ * (Parser.getProgramQuadruples), usando la API java.lang.classfile (Java 24).
+ *
+ * La clase generada tiene un único método estático:
+ *
+ *   public static void run(Supplier<String> entrada, Appendable salida, long maxSaltos)
+ *
+ * Cada variable y temporal se convierte en una variable local (int o String) y cada salto
+ * del código intermedio en una instrucción de salto de la JVM, de modo que los ciclos del
+ * programa quedan sujetos a la compilación JIT igual que cualquier método Java. La clase se
+ * carga con un ProgramClassLoader propio y se ejecuta en el mismo proceso.
+ *
+ * Cada salto incondicional (el regreso de todo ciclo) descuenta maxSaltos y revisa
+ * Thread.interrupted(), igual que VirtualMachine: cancelar la tarea que ejecuta el programa
+ * lo detiene con una CancellationException.
+ */
+public class JvmBytecodeGenerator {
+
+    public static final String CLASS_NAME = "simplecalc.generated.ProgramaCompilado";
+
+    private static final ClassDesc CD_SUPPLIER = ClassDesc.of("java.util.function.Supplier");
+    private static final ClassDesc CD_APPENDABLE = ClassDesc.of("java.lang.Appendable");
+    private static final ClassDesc CD_CHAR_SEQUENCE = ClassDesc.of("java.lang.CharSequence");
+    private static final ClassDesc CD_OBJECTS = ClassDesc.of("java.util.Objects");
+    private static final ClassDesc CD_ILLEGAL_STATE = ClassDesc.of("java.lang.IllegalStateException");
+    private static final ClassDesc CD_CANCELLATION = ClassDesc.of("java.util.concurrent.CancellationException");
+    private static final ClassDesc CD_THREAD = ClassDesc.of("java.lang.Thread");
+    private static final MethodTypeDesc RUN_TYPE = MethodTypeDesc.of(CD_void, CD_SUPPLIER, CD_APPENDABLE, CD_long);
+
+    // Ranuras fijas de los parámetros de run(); las variables del programa empiezan después
+    private static final int INPUT_SLOT = 0;
+    private static final int OUTPUT_SLOT = 1;
+    private static final int JUMP_BUDGET_SLOT = 2; // long: ocupa 2 y 3
+    private static final int FIRST_VARIABLE_SLOT = 4;
+
+    private final List<Quad> program;
+    private final Map<String, String> variableTypes;
+
+    private final Map<String, Integer> intSlots = new LinkedHashMap<>();
+    private final Map<String, Integer> stringSlots = new LinkedHashMap<>();
+    private Quad.OperandTypes types; // Nuevo en cada pasada: las temporales cambian de tipo a lo largo del programa
+    private final Map<String, Label> labels = new HashMap<>();
+    private int nextSlot = FIRST_VARIABLE_SLOT;
+
+    public JvmBytecodeGenerator(List<String> programQuadruples, Map<String, String> variableTypes) {
+        this.program = Quad.parseAll(programQuadruples);
+        this.variableTypes = variableTypes;
+    }
+
+    // Programa ya cargado en la JVM, listo para ejecutarse cuantas veces se quiera
+    public static class CompiledProgram {
+        private final MethodHandle runMethod;
+        public final int classFileSize;
+
+        CompiledProgram(MethodHandle runMethod, int classFileSize) {
+            this.runMethod = runMethod;
+            this.classFileSize = classFileSize;
+        }
+
+        public void run(Supplier<String> input, Appendable output, long maxJumps) {
+            try {
+                runMethod.invokeExact(input, output, maxJumps);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException("Error al ejecutar el programa compilado: " + t.getMessage(), t);
+            }
+        }
+    }
+
+    // Cargador aislado: cada compilación define su propia clase y se descarta con ella
+    static class ProgramClassLoader extends ClassLoader {
+        ProgramClassLoader() {
+            super(JvmBytecodeGenerator.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] classBytes) {
+            return defineClass(name, classBytes, 0, classBytes.length);
+        }
+    }
+
+    public CompiledProgram load() {
+        byte[] classBytes = generateClassBytes();
+        Class<?> programClass = new ProgramClassLoader().define(CLASS_NAME, classBytes);
+        try {
+            MethodHandle run = MethodHandles.publicLookup().findStatic(programClass, "run",
+                    MethodType.methodType(void.class, Supplier.class, Appendable.class, long.class));
+            return new CompiledProgram(run, classBytes.length);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No se pudo enlazar el método run() generado", e);
+        }
+    }
+
+    public byte[] generateClassBytes() {
+        intSlots.clear();
+        stringSlots.clear();
+        labels.clear();
+        nextSlot = FIRST_VARIABLE_SLOT;
+
+        // Primera pasada: tipo y ranura de cada variable/temporal
+        types = new Quad.OperandTypes(variableTypes);
+        for (Quad quad : program) {
+            assignSlots(quad);
+        }
+        types = new Quad.OperandTypes(variableTypes);
+
+        return ClassFile.of().build(ClassDesc.of(CLASS_NAME), classBuilder -> classBuilder
+                .withFlags(ClassFile.ACC_PUBLIC | ClassFile.ACC_FINAL)
+                .withMethodBody("run", RUN_TYPE, ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC, this::generateRunBody));
+    }
+
+    private void generateRunBody(CodeBuilder cb) {
+        // Todas las locales se inicializan al inicio para que estén definidas en cualquier camino
+        for (int slot : intSlots.values()) {
+            cb.iconst_0();
+            cb.istore(slot);
+        }
+        for (int slot : stringSlots.values()) {
+            cb.loadConstant("");
+            cb.astore(slot);
+        }
+
+        Label budgetExceeded = cb.newLabel();
+        Label cancelled = cb.newLabel();
+        for (Quad quad : program) {
+            generateQuad(cb, quad, budgetExceeded, cancelled);
+        }
+        cb.return_();
+
+        throwNew(cb, budgetExceeded, CD_ILLEGAL_STATE, "Límite de ejecución excedido. ¿Ciclo infinito?");
+        throwNew(cb, cancelled, CD_CANCELLATION, "Ejecución cancelada.");
+    }
+
+    // label: throw new <exception>(message)
+    private static void throwNew(CodeBuilder cb, Label label, ClassDesc exception, String message) {
+        cb.labelBinding(label);
+        cb.new_(exception);
+        cb.dup();
+        cb.loadConstant(message);
+        cb.invokespecial(exception, "<init>", MethodTypeDesc.of(CD_void, CD_String));
+        cb.athrow();
+    }
+
+    private void assignSlots(Quad quad) {
+        switch (quad.kind) {
+            case IF:
+            case IF_FALSE:
+                slotOf(quad.arg1);
+                slotOf(quad.arg2);
+                break;
+            case READ:
+                types.define(quad.target, "String");
+                slotOf(quad.target);
+                break;
+            case PRINT:
+                slotOf(quad.arg1);
+                break;
+            case BINARY:
+                slotOf(quad.arg1);
+                slotOf(quad.arg2);
+                types.define(quad.target, types.resultOf(quad.arg1, quad.arg2));
+                slotOf(quad.target);
+                break;
+            case COPY:
+                slotOf(quad.arg1);
+                types.define(quad.target, types.of(quad.arg1));
+                slotOf(quad.target);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void generateQuad(CodeBuilder cb, Quad quad, Label budgetExceeded, Label cancelled) {
+        switch (quad.kind) {
+            case LABEL:
+                cb.labelBinding(labelFor(cb, quad.label));
+                break;
+            case GOTO:
+                // maxSaltos--; if (maxSaltos < 0) throw ...; if (Thread.interrupted()) throw ...
+                cb.lload(JUMP_BUDGET_SLOT);
+                cb.lconst_1();
+                cb.lsub();
+                cb.dup2();
+                cb.lstore(JUMP_BUDGET_SLOT);
+                cb.lconst_0();
+                cb.lcmp();
+                cb.iflt(budgetExceeded);
+                cb.invokestatic(CD_THREAD, "interrupted", MethodTypeDesc.of(CD_boolean));
+                cb.ifne(cancelled);
+                cb.goto_(labelFor(cb, quad.label));
+                break;
+            case IF:
+            case IF_FALSE:
+                generateConditionalJump(cb, quad.kind == Quad.Kind.IF, quad.arg1, quad.operator, quad.arg2, labelFor(cb, quad.label));
+                break;
+            case READ:
+                types.define(quad.target, "String");
+                // Objects.requireNonNullElse((String) entrada.get(), "")
+                cb.aload(INPUT_SLOT);
+                cb.invokeinterface(CD_SUPPLIER, "get", MethodTypeDesc.of(CD_Object));
+                cb.loadConstant("");
+                cb.invokestatic(CD_OBJECTS, "requireNonNullElse", MethodTypeDesc.of(CD_Object, CD_Object, CD_Object));
+                cb.checkcast(CD_String);
+                cb.astore(stringSlots.get(quad.target));
+                break;
+            case PRINT:
+                cb.aload(OUTPUT_SLOT);
+                if (types.isString(quad.arg1)) {
+                    loadString(cb, quad.arg1);
+                } else {
+                    loadInt(cb, quad.arg1);
+                    cb.invokestatic(CD_Integer, "toString", MethodTypeDesc.of(CD_String, CD_int));
+                }
+                cb.invokeinterface(CD_APPENDABLE, "append", MethodTypeDesc.of(CD_APPENDABLE, CD_CHAR_SEQUENCE));
+                cb.pop();
+                break;
+            case BINARY:
+                generateBinary(cb, quad.target, quad.arg1, quad.operator, quad.arg2);
+                break;
+            case COPY:
+                String type = types.of(quad.arg1);
+                types.define(quad.target, type);
+                if (type.equals("String")) {
+                    loadString(cb, quad.arg1);
+                    cb.astore(stringSlots.get(quad.target));
+                } else {
+                    loadInt(cb, quad.arg1);
+                    cb.istore(intSlots.get(quad.target));
+                }
+                break;
+            default:
+                throw new IllegalStateException("Cuádruplo no reconocido por el backend JVM: " + quad);
+        }
+    }
+
+    private void generateBinary(CodeBuilder cb, String dst, String arg1, String op, String arg2) {
+        String type = types.resultOf(arg1, arg2);
+        if (type.equals("String")) {
+            loadString(cb, arg1);
+            loadString(cb, arg2);
+            cb.invokevirtual(CD_String, "concat", MethodTypeDesc.of(CD_String, CD_String));
+            types.define(dst, type);
+            cb.astore(stringSlots.get(dst));
+            return;
+        }
+        loadInt(cb, arg1);
+        loadInt(cb, arg2);
+        switch (op) {
+            case "+": cb.iadd(); break;
+            case "-": cb.isub(); break;
+            case "*": cb.imul(); break;
+            case "/": cb.idiv(); break;
+            default:  cb.ishl(); break;
+        }
+        types.define(dst, type);
+        cb.istore(intSlots.get(dst));
+    }
+
+    private void generateConditionalJump(CodeBuilder cb, boolean jumpIfTrue, String arg1, String op, String arg2, Label target) {
+        if (types.isString(arg1)) {
+            loadString(cb, arg1);
+            loadString(cb, arg2);
+            if (op.equals("==")) {
+                cb.invokevirtual(CD_String, "equals", MethodTypeDesc.of(CD_boolean, CD_Object));
+                if (jumpIfTrue) {
+                    cb.ifne(target);
+                } else {
+                    cb.ifeq(target);
+                }
+                return;
+            }
+            cb.invokevirtual(CD_String, "compareTo", MethodTypeDesc.of(CD_int, CD_String));
+            switch (op) {
+                case "<":
+                    if (jumpIfTrue) { cb.iflt(target); } else { cb.ifge(target); }
+                    break;
+                default:
+                    if (jumpIfTrue) { cb.ifgt(target); } else { cb.ifle(target); }
+                    break;
+            }
+            return;
+        }
+        loadInt(cb, arg1);
+        loadInt(cb, arg2);
+        switch (op) {
+            case "<":
+                if (jumpIfTrue) { cb.if_icmplt(target); } else { cb.if_icmpge(target); }
+                break;
+            case ">":
+                if (jumpIfTrue) { cb.if_icmpgt(target); } else { cb.if_icmple(target); }
+                break;
+            default:
+                if (jumpIfTrue) { cb.if_icmpeq(target); } else { cb.if_icmpne(target); }
+                break;
+        }
+    }
+
+    private void loadInt(CodeBuilder cb, String operand) {
+        if (Quad.isIntLiteral(operand)) {
+            cb.loadConstant((ConstantDesc) Integer.valueOf(operand));
+        } else {
+            cb.iload(intSlots.get(operand));
+        }
+    }
+
+    private void loadString(CodeBuilder cb, String operand) {
+        if (Quad.isStringLiteral(operand)) {
+            cb.loadConstant(Quad.stringValue(operand));
+        } else {
+            cb.aload(stringSlots.get(operand));
+        }
+    }
+
+    private Label labelFor(CodeBuilder cb, String name) {
+        return labels.computeIfAbsent(name, n -> cb.newLabel());
+    }
+
+    private void slotOf(String operand) {
+        if (Quad.isStringLiteral(operand) || Quad.isIntLiteral(operand)) {
+            return; // Los literales van como constantes en el bytecode
+        }
+        Map<String, Integer> slots = types.isString(operand) ? stringSlots : intSlots;
+        if (!slots.containsKey(operand)) {
+            slots.put(operand, nextSlot++);
+        }
+    }
+}
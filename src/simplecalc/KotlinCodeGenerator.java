@@ -1,193 +1,408 @@
 package simplecalc;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
 
+/**
+ * Regenera código Kotlin a partir del código de tres direcciones optimizado del programa
+ * completo (Parser.getProgramQuadruples(): ya con propagación de constantes, plegado,
+ * simplificación algebraica y saltos resueltos en compilación).
+ *
+ * Kotlin no tiene saltos, así que las estructuras de control se reconocen en el grafo de
+ * flujo por las formas que emite ProgramBuilder:
+ *
+ *   if      IF_FALSE c GOTO Lf  ...  LABEL Lf
+ *   while   LABEL Lc  IF_FALSE c GOTO Lx  ...  GOTO Lc  LABEL Lx
+ *   for     i = a  [__fin_i_n = b]  LABEL Lc  IF i > b GOTO Lx  ...  i = i + 1  GOTO Lc  LABEL Lx
+ *
+ * y también las que quedan cuando ConstantPropagator resuelve la condición: un salto que
+ * desaparece (el 'if' se vuelve incondicional, el ciclo se vuelve 'while (true)') o que se
+ * vuelve GOTO (el bloque nunca se ejecuta y se omite). Un 'for' cuya variable se reasigna en
+ * el cuerpo o se usa después del ciclo se escribe como 'while', porque en Kotlin la variable
+ * de un 'for' es de sólo lectura y local al ciclo. Las temporales se sustituyen por la
+ * expresión que calculan; una variable declarada dentro de un bloque y usada fuera de él se
+ * declara antes del bloque.
+ *
+ * La salida se escribe línea a línea en un Appendable (un Writer, un StringBuilder, ...),
+ * así que un programa grande puede generarse directo a disco sin tener todo el texto en
+ * memoria: writeOptimizedKotlinCode(Path) usa un BufferedWriter. La sangría de cada nivel
+ * se construye una sola vez y se reutiliza.
+ */
 public class KotlinCodeGenerator {
 
-    private final List<Parser.ExpressionData> collectedExpressions;
+    private static final String INDENT_UNIT = "    "; // 4 espacios por nivel de indentación
+    private static final String[] INDENTS = new String[16];
+    private static final String READ_LINE = "readLine() ?: \"\""; // La VM lee "" al final de la entrada
+
+    static {
+        INDENTS[0] = "";
+        for (int i = 1; i < INDENTS.length; i++) {
+            INDENTS[i] = INDENTS[i - 1] + INDENT_UNIT;
+        }
+    }
+
+    private final List<Quad> program;
     private final Map<String, String> variableTypes; // Necesitamos los tipos para las declaraciones
     private final Map<String, Boolean> isVar; // Para saber si es val o var
-    private final Map<String, String> lastKnownValue = new HashMap<>(); // Para la propagación de valores
-    private final StringBuilder generatedCode = new StringBuilder();
-    private int indentLevel = 0;
+    private final Set<String> declaredVariables = new HashSet<>(); // Variables ya declaradas en el código generado
+    private final Map<String, String> temporaryExpressions = new HashMap<>(); // Temporal -> expresión Kotlin
+    private final Set<String> compositeTemporaries = new HashSet<>(); // Su expresión lleva paréntesis como operando
 
-    // Patrones para parsear los cuádruplos optimizados
-    private static final Pattern ASSIGNMENT_QUAD_PATTERN = Pattern.compile("([a-zA-Z_][a-zA-Z0-9_]*) = (.+)");
-    private static final Pattern PRINT_QUAD_PATTERN = Pattern.compile("PRINT (.+)");
-    private static final Pattern RANGE_START_QUAD_PATTERN = Pattern.compile("RANGE_START (.+)");
-    private static final Pattern RANGE_END_QUAD_PATTERN = Pattern.compile("RANGE_END (.+)");
-    private static final Pattern ARITHMETIC_QUAD_PATTERN = Pattern.compile("(t\\d+) = (.+) ([+\\-*/]) (.+)"); // Aritméticos que aún podrían quedar
+    // Índices en 'program' precalculados para reconocer las estructuras
+    private final Map<String, Integer> labelIndex = new HashMap<>();
+    private final Map<String, Integer> lastJumpIndex = new HashMap<>(); // Último GOTO a cada etiqueta
+    private final Map<String, int[]> references = new HashMap<>(); // Variable -> {primera, última} referencia
+    private final List<String> variablesByFirstDefinition = new ArrayList<>();
+    private final List<Integer> firstDefinitions = new ArrayList<>(); // Paralela a la anterior, creciente
 
-    public KotlinCodeGenerator(List<Parser.ExpressionData> collectedExpressions, Map<String, String> variableTypes, Map<String, Boolean> isVar) {
-        this.collectedExpressions = collectedExpressions;
+    private Appendable out;
+    private int indentLevel = 0;
+
+    public KotlinCodeGenerator(List<String> programQuadruples, Map<String, String> variableTypes, Map<String, Boolean> isVar) {
+        this.program = Quad.parseAll(programQuadruples);
         this.variableTypes = new HashMap<>(variableTypes); // Copia para no modificar el original del parser
         this.isVar = new HashMap<>(isVar); // Copia
+        indexProgram();
     }
 
     public String generateOptimizedKotlinCode() {
-        generatedCode.append("fun main() {\n");
+        StringBuilder generatedCode = new StringBuilder();
+        try {
+            generateOptimizedKotlinCode(generatedCode);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Un StringBuilder nunca la lanza
+        }
+        return generatedCode.toString();
+    }
+
+    // Genera el programa directamente en un archivo (UTF-8)
+    public void writeOptimizedKotlinCode(Path path) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            generateOptimizedKotlinCode(writer);
+        }
+    }
+
+    // Escribe el programa en 'out' conforme se genera; no cierra ni vacía 'out'
+    public void generateOptimizedKotlinCode(Appendable out) throws IOException {
+        CompilerEvents.GenerateKotlin event = new CompilerEvents.GenerateKotlin();
+        event.begin();
+        this.out = out;
+        indentLevel = 0;
+        declaredVariables.clear();
+        temporaryExpressions.clear();
+        compositeTemporaries.clear();
+        out.append("fun main() {\n");
         increaseIndent();
+        emitRange(0, program.size());
+        decreaseIndent();
+        out.append("}\n");
+        event.end();
+        if (event.shouldCommit()) {
+            event.quadruples = program.size();
+            event.variables = variablesByFirstDefinition.size();
+            event.labels = labelIndex.size();
+            event.commit();
+        }
+    }
 
-        // Regenerar declaraciones y asignaciones principales
-        // Las expresiones están recolectadas en el orden en que aparecen en el código.
-        for (Parser.ExpressionData exprData : collectedExpressions) {
-            String target = extractTargetFromExpressionData(exprData.infixTokens);
-            List<String> quadruples = exprData.quadruples; // Usamos los cuádruplos YA OPTIMIZADOS
+    private void indexProgram() {
+        Set<String> defined = new HashSet<>();
+        for (int i = 0; i < program.size(); i++) {
+            Quad quad = program.get(i);
+            if (quad.kind == Quad.Kind.LABEL) {
+                labelIndex.put(quad.label, i);
+            } else if (quad.kind == Quad.Kind.GOTO) {
+                lastJumpIndex.put(quad.label, i);
+            }
+            reference(quad.arg1, i);
+            reference(quad.arg2, i);
+            if (reference(quad.target, i) && defined.add(quad.target)) {
+                variablesByFirstDefinition.add(quad.target);
+                firstDefinitions.add(i);
+            }
+        }
+    }
 
-            // Si no hay cuádruplos, significa que la expresión fue completamente trivial o eliminada
-            // En nuestro caso, las declaraciones y prints siempre resultarán en al menos un cuádruplo final.
-            if (quadruples.isEmpty()) {
-                continue;
+    private boolean reference(String operand, int index) {
+        if (operand == null || Quad.isIntLiteral(operand) || Quad.isStringLiteral(operand) || Quad.isTemporary(operand)) {
+            return false;
+        }
+        int[] range = references.get(operand);
+        if (range == null) {
+            references.put(operand, new int[] {index, index});
+        } else {
+            range[1] = index;
+        }
+        return true;
+    }
+
+    // Emite los cuádruplos [from, to) como sentencias Kotlin
+    private void emitRange(int from, int to) throws IOException {
+        int i = from;
+        while (i < to) {
+            Quad quad = program.get(i);
+            switch (quad.kind) {
+                case LABEL:
+                    i = emitLoop(i, to);
+                    break;
+                case IF:
+                case IF_FALSE:
+                    i = emitIf(i, to);
+                    break;
+                case GOTO:
+                    // Salto hacia adelante que quedó de una condición siempre falsa: el bloque no se ejecuta
+                    i = forwardTarget(quad, i, to);
+                    break;
+                case PRINT:
+                    appendIndent().append("print(").append(operand(quad.arg1)).append(")\n");
+                    i++;
+                    break;
+                case COPY:
+                case BINARY:
+                case READ:
+                    i = emitAssignment(i, to);
+                    break;
+                default:
+                    i++; // RANGE_START/RANGE_END sólo aparecen en los cuádruplos de ExpressionData
+                    break;
             }
+        }
+    }
+
+    // Una etiqueta con un salto de regreso posterior es la cabecera de un ciclo; si no, es la unión de un 'if'
+    private int emitLoop(int header, int to) throws IOException {
+        Integer backJump = lastJumpIndex.get(program.get(header).label);
+        if (backJump == null || backJump <= header || backJump >= to) {
+            return header + 1;
+        }
+        int test = skipTemporaries(header + 1, backJump);
+        Quad testQuad = program.get(test);
+        int exit = backJump + 1 < to && program.get(backJump + 1).kind == Quad.Kind.LABEL ? backJump + 1 : -1;
+        String exitLabel = exit >= 0 ? program.get(exit).label : null;
+
+        if ((testQuad.kind == Quad.Kind.IF || testQuad.kind == Quad.Kind.IF_FALSE) && testQuad.label.equals(exitLabel)) {
+            declareEscapingVariables(header, exit);
+            emitRange(header + 1, test); // Temporales de la condición
+            // IF_FALSE c GOTO salida: se itera mientras c; IF c GOTO salida: mientras no c
+            appendIndent().append("while (").append(condition(testQuad, testQuad.kind == Quad.Kind.IF)).append(") {\n");
+            emitBlock(test + 1, backJump);
+            return exit + 1;
+        }
+        if (testQuad.kind == Quad.Kind.GOTO && testQuad.label.equals(exitLabel)) {
+            return exit + 1; // Condición siempre falsa: el ciclo nunca entra
+        }
+        // Condición siempre verdadera: el salto de salida desapareció
+        declareEscapingVariables(header, backJump);
+        appendIndent().append("while (true) {\n");
+        emitBlock(header + 1, backJump);
+        return backJump + 1;
+    }
+
+    // IF_FALSE c GOTO Lf ... LABEL Lf  ->  if (c) { ... }
+    private int emitIf(int jump, int to) throws IOException {
+        Quad quad = program.get(jump);
+        int end = forwardTarget(quad, jump, to);
+        declareEscapingVariables(jump, end);
+        appendIndent().append("if (").append(condition(quad, quad.kind == Quad.Kind.IF)).append(") {\n");
+        emitBlock(jump + 1, end);
+        return end; // La etiqueta de unión se salta en emitLoop
+    }
 
-            String finalQuad = quadruples.get(quadruples.size() - 1); // El último cuádruplo es el más relevante para el resultado final
-
-            Matcher assignmentMatcher = ASSIGNMENT_QUAD_PATTERN.matcher(finalQuad);
-            Matcher printMatcher = PRINT_QUAD_PATTERN.matcher(finalQuad);
-            Matcher rangeStartMatcher = RANGE_START_QUAD_PATTERN.matcher(finalQuad);
-            Matcher rangeEndMatcher = RANGE_END_QUAD_PATTERN.matcher(finalQuad);
-
-            // Intentamos recrear la línea de código Kotlin
-            if (assignmentMatcher.matches()) {
-                String varName = assignmentMatcher.group(1);
-                String value = assignmentMatcher.group(2);
-
-                // Reconstruir el valor, ya aplicando Copy Propagation/Constant Folding
-                String finalValue = reconstructExpression(value, exprData.numericResultsSimulation, lastKnownValue);
-
-                // Si la variable se declaró por primera vez en esta línea
-                if (!lastKnownValue.containsKey(varName)) {
-                    // Para simplificar, asumimos que siempre es Int si es una expresión numérica.
-                    // En un compilador real, el tipo se sabría desde el AST o la tabla de símbolos.
-                    String type = variableTypes.getOrDefault(varName, "Int");
-                    String keyword = isVar.getOrDefault(varName, false) ? "var" : "val";
-                    appendIndent().append(String.format("%s %s: %s = %s\n", keyword, varName, type, finalValue));
-                } else {
-                    // Es una reasignación
-                    appendIndent().append(String.format("%s = %s\n", varName, finalValue));
-                }
-                lastKnownValue.put(varName, finalValue); // Actualizar el último valor conocido para propagación
-            } else if (printMatcher.matches()) {
-                String valueToPrint = printMatcher.group(1);
-                String finalValue = reconstructExpression(valueToPrint, exprData.numericResultsSimulation, lastKnownValue);
-                // Si es una cadena literal, la imprimimos directamente.
-                if (finalValue.startsWith("\"") && finalValue.endsWith("\"")) {
-                    appendIndent().append(String.format("print(%s)\n", finalValue));
-                } else {
-                    appendIndent().append(String.format("print(%s)\n", finalValue));
-                }
+    private int emitAssignment(int index, int to) throws IOException {
+        Quad quad = program.get(index);
+        if (Quad.isTemporary(quad.target)) {
+            defineTemporary(quad);
+            return index + 1;
+        }
+        int next = emitFor(index, to);
+        if (next >= 0) {
+            return next;
+        }
+        declareOrAssign(quad.target, quad.kind == Quad.Kind.READ ? READ_LINE : expression(quad));
+        return index + 1;
+    }
+
+    /**
+     * Reconoce 'i = a [__fin_i_n = b] LABEL Lc IF i > b GOTO Lx ... i = i + 1 GOTO Lc LABEL Lx'
+     * y lo escribe como 'for (i in a..b)'. Devuelve el índice siguiente al ciclo, o -1 si no
+     * es un 'for' que se pueda escribir así (entonces se escribe como asignación y 'while').
+     */
+    private int emitFor(int start, int to) throws IOException {
+        Quad init = program.get(start);
+        String variable = init.target;
+        if (init.kind == Quad.Kind.READ || declaredVariables.contains(variable)) {
+            return -1;
+        }
+        int header = skipTemporaries(start + 1, to);
+        Quad rangeEnd = null;
+        if (header < to && program.get(header).kind != Quad.Kind.READ && program.get(header).target != null
+                && program.get(header).target.startsWith("__fin_" + variable + "_")) {
+            rangeEnd = program.get(header);
+            header++;
+        }
+        if (header + 1 >= to || program.get(header).kind != Quad.Kind.LABEL) {
+            return -1;
+        }
+        Quad test = program.get(header + 1);
+        Integer backJump = lastJumpIndex.get(program.get(header).label);
+        if (test.kind != Quad.Kind.IF || !test.arg1.equals(variable) || !test.operator.equals(">")
+                || backJump == null || backJump <= header + 1 || backJump + 1 >= to) {
+            return -1;
+        }
+        int exit = backJump + 1;
+        Quad increment = program.get(backJump - 1);
+        if (program.get(exit).kind != Quad.Kind.LABEL || !program.get(exit).label.equals(test.label)
+                || increment.kind != Quad.Kind.BINARY || !variable.equals(increment.target)
+                || !variable.equals(increment.arg1) || !increment.operator.equals("+") || !increment.arg2.equals("1")) {
+            return -1;
+        }
+        // La variable del 'for' no puede reasignarse en el cuerpo ni usarse después del ciclo
+        for (int i = header + 2; i < backJump - 1; i++) {
+            if (variable.equals(program.get(i).target)) {
+                return -1;
             }
-            // Por ahora, ignoramos la reconstrucción de FOR/IF/WHILE en este generador simplificado,
-            // ya que son más complejos y no son el foco de esta demo de optimización de expresiones.
-            // Para RANGE_START/END, simplemente los omitimos ya que son constructos internos para el bucle for.
-            // Si la GUI quisiera mostrar un 'for', necesitaría una lógica mucho más compleja.
         }
+        if (references.get(variable)[1] > exit) {
+            return -1;
+        }
+        String hidden = rangeEnd != null ? rangeEnd.target : null;
+        if (hidden != null && references.get(hidden)[1] > header + 1) {
+            return -1;
+        }
+
+        String first = rangeBound(init);
+        for (int i = start + 1; i < header; i++) {
+            if (Quad.isTemporary(program.get(i).target)) {
+                defineTemporary(program.get(i));
+            }
+        }
+        String last = test.arg2.equals(hidden) ? rangeBound(rangeEnd) : operandInExpression(test.arg2);
 
+        declareEscapingVariables(start, exit);
+        declaredVariables.add(variable);
+        appendIndent().append("for (").append(variable).append(" in ").append(first).append("..").append(last).append(") {\n");
+        emitBlock(header + 2, backJump - 1);
+        return exit + 1;
+    }
+
+    private void emitBlock(int from, int to) throws IOException {
+        increaseIndent();
+        emitRange(from, to);
         decreaseIndent();
-        generatedCode.append("}\n");
+        appendIndent().append("}\n");
+    }
 
-        return generatedCode.toString();
+    private void declareOrAssign(String variable, String value) throws IOException {
+        // Si la variable se declara por primera vez en esta línea
+        if (declaredVariables.add(variable)) {
+            String type = variableTypes.getOrDefault(variable, "Int");
+            String keyword = isVar.getOrDefault(variable, false) ? "var" : "val";
+            appendIndent().append(keyword).append(' ').append(variable).append(": ").append(type)
+                          .append(" = ").append(value).append('\n');
+        } else {
+            // Es una reasignación
+            appendIndent().append(variable).append(" = ").append(value).append('\n');
+        }
     }
 
-    private String extractTargetFromExpressionData(List<Token> infixTokens) {
-        if (infixTokens.isEmpty()) return "UNKNOWN";
-        // Si la primera palabra es 'val' o 'var', el segundo token es el ID
-        if (infixTokens.get(0).type == Token.TokenType.VAL_KEYWORD || infixTokens.get(0).type == Token.TokenType.VAR_KEYWORD) {
-            if (infixTokens.size() > 1 && infixTokens.get(1).type == Token.TokenType.ID) {
-                return infixTokens.get(1).lexeme;
+    /**
+     * Las variables que se declaran por primera vez entre 'from' y 'to' (inclusive) pero se
+     * usan fuera de ese rango se declaran antes del bloque, con un valor inicial por defecto:
+     * en Kotlin una declaración dentro de un bloque no es visible después de él.
+     */
+    private void declareEscapingVariables(int from, int to) throws IOException {
+        int position = Collections.binarySearch(firstDefinitions, from);
+        for (int i = position >= 0 ? position : -position - 1; i < firstDefinitions.size() && firstDefinitions.get(i) <= to; i++) {
+            String variable = variablesByFirstDefinition.get(i);
+            int[] range = references.get(variable);
+            if ((range[0] < from || range[1] > to) && declaredVariables.add(variable)) {
+                String type = variableTypes.getOrDefault(variable, "Int");
+                appendIndent().append("var ").append(variable).append(": ").append(type)
+                              .append(" = ").append(type.equals("String") ? "\"\"" : "0").append('\n');
             }
         }
-        // Si el primer token es un ID y el segundo es ASIGNACION, el ID es el target
-        if (infixTokens.get(0).type == Token.TokenType.ID) {
-            return infixTokens.get(0).lexeme;
-        }
-        // Caso print o range_start/end, el target real es un placeholder
-        // Para print, ya está manejado por el patrón PRINT_QUAD_PATTERN.
-        return "UNKNOWN"; // Default
-    }
-
-
-    // Intenta reconstruir una expresión a partir de su forma final optimizada o un valor directo.
-    // Utiliza lastKnownValue para la propagación si es una variable.
-    private String reconstructExpression(String expressionPart, Map<String, Integer> numericResultsSimulation, Map<String, String> lastKnownValues) {
-        // 1. Si es un literal (número o cadena)
-        if (isNumericLiteral(expressionPart) || (expressionPart.startsWith("\"") && expressionPart.endsWith("\""))) {
-            return expressionPart;
-        }
-
-        // 2. Si es una variable temporal (tX) y su valor numérico está disponible
-        if (expressionPart.startsWith("t") && numericResultsSimulation.containsKey(expressionPart)) {
-            return String.valueOf(numericResultsSimulation.get(expressionPart));
-        }
-        
-        // 3. Si es una variable (ID) y tenemos su último valor conocido propagado
-        if (lastKnownValues.containsKey(expressionPart)) {
-            return lastKnownValues.get(expressionPart);
-        }
-
-        // 4. Si es una operación aritmética simple que aún no se plegó (raro con el optimizador actual)
-        // Esto es muy simplificado y no maneja expresiones anidadas o complejas que podrían quedar.
-        Matcher arithmeticMatcher = Pattern.compile("(.+) ([+\\-*/]) (.+)").matcher(expressionPart);
-        if (arithmeticMatcher.matches()) {
-            String op1 = reconstructExpression(arithmeticMatcher.group(1), numericResultsSimulation, lastKnownValues);
-            String operator = arithmeticMatcher.group(2);
-            String op2 = reconstructExpression(arithmeticMatcher.group(3), numericResultsSimulation, lastKnownValues);
-            // Podríamos intentar Constant Foldear aquí de nuevo si ambos son literales
-            if (isNumericLiteral(op1) && isNumericLiteral(op2)) {
-                try {
-                    int val1 = Integer.parseInt(op1);
-                    int val2 = Integer.parseInt(op2);
-                    int result = evaluate(val1, val2, operator); // Usa tu método evaluate
-                    return String.valueOf(result);
-                } catch (NumberFormatException e) {
-                    // Fallback
-                }
-            }
-            return String.format("%s %s %s", op1, operator, op2);
+    }
+
+    // Índice de la etiqueta a la que salta 'quad' hacia adelante, dentro de [index, to]
+    private int forwardTarget(Quad quad, int index, int to) {
+        Integer target = labelIndex.get(quad.label);
+        if (target == null || target <= index || target > to) {
+            throw new IllegalStateException("Flujo de control no estructurado en el cuádruplo " + index + ": " + quad);
         }
+        return target;
+    }
 
+    private int skipTemporaries(int from, int to) {
+        int i = from;
+        while (i < to && program.get(i).target != null && Quad.isTemporary(program.get(i).target)) {
+            i++;
+        }
+        return i;
+    }
 
-        // Por defecto, devolver la parte de la expresión tal cual
-        return expressionPart;
+    private void defineTemporary(Quad quad) {
+        boolean composite = quad.kind != Quad.Kind.COPY || compositeTemporaries.contains(quad.arg1);
+        temporaryExpressions.put(quad.target, quad.kind == Quad.Kind.READ ? READ_LINE : expression(quad));
+        if (composite) {
+            compositeTemporaries.add(quad.target);
+        } else {
+            compositeTemporaries.remove(quad.target);
+        }
     }
 
-    // Método auxiliar para evaluar operaciones (copiado del Parser)
-    private int evaluate(int val1, int val2, String opType) {
-        switch (opType) {
-            case "+": return val1 + val2;
-            case "-": return val1 - val2;
-            case "*": return val1 * val2;
-            case "/":
-                if (val2 == 0) {
-                    // Esto no debería ocurrir si el optimizador ya manejó divisiones por cero con CF.
-                    // Pero como fallback, podemos devolver 0 o lanzar una excepción.
-                    System.err.println("ADVERTENCIA: División por cero detectada durante la reconstrucción.");
-                    return 0;
-                }
-                return val1 / val2;
-            default: return 0;
+    // Condición de un salto, o su negación
+    private String condition(Quad jump, boolean negate) {
+        String operator = jump.operator;
+        if (negate) {
+            operator = operator.equals("<") ? ">=" : operator.equals(">") ? "<=" : "!=";
         }
+        return operandInExpression(jump.arg1) + " " + operator + " " + operandInExpression(jump.arg2);
     }
 
-    private boolean isNumericLiteral(String s) {
-        try {
-            Integer.parseInt(s);
-            return true;
-        } catch (NumberFormatException e) {
-            return false;
+    // Expresión Kotlin del valor de un cuádruplo de asignación (x = a, x = a op b)
+    private String expression(Quad quad) {
+        if (quad.kind == Quad.Kind.COPY) {
+            return operand(quad.arg1);
         }
+        // El optimizador emite '<<' para multiplicaciones por potencias de dos; en Kotlin es 'shl'.
+        return operandInExpression(quad.arg1) + " " + (quad.operator.equals("<<") ? "shl" : quad.operator) + " "
+             + operandInExpression(quad.arg2);
     }
 
-    private StringBuilder appendIndent() {
-        for (int i = 0; i < indentLevel; i++) {
-            generatedCode.append("    "); // 4 espacios por nivel de indentación
+    // Extremo de un rango 'a..b': '..' tiene más precedencia que 'shl' y menos que '+'
+    private String rangeBound(Quad quad) {
+        return quad.kind == Quad.Kind.COPY ? operandInExpression(quad.arg1) : "(" + expression(quad) + ")";
+    }
+
+    // Un literal o una variable se usa tal cual; una temporal, por la expresión que calcula
+    private String operand(String operand) {
+        if (Quad.isTemporary(operand)) {
+            String expression = temporaryExpressions.get(operand);
+            if (expression != null) {
+                return expression;
+            }
         }
-        return generatedCode;
+        return operand;
+    }
+
+    // Una subexpresión compuesta usada como operando va entre paréntesis
+    private String operandInExpression(String operand) {
+        return compositeTemporaries.contains(operand) ? "(" + operand(operand) + ")" : operand(operand);
+    }
+
+    private Appendable appendIndent() throws IOException {
+        return out.append(indentLevel < INDENTS.length ? INDENTS[indentLevel] : INDENT_UNIT.repeat(indentLevel));
     }
 
     private void increaseIndent() {
@@ -199,4 +414,4 @@ public class KotlinCodeGenerator {
             indentLevel--;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,138 @@
+package simplecalc;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mide el rendimiento del KotlinCodeGenerator con programas sintéticos grandes
+ * (100 000 sentencias por defecto), sin pasar por el lexer ni el parser: el código de tres
+ * direcciones se construye directamente con las formas que produce ProgramBuilder
+ * (temporales reutilizadas, desplazamientos, PRINT de cadenas y de expresiones, y bloques
+ * 'if', 'while' y 'for' con sus etiquetas y saltos).
+ *
+ * Uso: java -cp build/classes simplecalc.KotlinCodeGeneratorBenchmark [sentencias] [repeticiones]
+ */
+public class KotlinCodeGeneratorBenchmark {
+
+    private static final int VARIABLES = 64;
+    private static final int WARMUP_ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+        int statements = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        List<String> program = syntheticProgram(statements);
+        Map<String, String> types = new HashMap<>();
+        Map<String, Boolean> isVar = new HashMap<>();
+        for (int v = 0; v < VARIABLES; v++) {
+            types.put("v" + v, "Int");
+            isVar.put("v" + v, true);
+        }
+
+        System.out.printf("KotlinCodeGenerator: %d sentencias (%d cuádruplos), %d repeticiones%n",
+                          statements, program.size(), rounds);
+        int outputLength = new KotlinCodeGenerator(program, types, isVar).generateOptimizedKotlinCode().length();
+        measure("String", statements, outputLength, rounds,
+                () -> new KotlinCodeGenerator(program, types, isVar).generateOptimizedKotlinCode().length());
+        // Sin acumular la salida: lo que cuesta generar directo a un archivo, sin la escritura a disco
+        measure("Writer", statements, outputLength, rounds, () -> {
+            new KotlinCodeGenerator(program, types, isVar).generateOptimizedKotlinCode(Writer.nullWriter());
+            return 0;
+        });
+    }
+
+    private interface Run {
+        int run() throws IOException;
+    }
+
+    private static void measure(String mode, int statements, int outputLength, int rounds, Run generation) throws IOException {
+        long checksum = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            checksum += generation.run();
+        }
+        long best = Long.MAX_VALUE;
+        long total = 0;
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            checksum += generation.run();
+            long time = System.nanoTime() - start;
+            best = Math.min(best, time);
+            total += time;
+        }
+        double mean = total / (double) rounds;
+        System.out.printf("  %-6s media %.2f ms, mejor %.2f ms, %.0f sentencias/s, %.1f MB/s de código Kotlin (suma de control %d)%n",
+                          mode, mean / 1e6, best / 1e6, statements / (mean / 1e9),
+                          outputLength / (mean / 1e9) / (1 << 20), checksum);
+    }
+
+    // Ciclo de ocho formas de sentencia sobre VARIABLES variables; cada bloque cuenta como una sentencia más
+    static List<String> syntheticProgram(int statements) {
+        List<String> program = new ArrayList<>(statements * 3);
+        for (int v = 0; v < VARIABLES; v++) {
+            program.add("v" + v + " = " + v);
+        }
+        int labels = 0;
+        for (int i = 0; i < statements; i++) {
+            String a = "v" + (i % VARIABLES);
+            String b = "v" + ((i * 7 + 3) % VARIABLES);
+            String c = "v" + ((i * 13 + 5) % VARIABLES);
+            switch (i % 8) {
+                case 0: // a = (b + 3) * c - 7
+                    program.add("t1 = " + b + " + 3");
+                    program.add("t1 = t1 * " + c);
+                    program.add(a + " = t1 - 7");
+                    break;
+                case 1: // a = b * 8 + c / 2
+                    program.add("t1 = " + b + " << 3");
+                    program.add("t2 = " + c + " / 2");
+                    program.add(a + " = t1 + t2");
+                    break;
+                case 2: // if (b > c) { a = a + 1 }
+                    String endIf = "L" + (++labels);
+                    program.add("IF_FALSE " + b + " > " + c + " GOTO " + endIf);
+                    program.add(a + " = " + a + " + 1");
+                    program.add("LABEL " + endIf);
+                    break;
+                case 3:
+                    program.add("PRINT \"Resultado parcial: \"");
+                    break;
+                case 4: // while (a < b + 10) { a = a + 2 }
+                    String condition = "L" + (++labels);
+                    String exit = "L" + (++labels);
+                    program.add("LABEL " + condition);
+                    program.add("t1 = " + b + " + 10");
+                    program.add("IF_FALSE " + a + " < t1 GOTO " + exit);
+                    program.add(a + " = " + a + " + 2");
+                    program.add("GOTO " + condition);
+                    program.add("LABEL " + exit);
+                    break;
+                case 5: // for (iN in 1..c) { a = a + iN * 4 }
+                    String loopVariable = "i" + i;
+                    String header = "L" + (++labels);
+                    String loopExit = "L" + (++labels);
+                    program.add(loopVariable + " = 1");
+                    program.add("LABEL " + header);
+                    program.add("IF " + loopVariable + " > " + c + " GOTO " + loopExit);
+                    program.add("t1 = " + loopVariable + " << 2");
+                    program.add(a + " = " + a + " + t1");
+                    program.add(loopVariable + " = " + loopVariable + " + 1");
+                    program.add("GOTO " + header);
+                    program.add("LABEL " + loopExit);
+                    break;
+                case 6: // a = 1234 (constante ya plegada)
+                    program.add(a + " = " + (i % 9973));
+                    break;
+                default: // print(a - b * c)
+                    program.add("t1 = " + b + " * " + c);
+                    program.add("t1 = " + a + " - t1");
+                    program.add("PRINT t1");
+                    break;
+            }
+        }
+        return program;
+    }
+}
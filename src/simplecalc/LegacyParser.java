@@ -15,12 +15,13 @@ public class LegacyParser {
 
     private final List<Token> tokens;
     private int current = 0;
-    private List<String> errors = new ArrayList<>();
+    private List<Diagnostic> errors = new ArrayList<>();
     private Set<String> declaredVariables = new HashSet<>();
     private Map<String, String> variableTypes = new HashMap<>();
     private Map<String, Integer> variableValues = new HashMap<>(); // Para almacenar los valores numéricos actuales de las variables
 
     private List<ExpressionData> collectedExpressions = new ArrayList<>();
+    private CompilationMetrics.Recorder metrics; // Tiempo por fase (null: no se mide)
 
     // Clase auxiliar para almacenar los datos de cada expresión
     public static class ExpressionData {
@@ -45,43 +46,35 @@ public class LegacyParser {
 
         @Override
         public String toString() {
-            StringBuilder sb = new StringBuilder();
-            sb.append("  Original (Infija): ").append(LegacyParser.tokensToString(infixTokens)).append("\n"); // Cambio aquí
-            sb.append("  Pila (Infija a Prefija):\n");
-            if (prefixStackSimulation.isEmpty() || prefixStackSimulation.size() <= 1) {
-                sb.append("    (No aplica / Trivial para esta expresión)\n");
-            } else {
-                for (String step : prefixStackSimulation) {
-                    sb.append("    ").append(step).append("\n");
-                }
-            }
+            Parser.ReportLines report = Parser.ReportLines.text();
+            writeReport(report);
+            return report.toString();
+        }
 
-            sb.append("  Prefija: ").append(prefixExpression).append("\n");
+        // Líneas que tendrá toString(), sin armarlo (para el reporte paginado de la ventana)
+        int reportLineCount() {
+            Parser.ReportLines report = Parser.ReportLines.counter();
+            writeReport(report);
+            return report.lineCount();
+        }
 
-            sb.append("  Cuádruplos (Tres Direcciones):\n");
-            if (quadruples.isEmpty()) {
-                sb.append("    (No aplica para esta expresión)\n");
-            } else {
-                for (String quad : quadruples) {
-                    sb.append("    ").append(quad).append("\n");
-                }
-            }
+        private void writeReport(Parser.ReportLines report) {
+            report.line(() -> "  Original (Infija): " + LegacyParser.tokensToString(infixTokens)); // Cambio aquí
+            report.line("  Pila (Infija a Prefija):");
+            report.items(prefixStackSimulation, prefixStackSimulation.size() <= 1, "(No aplica / Trivial para esta expresión)");
 
-            sb.append("  Pila (Generación Cuádruplos desde Infija):\n");
-            if (quadrupleStackSimulation.isEmpty() || quadrupleStackSimulation.size() <= 1) {
-                sb.append("    (No aplica / Trivial para esta expresión)\n");
-            } else {
-                for (String step : quadrupleStackSimulation) {
-                    sb.append("    ").append(step).append("\n");
-                }
-            }
+            report.line(() -> "  Prefija: " + prefixExpression);
+
+            report.line("  Cuádruplos (Tres Direcciones):");
+            report.items(quadruples, quadruples.isEmpty(), "(No aplica para esta expresión)");
+
+            report.line("  Pila (Generación Cuádruplos desde Infija):");
+            report.items(quadrupleStackSimulation, quadrupleStackSimulation.size() <= 1, "(No aplica / Trivial para esta expresión)");
 
             if (!numericResultsSimulation.isEmpty()) {
-                sb.append("  Resultados Numéricos:\n");
-                numericResultsSimulation.forEach((var, val) -> sb.append(String.format("    %s = %d\n", var, val)));
+                report.line("  Resultados Numéricos:");
+                numericResultsSimulation.forEach((var, val) -> report.line(() -> String.format("    %s = %d", var, val)));
             }
-
-            return sb.toString();
         }
     }
 
@@ -89,7 +82,16 @@ public class LegacyParser {
         this.tokens = tokens;
     }
 
-    public List<String> getErrors() {
+    // Como en el Parser: marca la conversión a prefija y la generación de cuádruplos
+    void setMetrics(CompilationMetrics.Recorder metrics) {
+        this.metrics = metrics;
+    }
+
+    private CompilationMetrics.Phase phase(CompilationMetrics.Phase next) {
+        return metrics != null ? metrics.switchTo(next) : null;
+    }
+
+    public List<Diagnostic> getErrors() {
         return errors;
     }
 
@@ -143,8 +145,7 @@ public class LegacyParser {
         while (!check(LLAVE_DER) && !isAtEnd()) {
             if (peek().type == ERROR) {
                 String lexerErrorMessage = peek().errorMessage != null ? peek().errorMessage : peek().lexeme + " (Caracter inesperado)";
-                errors.add(String.format("[Línea %d, Col %d] Error léxico: %s (token ignorado)",
-                        peek().line, peek().column, lexerErrorMessage));
+                errors.add(Diagnostic.lexical(peek(), lexerErrorMessage + " (token ignorado)"));
                 advance();
                 continue;
             }
@@ -330,8 +331,7 @@ public class LegacyParser {
         while (!check(LLAVE_DER) && !isAtEnd()) {
             if (peek().type == ERROR) {
                 String lexerErrorMessage = peek().errorMessage != null ? peek().errorMessage : peek().lexeme + " (Caracter inesperado)";
-                errors.add(String.format("[Línea %d, Col %d] Error léxico: %s (token ignorado)",
-                        peek().line, peek().column, lexerErrorMessage));
+                errors.add(Diagnostic.lexical(peek(), lexerErrorMessage + " (token ignorado)"));
                 advance();
                 continue;
             }
@@ -411,8 +411,7 @@ public class LegacyParser {
         while (!check(LLAVE_DER) && !isAtEnd()) {
             if (peek().type == ERROR) {
                 String lexerErrorMessage = peek().errorMessage != null ? peek().errorMessage : peek().lexeme + " (Caracter inesperado)";
-                errors.add(String.format("[Línea %d, Col %d] Error léxico: %s (token ignorado)",
-                        peek().line, peek().column, lexerErrorMessage));
+                errors.add(Diagnostic.lexical(peek(), lexerErrorMessage + " (token ignorado)"));
                 advance();
                 continue;
             }
@@ -558,8 +557,7 @@ public class LegacyParser {
     private Token consume(Token.TokenType type, String message) {
         if (peek().type == ERROR && type != ERROR) {
             String lexerErrorMessage = peek().errorMessage != null ? peek().errorMessage : peek().lexeme + " (Caracter inesperado)";
-            errors.add(String.format("[Línea %d, Col %d] Error léxico: %s (token ignorado para análisis sintáctico)",
-                    peek().line, peek().column, lexerErrorMessage));
+            errors.add(Diagnostic.lexical(peek(), lexerErrorMessage + " (token ignorado para análisis sintáctico)"));
             advance();
             if (check(type)) {
                 return advance();
@@ -580,13 +578,13 @@ public class LegacyParser {
 
     private SyntaxError error(Token token, String generalMessage, String specificMessageToUser) {
         SyntaxError e = new SyntaxError(token, generalMessage, specificMessageToUser);
-        errors.add(e.getMessage());
+        errors.add(e.toDiagnostic());
         return e;
     }
 
     private void addSemanticError(Token token, String generalMessage, String specificMessageToUser) {
         SemanticError e = new SemanticError(token, generalMessage, specificMessageToUser);
-        errors.add(e.getMessage());
+        errors.add(e.toDiagnostic());
     }
 
     private void checkVariableInitialized(Token name) {
@@ -672,7 +670,7 @@ public class LegacyParser {
             recoveryLoopGuard++;
             if (recoveryLoopGuard > MAX_RECOVERY_ATTEMPTS) {
                 System.err.println("ERROR PARSER: Posible bucle infinito en synchronizeToStatementBoundary(). Abortando sincronización.");
-                errors.add("[ERROR INTERNO] Falla en la recuperación de errores. Demasiados tokens consumidos.");
+                errors.add(Diagnostic.internal("[ERROR INTERNO] Falla en la recuperación de errores. Demasiados tokens consumidos."));
                 while (!isAtEnd()) {
                     advance();
                 }
@@ -1078,12 +1076,15 @@ public class LegacyParser {
         ExpressionData data = new ExpressionData(exprTokens,lineNumber);
 
         // 1. Convertir Infija a Prefija (procesando de derecha a izquierda)
+        CompilationMetrics.Phase outer = phase(CompilationMetrics.Phase.PREFIX);
         ExpressionConversionResult prefixConversionResult = convertToPrefix(exprTokens);
         data.prefixExpression = tokensToString(prefixConversionResult.prefixTokens);
         data.prefixStackSimulation = prefixConversionResult.stackSimulation;
 
         // 2. Generación de cuádruplos directamente desde la Infija
+        phase(CompilationMetrics.Phase.QUADRUPLES);
         QuadrupleGenerationResult quadResult = generateQuadruples(exprTokens, finalTarget);
+        phase(outer);
         data.quadruples = quadResult.quadruples;
         data.quadrupleStackSimulation = quadResult.stackSimulation;
         data.numericResultsSimulation = quadResult.numericResults; // Asignar resultados numéricos
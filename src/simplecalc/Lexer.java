@@ -6,11 +6,12 @@ import java.util.List;
 import java.util.Map;
 
 public class Lexer {
-    private final String source;
+    private final CharSequence source; // Un String o el texto de un MappedDocument
     private final List<Token> tokens = new ArrayList<>();
     private int start = 0;
     private int current = 0;
     private int line = 1;
+    private final int firstOffset; // Desplazamiento de 'source' dentro del texto completo
 
     private static final Map<String, Token.TokenType> keywords;
 
@@ -27,16 +28,48 @@ public class Lexer {
         keywords.put("in", Token.TokenType.IN_KEYWORD);
     }
 
-    public Lexer(String source) {
+    public Lexer(CharSequence source) {
+        this(source, 1, 0);
+    }
+
+    // Para un fragmento que empieza al inicio de la línea 'firstLine', en la posición 'firstOffset',
+    // de un texto mayor (IncrementalLexer)
+    Lexer(CharSequence source, int firstLine, int firstOffset) {
         this.source = source;
+        this.line = firstLine;
+        this.firstOffset = firstOffset;
+    }
+
+    // Un diagnóstico por cada token ERROR
+    public static List<Diagnostic> lexicalErrors(List<Token> tokens) {
+        List<Diagnostic> errors = new ArrayList<>();
+        for (Token token : tokens) {
+            if (token.type == Token.TokenType.ERROR) {
+                errors.add(Diagnostic.lexical(token, token.errorMessage != null ? token.errorMessage : token.lexeme + " (Caracter inesperado)"));
+            }
+        }
+        return errors;
     }
 
     public List<Token> scanTokens() {
+        CompilerEvents.ScanTokens event = new CompilerEvents.ScanTokens();
+        event.begin();
         while (!isAtLexerEnd()) {
             start = current;
             scanToken();
         }
-        tokens.add(new Token(Token.TokenType.EOF, "", null, line, calculateColumnForCurrentPos(current)));
+        tokens.add(new Token(Token.TokenType.EOF, "", null, line, calculateColumnForCurrentPos(current), firstOffset + current));
+        event.end();
+        if (event.shouldCommit()) {
+            event.characters = source.length();
+            event.tokens = tokens.size();
+            for (Token token : tokens) {
+                if (token.type == Token.TokenType.ERROR) {
+                    event.errors++;
+                }
+            }
+            event.commit();
+        }
         return tokens;
     }
 
@@ -126,7 +159,7 @@ public class Lexer {
     private void identifier() {
         while (isAlphaNumeric(peekLexerChar())) advanceLexerChar();
 
-        String text = source.substring(start, current);
+        String text = substring(start, current);
         Token.TokenType type = keywords.get(text);
 
         if (type == null) {
@@ -139,7 +172,7 @@ public class Lexer {
     private void number() {
         while (isDigit(peekLexerChar())) advanceLexerChar();
 
-        String numStr = source.substring(start, current);
+        String numStr = substring(start, current);
         try {
             addToken(Token.TokenType.NUMERO_ENTERO, Integer.parseInt(numStr));
         } catch (NumberFormatException e) {
@@ -154,9 +187,9 @@ public class Lexer {
         while (peekLexerChar() != '"' && !isAtLexerEnd()) {
             char peeked = peekLexerChar();
             if (peeked == '\n' || peeked == '\r') {
-                String partialStringLexeme = source.substring(start, current);
+                String partialStringLexeme = substring(start, current);
                 tokens.add(new Token(Token.TokenType.ERROR, partialStringLexeme, null, 
-                                     currentTokenLine, currentTokenCol, 
+                                     currentTokenLine, currentTokenCol, firstOffset + start,
                                      "Salto de línea o retorno de carro no permitido en cadena literal."));
                 
                 while (!isAtLexerEnd() && peekLexerChar() != '\n' && peekLexerChar() != '\r') {
@@ -168,18 +201,22 @@ public class Lexer {
         }
 
         if (isAtLexerEnd()) {
-            String partialStringLexeme = source.substring(start, current);
+            String partialStringLexeme = substring(start, current);
             tokens.add(new Token(Token.TokenType.ERROR, partialStringLexeme, null, 
-                                 currentTokenLine, currentTokenCol, 
+                                 currentTokenLine, currentTokenCol, firstOffset + start,
                                  "Cadena literal no terminada."));
             return;
         }
         
         advanceLexerChar();
-        String value = source.substring(start + 1, current - 1);
+        String value = substring(start + 1, current - 1);
         addToken(Token.TokenType.CADENA_LITERAL, value);
     }
 
+    private String substring(int from, int to) {
+        return source.subSequence(from, to).toString();
+    }
+
     private boolean isAtLexerEnd() {
         return current >= source.length();
     }
@@ -217,20 +254,21 @@ public class Lexer {
     }
 
     private void addToken(Token.TokenType type, Object literal) {
-        String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line, calculateColumnForCurrentPos(start)));
+        String text = substring(start, current);
+        tokens.add(new Token(type, text, literal, line, calculateColumnForCurrentPos(start), firstOffset + start));
     }
     
     private void addErrorTokenSimple(String message) {
-        String problematicLexeme = source.substring(start, current);
+        String problematicLexeme = substring(start, current);
         tokens.add(new Token(Token.TokenType.ERROR, problematicLexeme, 
-                             null, line, calculateColumnForCurrentPos(start),
+                             null, line, calculateColumnForCurrentPos(start), firstOffset + start,
                              message));
     }
 
     private void addErrorToken(String problematicSubstring, String formatMessage) {
         String contextualLexeme = problematicSubstring;
         int errorColumn = calculateColumnForCurrentPos(start);
+        int errorOffset = firstOffset + start;
 
         if (!tokens.isEmpty()) {
             Token lastToken = tokens.get(tokens.size() - 1);
@@ -240,11 +278,13 @@ public class Lexer {
                 
                 contextualLexeme = lastToken.lexeme + problematicSubstring;
                 errorColumn = lastToken.column; 
+                errorOffset = lastToken.offset;
             }
         }
         
-        tokens.add(new Token(Token.TokenType.ERROR, problematicSubstring,
-                             null, line, errorColumn, 
+        // El lexema cubre lo mismo que la columna y el desplazamiento, para resaltar 'abc$$' completo
+        tokens.add(new Token(Token.TokenType.ERROR, contextualLexeme,
+                             null, line, errorColumn, errorOffset,
                              String.format(formatMessage, contextualLexeme)));
     }
 
@@ -1,39 +1,163 @@
 package simplecalc;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
 import javax.swing.text.Element;
 import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.geom.Rectangle2D;
 
-public class LineNumberingTextArea extends JTextArea {
-    private JTextArea textArea;
+/**
+ * Números de línea para el encabezado de fila del JScrollPane de un JTextArea.
+ *
+ * Sólo dibuja las líneas que caen en el rectángulo de recorte: sin ajuste de línea la
+ * primera sale de una división (todas las filas miden lo mismo) y con ajuste se ubica cada
+ * línea visible con modelToView2D. Las métricas de la fuente y el ancho de los dígitos se
+ * guardan al cambiar la fuente, y los números se dibujan desde un char[] sin crear Strings.
+ * El ancho sigue a la cantidad de dígitos del número de líneas: sólo se vuelve a medir
+ * (revalidate) cuando esa cantidad cambia o cuando cambia el alto del texto.
+ */
+public class LineNumberingTextArea extends JComponent {
+    private static final int MARGIN = 5;
+    private static final int MIN_DIGITS = 3;
+
+    private final JTextArea textArea;
+    private final char[] digitsBuffer = new char[10];
+    private final DocumentListener documentListener = new DocumentListener() {
+        @Override
+        public void insertUpdate(DocumentEvent e) {
+            linesChanged();
+        }
+
+        @Override
+        public void removeUpdate(DocumentEvent e) {
+            linesChanged();
+        }
+
+        @Override
+        public void changedUpdate(DocumentEvent e) {
+            // Sólo atributos
+        }
+    };
+
+    // Métricas de la fuente del texto (se recalculan si cambia)
+    private Font metricsFont;
+    private int lineHeight;
+    private int ascent;
+    private int digitWidth;
+
+    private int lineCount;
+    private int digits = MIN_DIGITS;
 
     public LineNumberingTextArea(JTextArea textArea) {
         this.textArea = textArea;
-        setEditable(false);
+        setOpaque(true);
         setBackground(Color.LIGHT_GRAY);
-        setFont(new Font("Monospaced", Font.PLAIN, 14));
-    }
+        setForeground(Color.DARK_GRAY);
 
-    @Override
-    public void paintComponent(Graphics g) {
-        super.paintComponent(g);
+        textArea.getDocument().addDocumentListener(documentListener);
+        textArea.addPropertyChangeListener("document", evt -> {
+            ((Document) evt.getOldValue()).removeDocumentListener(documentListener);
+            ((Document) evt.getNewValue()).addDocumentListener(documentListener);
+            linesChanged();
+        });
+        textArea.addPropertyChangeListener("font", evt -> {
+            revalidate();
+            repaint();
+        });
+        // El alto sigue al del texto (también cuando cambia el ajuste de línea al redimensionar)
+        textArea.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                revalidate();
+                repaint();
+            }
+        });
+        linesChanged();
+    }
 
-        int lineHeight = textArea.getFontMetrics(textArea.getFont()).getHeight();
-        int startOffset = textArea.viewToModel(new Point(0, 0));
-        Element root = textArea.getDocument().getDefaultRootElement();
-        int startLine = root.getElementIndex(startOffset) + 1;
-        int endLine = root.getElementIndex(textArea.viewToModel(
-                new Point(0, textArea.getHeight()))) + 1;
+    private void linesChanged() {
+        int lines = textArea.getDocument().getDefaultRootElement().getElementCount();
+        if (lines == lineCount) {
+            return;
+        }
+        lineCount = lines;
+        int newDigits = Math.max(MIN_DIGITS, String.valueOf(lines).length());
+        if (newDigits != digits) {
+            digits = newDigits;
+            revalidate();
+        }
+        repaint();
+    }
 
-        int y = 0;
-        for (int i = startLine; i <= endLine; i++) {
-            y = i * lineHeight - 3;
-            g.drawString(String.valueOf(i), 5, y);
+    private void updateMetrics() {
+        Font font = textArea.getFont();
+        if (font == metricsFont) {
+            return;
+        }
+        FontMetrics metrics = textArea.getFontMetrics(font);
+        metricsFont = font;
+        lineHeight = metrics.getHeight();
+        ascent = metrics.getAscent();
+        digitWidth = 0;
+        for (char c = '0'; c <= '9'; c++) {
+            digitWidth = Math.max(digitWidth, metrics.charWidth(c));
         }
     }
 
     @Override
     public Dimension getPreferredSize() {
-        return new Dimension(40, textArea.getHeight());
+        updateMetrics();
+        return new Dimension(2 * MARGIN + digits * digitWidth, textArea.getHeight());
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        updateMetrics();
+        Rectangle clip = g.getClipBounds();
+        g.setColor(getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+        g.setColor(getForeground());
+        g.setFont(metricsFont);
+
+        Element root = textArea.getDocument().getDefaultRootElement();
+        int top = textArea.getInsets().top;
+        int clipBottom = clip.y + clip.height;
+        if (!textArea.getLineWrap()) {
+            int first = Math.max(0, (clip.y - top) / lineHeight);
+            int last = Math.min(root.getElementCount() - 1, (clipBottom - top) / lineHeight);
+            for (int line = first; line <= last; line++) {
+                drawLineNumber(g, line + 1, top + line * lineHeight + ascent);
+            }
+            return;
+        }
+        // Con ajuste de línea una línea puede ocupar varias filas
+        int first = root.getElementIndex(textArea.viewToModel2D(new Point(0, clip.y)));
+        try {
+            for (int line = first; line < root.getElementCount(); line++) {
+                Rectangle2D start = textArea.modelToView2D(root.getElement(line).getStartOffset());
+                if (start == null || start.getY() > clipBottom) {
+                    break;
+                }
+                drawLineNumber(g, line + 1, (int) start.getY() + ascent);
+            }
+        } catch (BadLocationException e) {
+            // El documento cambió durante el repintado: el siguiente lo dibujará bien
+        }
+    }
+
+    // Alineado a la derecha, dígito por dígito desde el búfer
+    private void drawLineNumber(Graphics g, int number, int baseline) {
+        int start = digitsBuffer.length;
+        do {
+            digitsBuffer[--start] = (char) ('0' + number % 10);
+            number /= 10;
+        } while (number > 0);
+        int length = digitsBuffer.length - start;
+        g.drawChars(digitsBuffer, start, length, getWidth() - MARGIN - length * digitWidth, baseline);
     }
-}
\ No newline at end of file
+}
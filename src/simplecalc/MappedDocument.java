@@ -0,0 +1,427 @@
+package simplecalc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * Documento de sólo lectura sobre un archivo mapeado en memoria, para abrir en el editor
+ * archivos grandes sin leerlos a un byte[] ni copiarlos a un String.
+ *
+ * Al abrirlo se recorre el archivo una vez, por bloques de BLOCK_BYTES, y se anota dónde empieza
+ * cada línea y cuántos caracteres da cada bloque en UTF-8. Después cada bloque se decodifica
+ * recién cuando alguien lo lee (la vista al pintar las líneas visibles, o el compilador), y el
+ * sistema operativo trae las páginas del archivo a medida que se tocan. Si el archivo es todo
+ * ASCII no hay nada que decodificar: cada byte es un carácter.
+ *
+ * El compilador lee el mismo mapeo a través de text(), un CharSequence que reemplaza a getText().
+ * Las líneas son elementos livianos que se crean al pedirlos, a partir del inicio de cada una.
+ */
+public class MappedDocument extends AbstractDocument {
+
+    private static final int BLOCK_BYTES = 64 * 1024;
+
+    private final Path file;
+    private final TextIndex index;
+    private final Element root = new LineRoot();
+
+    private MappedDocument(Path file, MappedContent content) {
+        super(content);
+        this.file = file;
+        this.index = content.index;
+        putProperty(PlainDocument.tabSizeAttribute, 8); // Como PlainDocument
+    }
+
+    // Mapea el archivo (UTF-8) y arma el índice de bloques y líneas; puede correr en cualquier hilo
+    public static MappedDocument open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= Integer.MAX_VALUE) {
+                throw new IOException("El archivo es demasiado grande para el editor (" + size + " bytes).");
+            }
+            ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new MappedDocument(file, new MappedContent(TextIndex.scan(bytes)));
+        } // El mapeo sigue siendo válido después de cerrar el canal
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public int getLineCount() {
+        return index.lineCount;
+    }
+
+    // Texto completo para el compilador. Cada llamada devuelve una vista nueva con su propio
+    // decodificador y bloque actual, así que puede leerse en otro hilo mientras el editor pinta.
+    public CharSequence text() {
+        return new Text(index);
+    }
+
+    @Override
+    public Element getDefaultRootElement() {
+        return root;
+    }
+
+    @Override
+    public Element getParagraphElement(int pos) {
+        return root.getElement(root.getElementIndex(pos));
+    }
+
+    // Bloques del archivo y comienzo de cada línea, en caracteres. No cambia después de scan().
+    private static final class TextIndex {
+        final ByteBuffer bytes;
+        final int[] byteStarts; // Primer byte de cada bloque; uno más al final
+        final int[] charStarts; // Primer carácter de cada bloque; uno más al final
+        final int blockCount;
+        final int[] lineStarts;
+        final int lineCount;
+        final int length;       // En caracteres
+        final boolean ascii;
+
+        private TextIndex(ByteBuffer bytes, int[] byteStarts, int[] charStarts, int blockCount,
+                          int[] lineStarts, int lineCount, boolean ascii) {
+            this.bytes = bytes;
+            this.byteStarts = byteStarts;
+            this.charStarts = charStarts;
+            this.blockCount = blockCount;
+            this.lineStarts = lineStarts;
+            this.lineCount = lineCount;
+            this.length = charStarts[blockCount];
+            this.ascii = ascii;
+        }
+
+        static TextIndex scan(ByteBuffer bytes) {
+            int size = bytes.limit();
+            int[] byteStarts = new int[size / BLOCK_BYTES + 2];
+            int[] charStarts = new int[byteStarts.length];
+            int[] lineStarts = new int[1024];
+            int lineCount = 1; // La primera empieza en 0
+            int blockCount = 0;
+            int chars = 0;
+            boolean ascii = true;
+            CharsetDecoder decoder = newDecoder();
+            char[] decoded = new char[BLOCK_BYTES];
+
+            for (int start = 0; start < size; ) {
+                int end = blockEnd(bytes, start);
+                if (blockCount + 1 >= byteStarts.length) {
+                    byteStarts = Arrays.copyOf(byteStarts, byteStarts.length * 2);
+                    charStarts = Arrays.copyOf(charStarts, charStarts.length * 2);
+                }
+                byteStarts[blockCount] = start;
+                charStarts[blockCount] = chars;
+                blockCount++;
+
+                // Primero como ASCII; al primer byte que no lo es se deshace y se decodifica el bloque
+                int linesBefore = lineCount;
+                int count = end - start;
+                for (int i = start; i < end; i++) {
+                    byte b = bytes.get(i);
+                    if (b < 0) {
+                        ascii = false;
+                        lineCount = linesBefore;
+                        count = decode(decoder, bytes, start, end, decoded);
+                        for (int c = 0; c < count; c++) {
+                            if (decoded[c] == '\n') {
+                                lineStarts = addLine(lineStarts, lineCount++, chars + c + 1);
+                            }
+                        }
+                        break;
+                    }
+                    if (b == '\n') {
+                        lineStarts = addLine(lineStarts, lineCount++, chars + (i - start) + 1);
+                    }
+                }
+                chars += count;
+                start = end;
+            }
+            byteStarts[blockCount] = size;
+            charStarts[blockCount] = chars;
+            return new TextIndex(bytes, byteStarts, charStarts, blockCount, lineStarts, lineCount, ascii);
+        }
+
+        private static int[] addLine(int[] lineStarts, int line, int start) {
+            if (line == lineStarts.length) {
+                lineStarts = Arrays.copyOf(lineStarts, line * 2);
+            }
+            lineStarts[line] = start;
+            return lineStarts;
+        }
+
+        // Los bloques terminan al inicio de un carácter: no se parte ninguna secuencia UTF-8
+        private static int blockEnd(ByteBuffer bytes, int start) {
+            int end = Math.min(bytes.limit(), start + BLOCK_BYTES);
+            if (end < bytes.limit()) {
+                while (end > start + 1 && (bytes.get(end) & 0xC0) == 0x80) {
+                    end--;
+                }
+            }
+            return end;
+        }
+
+        // Cada bloque da al menos un carácter, así que los inicios son estrictamente crecientes
+        int blockOf(int charIndex) {
+            int block = Arrays.binarySearch(charStarts, 0, blockCount, charIndex);
+            return block >= 0 ? block : -block - 2;
+        }
+
+        int lineOf(int offset) {
+            int line = Arrays.binarySearch(lineStarts, 0, lineCount, offset);
+            line = line >= 0 ? line : -line - 2;
+            return Math.max(0, Math.min(line, lineCount - 1));
+        }
+    }
+
+    private static CharsetDecoder newDecoder() {
+        return StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    // Un byte da a lo sumo un carácter, así que 'into' de BLOCK_BYTES siempre alcanza
+    private static int decode(CharsetDecoder decoder, ByteBuffer bytes, int start, int end, char[] into) {
+        CharBuffer out = CharBuffer.wrap(into);
+        decoder.reset();
+        decoder.decode(bytes.slice(start, end - start), out, true);
+        decoder.flush(out);
+        return out.position();
+    }
+
+    // Vista del texto para un solo hilo: guarda el último bloque decodificado
+    private static final class Text implements CharSequence {
+        private final TextIndex index;
+        private final CharsetDecoder decoder;
+        private final char[] block;
+        private int blockStart;
+        private int blockEnd; // Vacío al principio
+
+        Text(TextIndex index) {
+            this.index = index;
+            this.decoder = index.ascii ? null : newDecoder();
+            this.block = index.ascii ? null : new char[BLOCK_BYTES];
+        }
+
+        @Override
+        public int length() {
+            return index.length;
+        }
+
+        @Override
+        public char charAt(int i) {
+            if (index.ascii) {
+                return (char) index.bytes.get(i);
+            }
+            if (i < blockStart || i >= blockEnd) {
+                Objects.checkIndex(i, index.length);
+                int b = index.blockOf(i);
+                decode(decoder, index.bytes, index.byteStarts[b], index.byteStarts[b + 1], block);
+                blockStart = index.charStarts[b];
+                blockEnd = index.charStarts[b + 1];
+            }
+            return block[i - blockStart];
+        }
+
+        void getChars(int start, int end, char[] dst, int dstStart) {
+            for (int i = start; i < end; i++) {
+                dst[dstStart++] = charAt(i);
+            }
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            Objects.checkFromToIndex(start, end, index.length);
+            char[] chars = new char[end - start];
+            getChars(start, end, chars, 0);
+            return new String(chars);
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, index.length).toString();
+        }
+    }
+
+    // Contenido para AbstractDocument: el texto más el salto de línea final que todo documento Swing tiene
+    private static final class MappedContent implements AbstractDocument.Content {
+        final TextIndex index;
+        private final Text reader; // El de la vista
+
+        MappedContent(TextIndex index) {
+            this.index = index;
+            this.reader = new Text(index);
+        }
+
+        @Override
+        public Position createPosition(int offset) {
+            return () -> offset; // El texto no cambia: las posiciones tampoco
+        }
+
+        @Override
+        public int length() {
+            return index.length + 1;
+        }
+
+        @Override
+        public UndoableEdit insertString(int where, String str) throws BadLocationException {
+            throw new BadLocationException("Documento de sólo lectura", where);
+        }
+
+        @Override
+        public UndoableEdit remove(int where, int nitems) throws BadLocationException {
+            throw new BadLocationException("Documento de sólo lectura", where);
+        }
+
+        @Override
+        public String getString(int where, int len) throws BadLocationException {
+            Segment segment = new Segment();
+            getChars(where, len, segment);
+            return segment.toString();
+        }
+
+        @Override
+        public synchronized void getChars(int where, int len, Segment txt) throws BadLocationException {
+            if (where < 0 || len < 0 || where + len > length()) {
+                throw new BadLocationException("Fuera del documento", where < 0 ? where : where + len);
+            }
+            char[] chars = new char[len];
+            int textEnd = Math.min(where + len, index.length);
+            reader.getChars(where, textEnd, chars, 0);
+            if (where + len > index.length) {
+                chars[len - 1] = '\n';
+            }
+            txt.array = chars;
+            txt.offset = 0;
+            txt.count = len;
+        }
+    }
+
+    // Raíz con una línea por elemento, como la de PlainDocument
+    private final class LineRoot implements Element {
+        @Override
+        public Document getDocument() {
+            return MappedDocument.this;
+        }
+
+        @Override
+        public Element getParentElement() {
+            return null;
+        }
+
+        @Override
+        public String getName() {
+            return ParagraphElementName;
+        }
+
+        @Override
+        public AttributeSet getAttributes() {
+            return SimpleAttributeSet.EMPTY;
+        }
+
+        @Override
+        public int getStartOffset() {
+            return 0;
+        }
+
+        @Override
+        public int getEndOffset() {
+            return index.length + 1;
+        }
+
+        @Override
+        public int getElementIndex(int offset) {
+            return index.lineOf(offset);
+        }
+
+        @Override
+        public int getElementCount() {
+            return index.lineCount;
+        }
+
+        @Override
+        public Element getElement(int line) {
+            return line >= 0 && line < index.lineCount ? new Line(line) : null;
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return false;
+        }
+    }
+
+    private final class Line implements Element {
+        private final int line;
+
+        Line(int line) {
+            this.line = line;
+        }
+
+        @Override
+        public Document getDocument() {
+            return MappedDocument.this;
+        }
+
+        @Override
+        public Element getParentElement() {
+            return root;
+        }
+
+        @Override
+        public String getName() {
+            return ContentElementName;
+        }
+
+        @Override
+        public AttributeSet getAttributes() {
+            return SimpleAttributeSet.EMPTY;
+        }
+
+        @Override
+        public int getStartOffset() {
+            return index.lineStarts[line];
+        }
+
+        @Override
+        public int getEndOffset() {
+            return line + 1 < index.lineCount ? index.lineStarts[line + 1] : index.length + 1;
+        }
+
+        @Override
+        public int getElementIndex(int offset) {
+            return -1;
+        }
+
+        @Override
+        public int getElementCount() {
+            return 0;
+        }
+
+        @Override
+        public Element getElement(int n) {
+            return null;
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return true;
+        }
+    }
+}
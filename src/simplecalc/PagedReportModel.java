@@ -0,0 +1,112 @@
+package simplecalc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import javax.swing.AbstractListModel;
+
+/**
+ * Modelo perezoso de una JList para los reportes grandes de la ventana: un elemento por línea.
+ *
+ * El reporte se arma como una secuencia de secciones de las que sólo se sabe de antemano
+ * cuántas líneas tienen. El texto de una sección (el detalle de una expresión, por ejemplo)
+ * se genera recién cuando la JList pide una de sus líneas, es decir, cuando queda a la vista
+ * al desplazarse; las últimas CACHED_SECTIONS generadas se guardan para no rearmarlas en cada
+ * repintado. Así un reporte de cientos de miles de líneas no ocupa memoria ni tiempo hasta
+ * que se mira, y la JList (con altura de fila fija) sólo dibuja las filas visibles.
+ *
+ * Se arma en el hilo de una tarea y, una vez entregado a la JList, sólo se usa en el EDT.
+ */
+public class PagedReportModel extends AbstractListModel<String> {
+
+    private static final int CACHED_SECTIONS = 256;
+
+    private final List<IntFunction<String>> sections = new ArrayList<>();
+    private int[] firstLines = new int[16]; // Primera línea de cada sección
+    private int size;
+    private int sectionCount;
+
+    // Secciones generadas recientemente (índice de sección -> líneas), en orden de uso
+    private final Map<Integer, String[]> generated = new LinkedHashMap<Integer, String[]>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, String[]> eldest) {
+            return size() > CACHED_SECTIONS;
+        }
+    };
+
+    // Texto ya armado (encabezados, mensajes cortos)
+    public void addText(String text) {
+        String[] lines = splitLines(text, countLines(text));
+        addSection(lines.length, i -> lines[i]);
+    }
+
+    // 'count' líneas que se generan una por una al mostrarse
+    public void addRows(int count, IntFunction<String> row) {
+        addSection(count, row);
+    }
+
+    // Sección de 'lineCount' líneas que se genera completa la primera vez que se muestra alguna
+    public void addSection(int lineCount, Supplier<String> text) {
+        int index = sectionCount;
+        addSection(lineCount, i -> generated.computeIfAbsent(index, k -> splitLines(text.get(), lineCount))[i]);
+    }
+
+    private void addSection(int lineCount, IntFunction<String> line) {
+        if (lineCount <= 0) {
+            return;
+        }
+        if (sectionCount == firstLines.length) {
+            firstLines = Arrays.copyOf(firstLines, sectionCount * 2);
+        }
+        firstLines[sectionCount++] = size;
+        sections.add(line);
+        size += lineCount;
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public String getElementAt(int index) {
+        int section = Arrays.binarySearch(firstLines, 0, sectionCount, index);
+        if (section < 0) {
+            section = -section - 2; // La sección que empieza antes de 'index'
+        }
+        return sections.get(section).apply(index - firstLines[section]);
+    }
+
+    // Líneas de 'text' sin el salto final; si la cuenta anunciada no coincide, se completa o se corta
+    private static String[] splitLines(String text, int lineCount) {
+        String[] lines = new String[lineCount];
+        int start = 0;
+        for (int i = 0; i < lineCount; i++) {
+            if (start > text.length()) {
+                lines[i] = "";
+                continue;
+            }
+            int end = text.indexOf('\n', start);
+            if (end < 0) {
+                end = text.length();
+            }
+            lines[i] = text.substring(start, end);
+            start = end + 1;
+        }
+        return lines;
+    }
+
+    private static int countLines(String text) {
+        int lines = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                lines++;
+            }
+        }
+        return text.isEmpty() || text.charAt(text.length() - 1) == '\n' ? lines : lines + 1;
+    }
+}
@@ -1,12 +1,21 @@
 package simplecalc;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Stack;
+import java.util.concurrent.CancellationException;
+import java.util.function.Supplier;
 import static simplecalc.Token.TokenType.*;
 import java.util.stream.Collectors;
 import java.util.regex.Matcher;
@@ -16,14 +25,33 @@ public class Parser {
 
     private final List<Token> tokens;
     private int current = 0;
-    private List<String> errors = new ArrayList<>();
+    private List<Diagnostic> errors = new ArrayList<>();
     private Set<String> declaredVariables = new HashSet<>();
     public Map<String, String> variableTypes = new HashMap<>(); // Hecho publico para acceso desde KotlinCodeGenerator
-    private Map<String, Integer> variableValues = new HashMap<>(); // Valores numéricos persistentes de las variables
     private Map<String, Boolean> variableIsVar = new HashMap<>(); // true si es var, false si es val
 
     private List<ExpressionData> collectedExpressions = new ArrayList<>();
 
+    // Contexto de bloques para la reducción de fuerza de variables de inducción:
+    // id del 'for' que contiene directamente a la sentencia, o -1 para bloques 'if'/'while'.
+    private Stack<Integer> enclosingBlocks = new Stack<>();
+    private Map<Integer, String> forLoopVariables = new HashMap<>();
+    private Set<Integer> loopsWithReassignedVariable = new HashSet<>();
+    private int forLoopCounter = 0;
+    private final QuadOptimizer quadOptimizer = new QuadOptimizer();
+    private final TemporaryAllocator temporaryAllocator = new TemporaryAllocator();
+    private int maxTemporaryPressure = 0; // Máximo de registros temporales vivos en todo el programa
+    private int statementCount = 0; // Sentencias de primer nivel (para el evento de JFR)
+    private final ProgramBuilder programBuilder = new ProgramBuilder(); // Código de tres direcciones con saltos
+    private boolean generatingCode = true; // false en parseDiagnostics: sólo errores, sin cuádruplos
+    private final StatementCache statementCache; // Memoización entre compilaciones (null: desactivada)
+    private final ScratchBuffers scratch; // Búferes para las claves de memoización
+    private CompilationMetrics.Recorder metrics; // Tiempo por fase (null: no se mide)
+
+    // Trazas DEBUG del análisis en la salida estándar. Apagadas por omisión: son de este
+    // Parser, y quien lo use como biblioteca (o desde varios hilos) no las recibe sin pedirlas.
+    private boolean debugOutput = false;
+
     // **Optimización: Precompilación del patrón regex para la propagación de copias.**
     // Este patrón se usa repetidamente en getPropagatedValue para identificar asignaciones.
     // CORRECCIÓN: Este patrón debe ser más flexible para capturar IDs o tX
@@ -33,15 +61,27 @@ public class Parser {
     private static final Pattern QUAD_OPERAND_IDENTIFIER_PATTERN = Pattern.compile("(t\\d+|[a-zA-Z_][a-zA-Z0-9_]*)"); // Para encontrar tX o IDs
 
 
-    // Clase auxiliar para almacenar los datos de cada expresión
-    public static class ExpressionData {
+    // Clase auxiliar para almacenar los datos de cada expresión (serializable para la CompilationCache).
+    // Las simulaciones de pila son casi todo el tamaño del resultado y sólo las muestra el reporte:
+    // en la caché de disco se guarda su tamaño y se vuelven a generar si se piden (RegeneratedSteps).
+    public static class ExpressionData implements Serializable {
+        private static final long serialVersionUID = 2L;
+
         List<Token> infixTokens;
         String prefixExpression;
-        List<String> prefixStackSimulation;
+        transient List<String> prefixStackSimulation;
         List<String> quadruples; // Esta lista será la OPTIMIZADA
-        List<String> quadrupleStackSimulation; // Esta lista incluirá los pasos intermedios, incluso los que se optimizan fuera
+        transient List<String> quadrupleStackSimulation; // Esta lista incluirá los pasos intermedios, incluso los que se optimizan fuera
         Map<String, Integer> numericResultsSimulation;
+        List<String> inductionUpdates; // Incrementos de acumuladores de inducción al final de la iteración
         int lineNumber;
+        int loopId = -1; // 'for' que contiene directamente a la expresión (-1 si ninguno)
+        String loopVariable; // Variable de ese 'for'
+        int headerOfLoopId = -1; // Para RANGE_START/RANGE_END: 'for' que encabeza
+        int originalTemporaries; // Temporales distintas antes de la asignación de registros
+        int maxTemporaryPressure; // Registros temporales necesarios tras el barrido lineal
+        String finalTarget; // Variable destino, "print_target", "range_start" o "range_end"
+        int programPoint; // Índice en el programa completo donde empieza la sentencia
 
         public ExpressionData(List<Token> infixTokens, int lineNumber) {
             this.infixTokens = new ArrayList<>(infixTokens);
@@ -50,56 +90,243 @@ public class Parser {
             this.quadruples = new ArrayList<>(); // Vacía inicialmente, se llena después de la optimización
             this.quadrupleStackSimulation = new ArrayList<>();
             this.numericResultsSimulation = new HashMap<>();
+            this.inductionUpdates = new ArrayList<>();
             this.lineNumber = lineNumber;
         }
 
-        @Override
-        public String toString() {
-            StringBuilder sb = new StringBuilder();
-            sb.append("  Línea ").append(lineNumber).append(": Original (Infija): ").append(Parser.tokensToString(infixTokens)).append("\n");
-            sb.append("  Simulación Pila (Infija a Prefija):\n");
-            if (prefixStackSimulation.isEmpty() || prefixStackSimulation.size() <= 1) {
-                sb.append("    (No aplica / Trivial para esta expresión)\n");
+        // Copia independiente (las pasadas posteriores modifican las listas), con programPoint desplazado
+        ExpressionData(ExpressionData other, int programPointShift) {
+            this.infixTokens = new ArrayList<>(other.infixTokens);
+            this.prefixExpression = other.prefixExpression;
+            this.prefixStackSimulation = new ArrayList<>(other.prefixStackSimulation);
+            this.quadruples = new ArrayList<>(other.quadruples);
+            this.quadrupleStackSimulation = new ArrayList<>(other.quadrupleStackSimulation);
+            this.numericResultsSimulation = new HashMap<>(other.numericResultsSimulation);
+            this.inductionUpdates = new ArrayList<>(other.inductionUpdates);
+            this.lineNumber = other.lineNumber;
+            this.loopId = other.loopId;
+            this.loopVariable = other.loopVariable;
+            this.headerOfLoopId = other.headerOfLoopId;
+            this.originalTemporaries = other.originalTemporaries;
+            this.maxTemporaryPressure = other.maxTemporaryPressure;
+            this.finalTarget = other.finalTarget;
+            this.programPoint = other.programPoint + programPointShift;
+        }
+
+        // Una expresión sin cuádruplos (p. ej. la que cortó un error de pila) guarda sus pasos tal
+        // cual: no se puede garantizar que generarlos de nuevo dé lo mismo
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+            boolean regenerable = !quadruples.isEmpty();
+            out.writeBoolean(regenerable);
+            if (regenerable) {
+                out.writeInt(prefixStackSimulation.size());
+                out.writeInt(ReportLines.lineCount(prefixStackSimulation));
+                out.writeInt(quadrupleStackSimulation.size());
+                out.writeInt(ReportLines.lineCount(quadrupleStackSimulation));
             } else {
-                for (String step : prefixStackSimulation) {
-                    sb.append("    ").append(step).append("\n");
-                }
+                out.writeObject(new ArrayList<>(prefixStackSimulation));
+                out.writeObject(new ArrayList<>(quadrupleStackSimulation));
             }
+        }
 
-            sb.append("  Prefija: ").append(prefixExpression).append("\n");
-
-            sb.append("  Cuádruplos (Tres Direcciones - Optimizados por CF, CP y DCE):\n");
-            if (quadruples.isEmpty()) {
-                 sb.append("    (No aplica para esta expresión / Todos optimizados o triviales)\n");
+        @SuppressWarnings("unchecked")
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            if (in.readBoolean()) {
+                prefixStackSimulation = new RegeneratedSteps(this, false, in.readInt(), in.readInt());
+                quadrupleStackSimulation = new RegeneratedSteps(this, true, in.readInt(), in.readInt());
             } else {
-                for (String quad : quadruples) {
-                    sb.append("    ").append(quad).append("\n");
-                }
+                prefixStackSimulation = (List<String>) in.readObject();
+                quadrupleStackSimulation = (List<String>) in.readObject();
             }
+        }
 
-            sb.append("  Simulación Pila (Generación Cuádruplos desde Infija - Pasos detallados):\n"); // Renombrado para diferenciar
-            if (quadrupleStackSimulation.isEmpty() || quadrupleStackSimulation.size() <= 1) {
-                sb.append("    (No aplica / Trivial para esta expresión)\n");
-            } else {
-                for (String step : quadrupleStackSimulation) {
-                    sb.append("    ").append(step).append("\n");
+        // Vuelve a simular la conversión a prefija o la generación de cuádruplos con los mismos
+        // tokens y las mismas constantes (las que no son temporales en numericResultsSimulation)
+        List<String> regenerateSimulation(boolean quadrupleSimulation) {
+            if (finalTarget == null) { // PRINT de una cadena literal
+                return quadrupleSimulation ? List.of(stringPrintStep(infixTokens.get(0).lexeme)) : List.of();
+            }
+            Parser parser = new Parser(new ArrayList<>());
+            if (!quadrupleSimulation) {
+                return parser.convertToPrefix(infixTokens).stackSimulation;
+            }
+            Map<String, Integer> knownConstants = new HashMap<>();
+            numericResultsSimulation.forEach((name, value) -> {
+                if (!Quad.isTemporary(name)) {
+                    knownConstants.put(name, value);
                 }
+            });
+            return parser.generateQuadruples(infixTokens, finalTarget, knownConstants).stackSimulation;
+        }
+
+        @Override
+        public String toString() {
+            ReportLines report = ReportLines.text();
+            writeReport(report);
+            return report.toString();
+        }
+
+        // Líneas que tendrá toString(), sin armarlo (para el reporte paginado de la ventana)
+        int reportLineCount() {
+            ReportLines report = ReportLines.counter();
+            writeReport(report);
+            return report.lineCount();
+        }
+
+        // El formato del reporte está sólo aquí: toString() lo escribe y reportLineCount() lo cuenta
+        private void writeReport(ReportLines report) {
+            report.line(() -> "  Línea " + lineNumber + ": Original (Infija): " + Parser.tokensToString(infixTokens));
+            report.line("  Simulación Pila (Infija a Prefija):");
+            report.items(prefixStackSimulation, prefixStackSimulation.size() <= 1, "(No aplica / Trivial para esta expresión)");
+
+            report.line(() -> "  Prefija: " + prefixExpression);
+
+            report.line("  Cuádruplos (Tres Direcciones - Optimizados por CF, CP, DCE y Simplificación Algebraica):");
+            report.items(quadruples, quadruples.isEmpty(), "(No aplica para esta expresión / Todos optimizados o triviales)");
+            if (!inductionUpdates.isEmpty()) {
+                report.line("  Actualización de Variables de Inducción (fin de iteración):");
+                report.items(inductionUpdates, false, null);
             }
+            if (originalTemporaries > 0) {
+                report.line(() -> "  Presión máxima de registros temporales: " + maxTemporaryPressure
+                                  + " (temporales antes de la asignación: " + originalTemporaries + ")");
+            }
+
+            report.line("  Simulación Pila (Generación Cuádruplos desde Infija - Pasos detallados):"); // Renombrado para diferenciar
+            report.items(quadrupleStackSimulation, quadrupleStackSimulation.size() <= 1, "(No aplica / Trivial para esta expresión)");
 
             if (!numericResultsSimulation.isEmpty()) {
-                sb.append("  Resultados Numéricos (Simulación):\n");
-                numericResultsSimulation.forEach((var, val) -> sb.append(String.format("    %s = %d\n", var, val)));
+                report.line("  Resultados Numéricos (Simulación):");
+                numericResultsSimulation.forEach((var, val) -> report.line(() -> String.format("    %s = %d", var, val)));
             }
+        }
+    }
+
+    /**
+     * Destino del reporte de una expresión (ExpressionData de Parser y de LegacyParser): arma el
+     * texto o sólo cuenta sus líneas. Las líneas calculadas se pasan como Supplier para que al
+     * contar no se armen.
+     */
+    static final class ReportLines {
+        private final StringBuilder text; // null: sólo se cuentan las líneas
+        private int lineCount;
 
-            return sb.toString();
+        private ReportLines(StringBuilder text) {
+            this.text = text;
+        }
+
+        static ReportLines text() {
+            return new ReportLines(new StringBuilder());
+        }
+
+        static ReportLines counter() {
+            return new ReportLines(null);
+        }
+
+        void line(String line) {
+            if (text != null) {
+                text.append(line).append("\n");
+            }
+            lineCount++;
+        }
+
+        void line(Supplier<String> line) {
+            if (text != null) {
+                text.append(line.get()).append("\n");
+            }
+            lineCount++;
+        }
+
+        // Los elementos con sangría, o 'placeholder' en su lugar si 'trivial'.
+        // Algunos pasos de las simulaciones traen saltos de línea propios.
+        void items(List<String> items, boolean trivial, String placeholder) {
+            if (trivial) {
+                line("    " + placeholder);
+                return;
+            }
+            if (text == null) {
+                lineCount += items instanceof LazySteps lazy ? lazy.lineCount() : lineCount(items);
+                return;
+            }
+            for (String item : items) {
+                text.append("    ").append(item).append("\n");
+            }
+            lineCount += lineCount(items);
+        }
+
+        // Un elemento por línea más los saltos de línea propios
+        static int lineCount(List<String> items) {
+            if (items instanceof LazySteps lazy) {
+                return lazy.lineCount();
+            }
+            int lines = items.size();
+            for (String item : items) {
+                for (int i = item.indexOf('\n'); i >= 0; i = item.indexOf('\n', i + 1)) {
+                    lines++;
+                }
+            }
+            return lines;
+        }
+
+        int lineCount() {
+            return lineCount;
+        }
+
+        @Override
+        public String toString() {
+            return text != null ? text.toString() : "";
         }
     }
 
     public Parser(List<Token> tokens) {
+        this(tokens, null);
+    }
+
+    // Con statementCache, las sentencias y expresiones que no cambiaron desde una compilación anterior se reutilizan
+    public Parser(List<Token> tokens, StatementCache statementCache) {
+        this(tokens, statementCache, new ScratchBuffers());
+    }
+
+    // Con los búferes de trabajo prestados por CompilerPipeline
+    Parser(List<Token> tokens, StatementCache statementCache, ScratchBuffers scratch) {
         this.tokens = tokens;
+        this.statementCache = statementCache;
+        this.scratch = scratch;
+    }
+
+    // CompilerPipeline mide las fases; el Parser marca las que ocurren dentro de parse()
+    void setMetrics(CompilationMetrics.Recorder metrics) {
+        this.metrics = metrics;
+        programBuilder.setMetrics(metrics);
+    }
+
+    // Empieza a medir 'next' y devuelve la fase anterior, para volver a ella
+    private CompilationMetrics.Phase phase(CompilationMetrics.Phase next) {
+        return metrics != null ? metrics.switchTo(next) : null;
+    }
+
+    public void setDebugOutput(boolean enabled) {
+        this.debugOutput = enabled;
     }
 
-    public List<String> getErrors() {
+    // Punto de cancelación entre sentencias de primer nivel: una compilación que ya no sirve
+    // (la interfaz lanzó otra) se interrumpe y no termina de analizar un archivo enorme
+    static void checkInterrupted() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Compilación cancelada.");
+        }
+    }
+
+    // parseDiagnostics no imprime trazas: se llama en cada pausa al escribir
+    private void debug(String message) {
+        if (debugOutput && generatingCode) {
+            System.out.println(message);
+        }
+    }
+
+    public List<Diagnostic> getErrors() {
         return errors;
     }
 
@@ -108,26 +335,97 @@ public class Parser {
     }
 
     public boolean parse() {
+        CompilerEvents.Parse event = new CompilerEvents.Parse();
+        event.begin();
+        boolean valid = parseAndGenerate();
+        event.end();
+        if (event.shouldCommit()) {
+            event.tokens = tokens.size();
+            event.statements = statementCount;
+            event.expressions = collectedExpressions.size();
+            event.quadruples = programBuilder.getQuadruples().size();
+            event.temporaries = maxTemporaryPressure;
+            event.errors = errors.size();
+            event.commit();
+        }
+        return valid;
+    }
+
+    private boolean parseAndGenerate() {
+        generatingCode = true;
+        if (!parseStatements()) {
+            return false;
+        }
+        // Constantes que alcanzan cada sentencia (análisis de flujo de datos sobre el programa completo)
+        phase(CompilationMetrics.Phase.OPTIMIZATION);
+        ConstantPropagator constantPropagator = errors.isEmpty()
+                ? new ConstantPropagator(programBuilder.getQuadruples(), variableIsVar)
+                : null;
+        generateExpressionQuadruples(constantPropagator);
+        phase(CompilationMetrics.Phase.OPTIMIZATION);
+        if (errors.isEmpty()) {
+            programBuilder.replaceQuadruples(quadOptimizer.reduceInductionVariables(constantPropagator.rewrite(), declaredVariables, variableIsVar));
+            quadOptimizer.reduceInductionVariables(collectedExpressions, loopsWithReassignedVariable, declaredVariables);
+            allocateTemporaries();
+        }
+        return errors.isEmpty();
+    }
+
+    /**
+     * Sólo el análisis sintáctico y semántico: deja en getErrors() los mismos errores que
+     * parse(), que salen todos del descenso recursivo, pero no genera el código de las
+     * expresiones ni corre la propagación de constantes y las optimizaciones sobre el programa.
+     * Es lo que necesitan los diagnósticos mientras se escribe.
+     *
+     * Tampoco usa la StatementCache: sus entradas guardan el código de cada sentencia. Después
+     * de esto getProgramQuadruples() y getCollectedExpressions() quedan vacíos.
+     */
+    public boolean parseDiagnostics() {
+        generatingCode = false;
+        parseStatements();
+        return errors.isEmpty();
+    }
+
+    // false si un error sintáctico cortó el análisis
+    private boolean parseStatements() {
         current = 0;
         errors.clear();
         declaredVariables.clear();
         variableTypes.clear();
-        variableValues.clear();
         variableIsVar.clear(); // Limpiar también este mapa
         collectedExpressions.clear();
+        enclosingBlocks.clear();
+        forLoopVariables.clear();
+        loopsWithReassignedVariable.clear();
+        forLoopCounter = 0;
+        maxTemporaryPressure = 0;
+        statementCount = 0;
+        programBuilder.clear();
+        programBuilder.setEnabled(generatingCode);
 
         try {
             programa();
         } catch (SyntaxError e) {
             return false;
         }
-        return errors.isEmpty();
+        return true;
     }
 
     public List<Token> getTokens() {
         return tokens;
     }
 
+    // Código de tres direcciones del programa completo (etiquetas, saltos, READ y PRINT).
+    // Sólo es válido si parse() terminó sin errores.
+    public List<String> getProgramQuadruples() {
+        return programBuilder.getQuadruples();
+    }
+
+    // Máxima presión de registros temporales del programa (máximo entre todas las expresiones)
+    public int getMaxTemporaryPressure() {
+        return maxTemporaryPressure;
+    }
+
     // Nuevo getter para variableIsVar
     public Map<String, Boolean> getVariableIsVar() {
         return variableIsVar;
@@ -165,8 +463,7 @@ public class Parser {
         while (!check(LLAVE_DER) && !isAtEnd()) {
             if (peek().type == ERROR) {
                 String lexerErrorMessage = peek().errorMessage != null ? peek().errorMessage : peek().lexeme + " (Caracter inesperado)";
-                errors.add(String.format("[Línea %d, Col %d] Error léxico: %s (token ignorado)",
-                        peek().line, peek().column, lexerErrorMessage));
+                errors.add(Diagnostic.lexical(peek(), lexerErrorMessage + " (token ignorado)"));
                 advance();
                 continue;
             }
@@ -174,20 +471,160 @@ public class Parser {
                 advance();
                 continue;
             }
-            sentencia();
+            checkInterrupted();
+            statementCount++;
+            sentenciaMemorizada();
         }
         consumeOptionalEOLs();
     }
 
+    // Sentencia de primer nivel: se reutiliza su análisis si ya se vio con el mismo estado de entrada
+    private void sentenciaMemorizada() {
+        if (statementCache == null || !generatingCode) {
+            sentencia();
+            return;
+        }
+        int start = current;
+        int end = statementEnd(start);
+        String key = statementKey(start, end);
+        StatementCache.StatementEntry cached = statementCache.getStatement(key);
+        if (cached != null) {
+            replayStatement(cached, start);
+            current = start + cached.tokens.size() - 1;
+            return;
+        }
+
+        int errorsBefore = errors.size();
+        int collectedBefore = collectedExpressions.size();
+        int quadsBefore = programBuilder.getQuadruples().size();
+        int labelsBefore = programBuilder.getLabelCount();
+        int loopsBefore = forLoopCounter;
+        sentencia();
+
+        // Sólo se memoriza si no hubo errores y se consumió exactamente la sentencia (más saltos de línea)
+        boolean onlyEOLs = current >= end;
+        for (int i = end; onlyEOLs && i < current; i++) {
+            onlyEOLs = tokens.get(i).type == EOL;
+        }
+        if (errors.size() == errorsBefore && onlyEOLs) {
+            statementCache.putStatement(key, recordStatement(start, end, collectedBefore, quadsBefore, labelsBefore, loopsBefore));
+        }
+    }
+
+    // Fin de la sentencia que empieza en 'start': el primer EOL fuera de llaves (o la '}' de main / EOF)
+    private int statementEnd(int start) {
+        int depth = 0;
+        int i = start;
+        for (; i < tokens.size(); i++) {
+            Token.TokenType type = tokens.get(i).type;
+            if (type == EOF || (type == EOL && depth == 0)) {
+                break;
+            }
+            if (type == LLAVE_IZQ) {
+                depth++;
+            } else if (type == LLAVE_DER) {
+                if (depth == 0) {
+                    break;
+                }
+                depth--;
+            }
+        }
+        return Math.min(i, tokens.size() - 1);
+    }
+
+    // Hash de los tokens de la sentencia (incluido el que la cierra) y del estado que lee al entrar.
+    // Las posiciones son relativas al primer token: la misma sentencia en otra línea tiene la misma clave.
+    // Los contadores de etiquetas y ciclos sólo cuentan si la sentencia tiene control de flujo.
+    private String statementKey(int start, int end) {
+        StringBuilder key = scratch.keyBuffer();
+        for (int i = start; i <= end; i++) {
+            Token.TokenType type = tokens.get(i).type;
+            if (type == IF_KEYWORD || type == WHILE_KEYWORD || type == FOR_KEYWORD) {
+                key.append(programBuilder.getLabelCount()).append('|').append(forLoopCounter).append('|');
+                break;
+            }
+        }
+        appendTokens(key, tokens.subList(start, end + 1));
+        for (String name : statementNames(start, end)) {
+            key.append(name).append('=').append(declaredVariables.contains(name))
+               .append(',').append(variableTypes.get(name)).append(',').append(variableIsVar.get(name)).append('\0');
+        }
+        return scratch.sha256(key);
+    }
+
+    // Identificadores de la sentencia: los únicos cuyo estado en la tabla de símbolos puede leer o cambiar
+    private Set<String> statementNames(int start, int end) {
+        Set<String> names = new LinkedHashSet<>();
+        for (int i = start; i <= end; i++) {
+            if (tokens.get(i).type == ID) {
+                names.add(tokens.get(i).lexeme);
+            }
+        }
+        return names;
+    }
+
+    private StatementCache.StatementEntry recordStatement(int start, int end, int collectedBefore, int quadsBefore,
+                                                          int labelsBefore, int loopsBefore) {
+        List<String[]> symbols = new ArrayList<>();
+        for (String name : statementNames(start, end)) {
+            Boolean isVar = variableIsVar.get(name);
+            symbols.add(new String[] {
+                name,
+                declaredVariables.contains(name) ? variableTypes.get(name) : null,
+                isVar == null ? null : isVar.toString()
+            });
+        }
+        // Los ids de ciclo y las etiquetas quedan absolutos: forman parte de la clave si la sentencia los usa
+        Map<Integer, String> loopVariables = new HashMap<>();
+        List<Integer> reassignedLoops = new ArrayList<>();
+        for (int loopId = loopsBefore + 1; loopId <= forLoopCounter; loopId++) {
+            loopVariables.put(loopId, forLoopVariables.get(loopId));
+            if (loopsWithReassignedVariable.contains(loopId)) {
+                reassignedLoops.add(loopId);
+            }
+        }
+        List<ExpressionData> expressions = new ArrayList<>();
+        for (ExpressionData data : collectedExpressions.subList(collectedBefore, collectedExpressions.size())) {
+            expressions.add(new ExpressionData(data, -quadsBefore));
+        }
+        List<String> quadruples = programBuilder.getQuadruples();
+        return new StatementCache.StatementEntry(new ArrayList<>(tokens.subList(start, end + 1)), symbols, forLoopCounter - loopsBefore, loopVariables,
+                reassignedLoops, new ArrayList<>(quadruples.subList(quadsBefore, quadruples.size())),
+                programBuilder.getLabelCount() - labelsBefore, programBuilder.getLastStatementStart() - quadsBefore, expressions);
+    }
+
+    private void replayStatement(StatementCache.StatementEntry cached, int start) {
+        for (String[] symbol : cached.symbols) {
+            if (symbol[1] != null) {
+                declaredVariables.add(symbol[0]);
+                variableTypes.put(symbol[0], symbol[1]);
+            }
+            if (symbol[2] != null) {
+                variableIsVar.put(symbol[0], Boolean.valueOf(symbol[2]));
+            }
+        }
+        forLoopCounter += cached.loopCount;
+        forLoopVariables.putAll(cached.loopVariables);
+        loopsWithReassignedVariable.addAll(cached.reassignedLoops);
+        int quadsBefore = programBuilder.getQuadruples().size();
+        TokenRebase rebase = new TokenRebase(cached.tokens, tokens.subList(start, start + cached.tokens.size()));
+        for (ExpressionData template : cached.expressions) {
+            ExpressionData data = new ExpressionData(template, quadsBefore);
+            rebase.apply(data);
+            collectedExpressions.add(data);
+        }
+        programBuilder.appendStatement(cached.programQuadruples, cached.labelCount, cached.lastStatementOffset);
+    }
+
     private void sentencia() {
-        System.out.println("DEBUG: Entrando a sentencia(), peek()=" + peek().type + ", lexema='" + peek().lexeme + "'");
+        debug("DEBUG: Entrando a sentencia(), peek()=" + peek().type + ", lexema='" + peek().lexeme + "'");
 
         if (check(VAL_KEYWORD) || check(VAR_KEYWORD)) {
-            System.out.println("DEBUG: sentencia: VAL/VAR -> declaracion_stmt()");
+            debug("DEBUG: sentencia: VAL/VAR -> declaracion_stmt()");
             declaracion_stmt();
         } else if (check(ID)) {
             if (current + 1 < tokens.size() && tokens.get(current + 1).type == ASIGNACION) {
-                System.out.println("DEBUG: sentencia: ID seguido de ASIGNACION -> asignacion_stmt()");
+                debug("DEBUG: sentencia: ID seguido de ASIGNACION -> asignacion_stmt()");
                 asignacion_stmt();
             } else {
                 error(peek(), "Sentencia inválida comenzando con ID '" + peek().lexeme + "'.",
@@ -207,23 +644,23 @@ public class Parser {
             consumeOptionalEOLs();
             synchronizeToStatementBoundary();
         } else if (check(PRINT_KEYWORD)) {
-            System.out.println("DEBUG: sentencia: PRINT_KEYWORD -> salida_stmt()");
+            debug("DEBUG: sentencia: PRINT_KEYWORD -> salida_stmt()");
             salida_stmt();
         } else if (check(IF_KEYWORD)) {
-            System.out.println("DEBUG: sentencia: IF_KEYWORD -> if_stmt()");
+            debug("DEBUG: sentencia: IF_KEYWORD -> if_stmt()");
             if_stmt();
         } else if (check(WHILE_KEYWORD)) {
-            System.out.println("DEBUG: sentencia: WHILE_KEYWORD -> while_stmt()");
+            debug("DEBUG: sentencia: WHILE_KEYWORD -> while_stmt()");
             while_stmt();
         } else if (check(FOR_KEYWORD)) {
-            System.out.println("DEBUG: sentencia: FOR_KEYWORD -> for_stmt()");
+            debug("DEBUG: sentencia: FOR_KEYWORD -> for_stmt()");
             for_stmt();
         } else if (peek().type != LLAVE_DER && peek().type != EOF && peek().type != EOL && peek().type != ERROR) {
             error(peek(), "Sentencia inválida o no reconocida.",
                     "Se esperaba 'val', 'var', 'readLine', 'print', 'if', 'while', 'for', una asignación, o fin de bloque '}'.");
             synchronizeToStatementBoundary();
         }
-        System.out.println("DEBUG: Saliendo de sentencia(), current ahora apunta a: " + (isAtEnd() ? "EOF" : peek().type));
+        debug("DEBUG: Saliendo de sentencia(), current ahora apunta a: " + (isAtEnd() ? "EOF" : peek().type));
     }
 
     private void declaracion_stmt() {
@@ -252,11 +689,12 @@ public class Parser {
         int exprEnd = current;
 
         checkTypeCompatibility(declaredType, assignedExpressionType, varNameToken);
+        programBuilder.assign(varNameToken.lexeme, tokens.subList(exprStart, exprEnd));
 
         declaredVariables.add(varNameToken.lexeme);
         variableTypes.put(varNameToken.lexeme, declaredType);
         variableIsVar.put(varNameToken.lexeme, declarationType.type == VAR_KEYWORD); // ¡NUEVA LÍNEA!
-        System.out.println("DEBUG declaracion_stmt: Declarando variable: " + varNameToken.lexeme + " de tipo: " + declaredType);
+        debug("DEBUG declaracion_stmt: Declarando variable: " + varNameToken.lexeme + " de tipo: " + declaredType);
 
         // Solo recolectar si es una expresión aritmética válida (tiene operadores o es un ID/NUMERO)
         // Y SOLO si el tipo final es Int
@@ -274,6 +712,11 @@ public class Parser {
     private void asignacion_stmt() {
         Token varNameToken = consume(ID, "Se esperaba un nombre de variable para la asignación.");
         checkVariableInitialized(varNameToken);
+        for (int blockId : enclosingBlocks) {
+            if (varNameToken.lexeme.equals(forLoopVariables.get(blockId))) {
+                loopsWithReassignedVariable.add(blockId); // La variable de inducción deja de serlo
+            }
+        }
 
         String declaredType = variableTypes.get(varNameToken.lexeme);
         if (declaredType == null) {
@@ -290,8 +733,9 @@ public class Parser {
         int exprEnd = current;
 
         checkTypeCompatibility(declaredType, assignedExpressionType, varNameToken);
+        programBuilder.assign(varNameToken.lexeme, tokens.subList(exprStart, exprEnd));
 
-        System.out.println("DEBUG asignacion_stmt: Asignando a variable: " + varNameToken.lexeme + " con tipo: " + assignedExpressionType);
+        debug("DEBUG asignacion_stmt: Asignando a variable: " + varNameToken.lexeme + " con tipo: " + assignedExpressionType);
 
         // Solo recolectar si es una expresión aritmética válida (tiene operadores o es un ID/NUMERO)
         // Y SOLO si el tipo final es Int
@@ -321,6 +765,7 @@ public class Parser {
         int exprStart = current;
         String exprType = expresion_aritmetica();
         int exprEnd = current;
+        programBuilder.print(tokens.subList(exprStart, exprEnd));
 
         // Recolectamos la expresión si es aritmética y válida.
         // Solo si el tipo es Int o una cadena literal simple (para PRINT).
@@ -340,10 +785,17 @@ public class Parser {
         consume(IF_KEYWORD, "Error interno: Se esperaba 'if' para if_stmt.");
         consume(PAREN_IZQ, "Se esperaba '(' después de 'if'.");
 
-        condicion_simple(); // Las condiciones no generan cuádruplos aritméticos en esta fase
+        String endLabel = programBuilder.newLabel();
+        condicion_simple(endLabel); // Las condiciones no generan cuádruplos aritméticos en esta fase (sólo el salto)
 
         consume(PAREN_DER, "Se esperaba ')' después de la condición en 'if'.");
-        bloque_if();
+        enclosingBlocks.push(-1);
+        try {
+            bloque_if();
+        } finally {
+            enclosingBlocks.pop();
+        }
+        programBuilder.label(endLabel);
     }
 
     private void bloque_if() {
@@ -353,8 +805,7 @@ public class Parser {
         while (!check(LLAVE_DER) && !isAtEnd()) {
             if (peek().type == ERROR) {
                 String lexerErrorMessage = peek().errorMessage != null ? peek().errorMessage : peek().lexeme + " (Caracter inesperado)";
-                errors.add(String.format("[Línea %d, Col %d] Error léxico: %s (token ignorado)",
-                        peek().line, peek().column, lexerErrorMessage));
+                errors.add(Diagnostic.lexical(peek(), lexerErrorMessage + " (token ignorado)"));
                 advance();
                 continue;
             }
@@ -374,10 +825,20 @@ public class Parser {
         consume(WHILE_KEYWORD, "Se esperaba 'while'.");
         consume(PAREN_IZQ, "Se esperaba '(' después de 'while'.");
 
-        condicion_simple(); // Las condiciones no generan cuádruplos aritméticos
+        String conditionLabel = programBuilder.newLabel();
+        String exitLabel = programBuilder.newLabel();
+        programBuilder.label(conditionLabel);
+        condicion_simple(exitLabel); // Las condiciones no generan cuádruplos aritméticos (sólo el salto)
 
         consume(PAREN_DER, "Se esperaba ')' después de la condición en 'while'.");
-        bloque_loop();
+        enclosingBlocks.push(-1);
+        try {
+            bloque_loop();
+        } finally {
+            enclosingBlocks.pop();
+        }
+        programBuilder.jump(conditionLabel);
+        programBuilder.label(exitLabel);
     }
 
     private void for_stmt() {
@@ -392,7 +853,9 @@ public class Parser {
         declaredVariables.add(loopVarName.lexeme);
         variableTypes.put(loopVarName.lexeme, "Int");
         variableIsVar.put(loopVarName.lexeme, true); // Las variables de bucle for son implícitamente 'var'
-        System.out.println("DEBUG for_stmt: Declarando variable de bucle: " + loopVarName.lexeme + " de tipo: Int");
+        debug("DEBUG for_stmt: Declarando variable de bucle: " + loopVarName.lexeme + " de tipo: Int");
+        int loopId = ++forLoopCounter;
+        forLoopVariables.put(loopId, loopVarName.lexeme);
 
 
         consume(IN_KEYWORD, "Se esperaba 'in' después del nombre de la variable en 'for'.");
@@ -402,11 +865,14 @@ public class Parser {
         String rangeStartType = expresion_aritmetica();
         int rangeStartExprEnd = current;
         checkTypeCompatibility("Int", rangeStartType, previous());
+        programBuilder.assign(loopVarName.lexeme, tokens.subList(rangeStartExprStart, rangeStartExprEnd));
         if (!rangeStartType.equals("Unknown") && !rangeStartType.equals("ErrorType") && rangeStartType.equals("Int")) {
             List<Token> subExprTokens = tokens.subList(rangeStartExprStart, rangeStartExprEnd);
             if (hasArithmeticOperators(subExprTokens) || isSingleArithmeticOperand(subExprTokens)) {
                 int lineNumber = subExprTokens.isEmpty() ? loopVarName.line : subExprTokens.get(0).line;
+                int collectedBefore = collectedExpressions.size();
                 collectExpression(subExprTokens, "range_start", lineNumber);
+                markLoopHeader(loopId, collectedBefore);
             }
         }
 
@@ -417,16 +883,143 @@ public class Parser {
         String rangeEndType = expresion_aritmetica();
         int rangeEndExprEnd = current;
         checkTypeCompatibility("Int", rangeEndType, previous());
+        // El fin del rango se evalúa una sola vez, antes de la primera iteración
+        String rangeEnd = programBuilder.evaluateOnce("__fin_" + loopVarName.lexeme + "_" + loopId,
+                tokens.subList(rangeEndExprStart, rangeEndExprEnd));
         if (!rangeEndType.equals("Unknown") && !rangeEndType.equals("ErrorType") && rangeEndType.equals("Int")) {
             List<Token> subExprTokens = tokens.subList(rangeEndExprStart, rangeEndExprEnd);
             if (hasArithmeticOperators(subExprTokens) || isSingleArithmeticOperand(subExprTokens)) {
                 int lineNumber = subExprTokens.isEmpty() ? loopVarName.line : subExprTokens.get(0).line;
+                int collectedBefore = collectedExpressions.size();
                 collectExpression(subExprTokens, "range_end", lineNumber);
+                markLoopHeader(loopId, collectedBefore);
             }
         }
 
         consume(PAREN_DER, "Se esperaba ')' después del rango en 'for'.");
-        bloque_loop();
+        String conditionLabel = programBuilder.newLabel();
+        String exitLabel = programBuilder.newLabel();
+        programBuilder.label(conditionLabel);
+        programBuilder.jumpIf(loopVarName.lexeme, ">", rangeEnd, exitLabel);
+        enclosingBlocks.push(loopId);
+        try {
+            bloque_loop();
+        } finally {
+            enclosingBlocks.pop();
+        }
+        programBuilder.increment(loopVarName.lexeme);
+        programBuilder.jump(conditionLabel);
+        programBuilder.label(exitLabel);
+    }
+
+    // Genera los cuádruplos de cada expresión recolectada con las constantes que la alcanzan.
+    // Se hace después del análisis porque, dentro de un ciclo, una asignación posterior en el
+    // cuerpo también alcanza a las sentencias anteriores (por la vuelta del ciclo).
+    private void generateExpressionQuadruples(ConstantPropagator constantPropagator) {
+        phase(CompilationMetrics.Phase.QUADRUPLES);
+        for (ExpressionData data : collectedExpressions) {
+            if (data.finalTarget == null) {
+                continue; // PRINT de una cadena literal: ya tiene su cuádruplo
+            }
+            Map<String, Integer> knownConstants = constantsOf(data, constantPropagator);
+            String key = statementCache != null ? expressionKey(data, knownConstants) : null;
+            StatementCache.ExpressionEntry cached = key != null ? statementCache.getExpression(key) : null;
+            if (cached != null) {
+                data.quadruples = new ArrayList<>(cached.quadruples);
+                data.quadrupleStackSimulation = RebasedSteps.of(cached.stackSimulation, cached.infixTokens, data.infixTokens);
+                data.numericResultsSimulation = new HashMap<>(knownConstants); // Mismo orden que generateQuadruples
+                data.numericResultsSimulation.putAll(cached.temporaryResults);
+                continue;
+            }
+            CompilerEvents.GenerateQuadruples event = new CompilerEvents.GenerateQuadruples();
+            event.begin();
+            QuadrupleGenerationResult quadResult = generateQuadruples(data.infixTokens, data.finalTarget, knownConstants);
+            event.end();
+            if (event.shouldCommit()) {
+                event.line = data.lineNumber;
+                event.tokens = data.infixTokens.size();
+                event.quadruples = quadResult.quadruples.size();
+                for (Quad quad : Quad.parseAll(quadResult.quadruples)) {
+                    if (quad.target != null && Quad.isTemporary(quad.target)) {
+                        event.temporaries++;
+                    }
+                }
+                event.commit();
+            }
+            phase(CompilationMetrics.Phase.OPTIMIZATION);
+            data.quadruples = quadOptimizer.simplify(quadResult.quadruples); // Cuádruplos optimizados + simplificación algebraica
+            phase(CompilationMetrics.Phase.QUADRUPLES);
+            data.quadrupleStackSimulation = quadResult.stackSimulation;
+            data.numericResultsSimulation = quadResult.numericResults;
+            if (key != null) {
+                // Los resultados numéricos son las constantes conocidas más las temporales de la expresión
+                Map<String, Integer> temporaryResults = new HashMap<>(quadResult.numericResults);
+                temporaryResults.keySet().removeAll(knownConstants.keySet());
+                statementCache.putExpression(key, new StatementCache.ExpressionEntry(data.infixTokens, data.quadruples, data.quadrupleStackSimulation, temporaryResults));
+            }
+        }
+    }
+
+    // Constantes que alcanzan la expresión, sólo de las variables que aparecen en ella: son las
+    // únicas que generateQuadruples consulta y las que muestra el reporte
+    private Map<String, Integer> constantsOf(ExpressionData data, ConstantPropagator constantPropagator) {
+        Map<String, Integer> constants = new HashMap<>();
+        if (constantPropagator == null) {
+            return constants;
+        }
+        for (Token token : data.infixTokens) {
+            if (token.type == ID && !constants.containsKey(token.lexeme)) {
+                Integer value = constantPropagator.valueBefore(data.programPoint, token.lexeme);
+                if (value != null) {
+                    constants.put(token.lexeme, value);
+                }
+            }
+        }
+        return constants;
+    }
+
+    // generateQuadruples sólo depende de los tokens, del destino y de las constantes de los nombres
+    // que aparecen. La posición de los tokens aparece en la simulación de pila: se corrige con TokenRebase.
+    private String expressionKey(ExpressionData data, Map<String, Integer> knownConstants) {
+        StringBuilder key = scratch.keyBuffer().append(data.finalTarget).append('\0');
+        appendTokens(key, data.infixTokens);
+        for (Token token : data.infixTokens) {
+            if (token.type == ID) {
+                key.append(token.lexeme).append('=').append(knownConstants.get(token.lexeme)).append('\0');
+            }
+        }
+        return scratch.sha256(key);
+    }
+
+    // Tipo, lexema y posición relativa al primer token de cada token
+    private static void appendTokens(StringBuilder key, List<Token> tokens) {
+        if (tokens.isEmpty()) {
+            return;
+        }
+        Token first = tokens.get(0);
+        for (Token token : tokens) {
+            key.append(token.type).append(' ').append(token.line - first.line).append(':')
+               .append(token.column - first.column).append(' ').append(token.lexeme).append('\0');
+        }
+    }
+
+    // Reutiliza temporales cuyos intervalos de vida no se solapan (barrido lineal por expresión).
+    // Las temporales son locales a cada expresión, así que la presión del programa es el máximo.
+    private void allocateTemporaries() {
+        for (ExpressionData data : collectedExpressions) {
+            TemporaryAllocator.Allocation allocation = temporaryAllocator.allocate(data.quadruples);
+            data.quadruples = allocation.quadruples;
+            data.originalTemporaries = allocation.originalTemporaries;
+            data.maxTemporaryPressure = allocation.maxPressure;
+            maxTemporaryPressure = Math.max(maxTemporaryPressure, allocation.maxPressure);
+        }
+    }
+
+    // Marca la última expresión recolectada (RANGE_START/RANGE_END) como cabecera del 'for' indicado.
+    private void markLoopHeader(int loopId, int collectedBefore) {
+        if (collectedExpressions.size() > collectedBefore) {
+            collectedExpressions.get(collectedExpressions.size() - 1).headerOfLoopId = loopId;
+        }
     }
 
     private void bloque_loop() {
@@ -436,8 +1029,7 @@ public class Parser {
         while (!check(LLAVE_DER) && !isAtEnd()) {
             if (peek().type == ERROR) {
                 String lexerErrorMessage = peek().errorMessage != null ? peek().errorMessage : peek().lexeme + " (Caracter inesperado)";
-                errors.add(String.format("[Línea %d, Col %d] Error léxico: %s (token ignorado)",
-                        peek().line, peek().column, lexerErrorMessage));
+                errors.add(Diagnostic.lexical(peek(), lexerErrorMessage + " (token ignorado)"));
                 advance();
                 continue;
             }
@@ -454,13 +1046,19 @@ public class Parser {
     }
 
 
-    private void condicion_simple() {
+    // Reconoce la condición y emite el salto a falseLabel cuando no se cumple.
+    private void condicion_simple(String falseLabel) {
+        int leftStart = current;
         String leftOperandType = expresion_aritmetica();
+        int leftEnd = current;
 
         Token operatorToken = peek();
         operador_relacional();
 
+        int rightStart = current;
         String rightOperandType = expresion_aritmetica();
+        programBuilder.jumpIfFalse(tokens.subList(leftStart, leftEnd), operatorToken,
+                tokens.subList(rightStart, current), falseLabel);
 
         if (!leftOperandType.equals("Unknown") && !rightOperandType.equals("Unknown") &&
             !leftOperandType.equals("ErrorType") && !rightOperandType.equals("ErrorType")) {
@@ -582,8 +1180,7 @@ public class Parser {
     private Token consume(Token.TokenType type, String message) {
         if (peek().type == ERROR && type != ERROR) {
             String lexerErrorMessage = peek().errorMessage != null ? peek().errorMessage : peek().lexeme + " (Caracter inesperado)";
-            errors.add(String.format("[Línea %d, Col %d] Error léxico: %s (token ignorado para análisis sintáctico)",
-                    peek().line, peek().column, lexerErrorMessage));
+            errors.add(Diagnostic.lexical(peek(), lexerErrorMessage + " (token ignorado para análisis sintáctico)"));
             advance();
             if (check(type)) {
                 return advance();
@@ -604,13 +1201,13 @@ public class Parser {
 
     private SyntaxError error(Token token, String generalMessage, String specificMessageToUser) {
         SyntaxError e = new SyntaxError(token, generalMessage, specificMessageToUser);
-        errors.add(e.getMessage());
+        errors.add(e.toDiagnostic());
         return e;
     }
 
     private void addSemanticError(Token token, String generalMessage, String specificMessageToUser) {
         SemanticError e = new SemanticError(token, generalMessage, specificMessageToUser);
-        errors.add(e.getMessage());
+        errors.add(e.toDiagnostic());
     }
 
     private void checkVariableInitialized(Token name) {
@@ -684,19 +1281,19 @@ public class Parser {
     }
 
     private void synchronizeToStatementBoundary() {
-        System.out.println("DEBUG: Entrando a synchronizeToStatementBoundary(), peek() al entrar=" + peek().type);
+        debug("DEBUG: Entrando a synchronizeToStatementBoundary(), peek() al entrar=" + peek().type);
         advance();
-        System.out.println("DEBUG: synchronize: después de consumir token erróneo, peek()=" + peek().type);
+        debug("DEBUG: synchronize: después de consumir token erróneo, peek()=" + peek().type);
 
         int recoveryLoopGuard = 0;
         final int MAX_RECOVERY_ATTEMPTS = tokens.size() + 5;
 
         while (!isAtEnd()) {
-            System.out.println("DEBUG: synchronize: en bucle, peek()=" + peek().type + ", previous()=" + previous().type);
+            debug("DEBUG: synchronize: en bucle, peek()=" + peek().type + ", previous()=" + previous().type);
             recoveryLoopGuard++;
             if (recoveryLoopGuard > MAX_RECOVERY_ATTEMPTS) {
                 System.err.println("ERROR PARSER: Posible bucle infinito en synchronizeToStatementBoundary(). Abortando sincronización.");
-                errors.add("[ERROR INTERNO] Falla en la recuperación de errores. Demasiados tokens consumidos.");
+                errors.add(Diagnostic.internal("[ERROR INTERNO] Falla en la recuperación de errores. Demasiados tokens consumidos."));
                 while (!isAtEnd()) {
                     advance();
                 }
@@ -713,14 +1310,14 @@ public class Parser {
                 case FOR_KEYWORD:
                 case LLAVE_DER:
                 case EOF:
-                    System.out.println("DEBUG: synchronize: encontrado " + peek().type + ". Retornando.");
+                    debug("DEBUG: synchronize: encontrado " + peek().type + ". Retornando.");
                     return;
                 default:
             }
-            System.out.println("DEBUG: synchronize: avanzando desde " + peek().type);
+            debug("DEBUG: synchronize: avanzando desde " + peek().type);
             advance();
         }
-        System.out.println("DEBUG: Salida de synchronizeToStatementBoundary() porque isAtEnd() es true.");
+        debug("DEBUG: Salida de synchronizeToStatementBoundary() porque isAtEnd() es true.");
     }
 
     // --- MÉTODOS PARA CÓDIGO INTERMEDIO ---
@@ -861,6 +1458,174 @@ public class Parser {
         return new ExpressionConversionResult(prefixTokens, stackSimulationSteps);
     }
 
+    /**
+     * Lleva una entrada de la StatementCache a la posición actual. La clave guarda las posiciones
+     * relativas al primer token, así que todos los tokens de la entrada están desplazados lo mismo
+     * respecto a los actuales. Las simulaciones de pila muestran los operadores con Token.toString,
+     * que incluye línea y columna: esas filas las corrige RebasedSteps cuando se leen.
+     */
+    private static class TokenRebase {
+        private final Map<Token, Token> current = new IdentityHashMap<>();
+        private final int lineShift;
+        private final boolean moved;
+
+        TokenRebase(List<Token> cachedTokens, List<Token> currentTokens) {
+            for (int i = 0; i < cachedTokens.size(); i++) {
+                current.put(cachedTokens.get(i), currentTokens.get(i));
+            }
+            Token first = cachedTokens.get(0);
+            Token now = currentTokens.get(0);
+            lineShift = now.line - first.line;
+            moved = lineShift != 0 || now.column != first.column;
+        }
+
+        // Copia de una expresión recolectada (ExpressionData) guardada con la sentencia
+        void apply(ExpressionData data) {
+            List<Token> cachedTokens = data.infixTokens;
+            data.infixTokens = new ArrayList<>(cachedTokens.size());
+            for (Token token : cachedTokens) {
+                data.infixTokens.add(current.getOrDefault(token, token));
+            }
+            data.lineNumber += lineShift;
+            if (moved) {
+                data.prefixStackSimulation = new RebasedSteps(data.prefixStackSimulation, cachedTokens, data.infixTokens);
+                data.quadrupleStackSimulation = new RebasedSteps(data.quadrupleStackSimulation, cachedTokens, data.infixTokens);
+            }
+        }
+    }
+
+    /**
+     * Pasos de una simulación de pila que se arman recién la primera vez que se pide uno: sólo
+     * el reporte los lee, y para paginarlo le alcanza con lineCount(). No se pueden modificar.
+     */
+    abstract static class LazySteps extends AbstractList<String> {
+        // Lo mismo que ReportLines.lineCount de los pasos armados, sin armarlos
+        abstract int lineCount();
+    }
+
+    /**
+     * Pasos de una simulación guardada en la StatementCache, vistos con las filas de los tokens
+     * de la posición actual (una recompilación tras insertar una línea no formatea nada).
+     */
+    static final class RebasedSteps extends LazySteps {
+        private final List<String> steps; // Con las filas de los tokens guardados (mismos saltos de línea)
+        private final List<Token> cachedTokens;
+        private final List<Token> currentTokens; // En el mismo orden que cachedTokens
+        private String[] rebased;
+
+        RebasedSteps(List<String> steps, List<Token> cachedTokens, List<Token> currentTokens) {
+            this.steps = steps;
+            this.cachedTokens = cachedTokens;
+            this.currentTokens = currentTokens;
+        }
+
+        // 'steps' tal cual (copiados) si los tokens no se movieron
+        static List<String> of(List<String> steps, List<Token> cachedTokens, List<Token> currentTokens) {
+            Token first = cachedTokens.get(0);
+            Token now = currentTokens.get(0);
+            if (steps.isEmpty() || (first.line == now.line && first.column == now.column)) {
+                return new ArrayList<>(steps);
+            }
+            return new RebasedSteps(steps, cachedTokens, currentTokens);
+        }
+
+        @Override
+        public String get(int index) {
+            if (rebased == null) {
+                rebased = rebase();
+            }
+            return rebased[index];
+        }
+
+        @Override
+        public int size() {
+            return steps.size();
+        }
+
+        @Override
+        int lineCount() {
+            return ReportLines.lineCount(steps);
+        }
+
+        private String[] rebase() {
+            // Fila guardada -> fila actual; los operandos se muestran por su lexema
+            Map<String, String> rows = new HashMap<>();
+            for (int i = 0; i < cachedTokens.size(); i++) {
+                Token token = cachedTokens.get(i);
+                if (token.type != ID && token.type != NUMERO_ENTERO) {
+                    rows.put(token.toString(), currentTokens.get(i).toString());
+                }
+            }
+            String[] result = new String[steps.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = rows.isEmpty() ? steps.get(i) : replaceRows(steps.get(i), rows);
+            }
+            return result;
+        }
+
+        // Una sola pasada de izquierda a derecha: la fila nueva de un token puede coincidir con la
+        // vieja de otro. Toda fila empieza con '|', así que sólo se prueba en esas posiciones.
+        private static String replaceRows(String step, Map<String, String> rows) {
+            StringBuilder out = null;
+            int copied = 0;
+            int i = step.indexOf('|');
+            while (i >= 0) {
+                String match = null;
+                for (String row : rows.keySet()) {
+                    if (step.startsWith(row, i)) {
+                        match = row;
+                        break;
+                    }
+                }
+                if (match == null) {
+                    i = step.indexOf('|', i + 1);
+                    continue;
+                }
+                if (out == null) {
+                    out = new StringBuilder(step.length());
+                }
+                out.append(step, copied, i).append(rows.get(match));
+                copied = i + match.length();
+                i = step.indexOf('|', copied);
+            }
+            return out == null ? step : out.append(step, copied, step.length()).toString();
+        }
+    }
+
+    // Pasos de una ExpressionData leída de la caché de disco, que sólo guarda cuántos son
+    private static final class RegeneratedSteps extends LazySteps {
+        private final ExpressionData data;
+        private final boolean quadrupleSimulation; // false: conversión a prefija
+        private final int size;
+        private final int lineCount;
+        private List<String> steps;
+
+        RegeneratedSteps(ExpressionData data, boolean quadrupleSimulation, int size, int lineCount) {
+            this.data = data;
+            this.quadrupleSimulation = quadrupleSimulation;
+            this.size = size;
+            this.lineCount = lineCount;
+        }
+
+        @Override
+        public synchronized String get(int index) {
+            if (steps == null) {
+                steps = data.regenerateSimulation(quadrupleSimulation);
+            }
+            return steps.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        int lineCount() {
+            return lineCount;
+        }
+    }
+
     // Clase para el resultado de la generación de cuádruplos
     private static class QuadrupleGenerationResult {
 
@@ -886,14 +1651,15 @@ public class Parser {
      *
      * @param infixTokens La lista de tokens de la expresión infija.
      * @param finalTarget El nombre de la variable o propósito (ej. "print_target") donde se almacenará el resultado final.
+     * @param knownConstants Constantes de variables que alcanzan la sentencia (ConstantPropagator).
      * @return Un objeto QuadrupleGenerationResult con los cuádruplos generados, la simulación de pila y los resultados numéricos.
      */
-    private QuadrupleGenerationResult generateQuadruples(List<Token> infixTokens, String finalTarget) {
+    private QuadrupleGenerationResult generateQuadruples(List<Token> infixTokens, String finalTarget, Map<String, Integer> knownConstants) {
         List<String> intermediateQuadruples = new ArrayList<>(); // Almacena todos los cuádruplos ANTES de DCE
         Stack<String> operandStack = new Stack<>();
         Stack<Token> operatorStack = new Stack<>();
         List<String> quadrupleStackSimulationSteps = new ArrayList<>(); // Para la simulación detallada
-        Map<String, Integer> currentNumericValues = new HashMap<>(variableValues);
+        Map<String, Integer> currentNumericValues = new HashMap<>(knownConstants);
 
         int tempVarCounter = 0;
 
@@ -921,8 +1687,8 @@ public class Parser {
                     Token op = operatorStack.pop();
                     String tempVar = "t" + (++tempVarCounter);
 
-                    String effectiveArg1 = getPropagatedValue(arg1, intermediateQuadruples, currentNumericValues, variableValues);
-                    String effectiveArg2 = getPropagatedValue(arg2, intermediateQuadruples, currentNumericValues, variableValues);
+                    String effectiveArg1 = getPropagatedValue(arg1, intermediateQuadruples, currentNumericValues, knownConstants);
+                    String effectiveArg2 = getPropagatedValue(arg2, intermediateQuadruples, currentNumericValues, knownConstants);
 
                     if (isNumericLiteral(effectiveArg1) && isNumericLiteral(effectiveArg2)) {
                         int val1 = Integer.parseInt(effectiveArg1);
@@ -963,8 +1729,8 @@ public class Parser {
                     Token op = operatorStack.pop();
                     String tempVar = "t" + (++tempVarCounter);
 
-                    String effectiveArg1 = getPropagatedValue(arg1, intermediateQuadruples, currentNumericValues, variableValues);
-                    String effectiveArg2 = getPropagatedValue(arg2, intermediateQuadruples, currentNumericValues, variableValues);
+                    String effectiveArg1 = getPropagatedValue(arg1, intermediateQuadruples, currentNumericValues, knownConstants);
+                    String effectiveArg2 = getPropagatedValue(arg2, intermediateQuadruples, currentNumericValues, knownConstants);
 
                     if (isNumericLiteral(effectiveArg1) && isNumericLiteral(effectiveArg2)) {
                         int val1 = Integer.parseInt(effectiveArg1);
@@ -1016,8 +1782,8 @@ public class Parser {
             Token op = operatorStack.pop();
             String tempVar = "t" + (++tempVarCounter);
 
-            String effectiveArg1 = getPropagatedValue(arg1, intermediateQuadruples, currentNumericValues, variableValues);
-            String effectiveArg2 = getPropagatedValue(arg2, intermediateQuadruples, currentNumericValues, variableValues);
+            String effectiveArg1 = getPropagatedValue(arg1, intermediateQuadruples, currentNumericValues, knownConstants);
+            String effectiveArg2 = getPropagatedValue(arg2, intermediateQuadruples, currentNumericValues, knownConstants);
 
             if (isNumericLiteral(effectiveArg1) && isNumericLiteral(effectiveArg2)) {
                 int val1 = Integer.parseInt(effectiveArg1);
@@ -1057,7 +1823,7 @@ public class Parser {
         // Este cuádruplo final es crucial para el análisis de uso de temporales.
         if (!operandStack.isEmpty()) {
             finalExpressionResultOperand = operandStack.pop();
-            propagatedFinalResultValue = getPropagatedValue(finalExpressionResultOperand, intermediateQuadruples, currentNumericValues, variableValues);
+            propagatedFinalResultValue = getPropagatedValue(finalExpressionResultOperand, intermediateQuadruples, currentNumericValues, knownConstants);
 
             if (finalTarget != null) {
                 if (finalTarget.equals("print_target")) {
@@ -1068,12 +1834,6 @@ public class Parser {
                     finalCommittedQuadruples.add(String.format("RANGE_END %s", propagatedFinalResultValue));
                 } else { // Es una asignación a una variable
                     finalCommittedQuadruples.add(String.format("%s = %s", finalTarget, propagatedFinalResultValue));
-                    // Actualizar `variableValues` para que las futuras expresiones puedan usar esta constante.
-                    if (isNumericLiteral(propagatedFinalResultValue)) {
-                        variableValues.put(finalTarget, Integer.parseInt(propagatedFinalResultValue));
-                    } else {
-                        variableValues.put(finalTarget, getNumericValueForSimulation(propagatedFinalResultValue, currentNumericValues));
-                    }
                 }
                 quadrupleStackSimulationSteps.add(String.format("%-20s | %-20s | %-15s | Asignación final: %s = %s [Optimized]",
                                                                 "[]", "[]", "FINAL", finalTarget, propagatedFinalResultValue));
@@ -1081,7 +1841,7 @@ public class Parser {
         } else if (!infixTokens.isEmpty() && intermediateQuadruples.isEmpty() && finalTarget != null) {
             // Caso de una expresión con un solo operando (ej. `val x = 10`)
             finalExpressionResultOperand = tokensToString(infixTokens); // En este caso, el "operando" es la propia expresión simple
-            propagatedFinalResultValue = getPropagatedValue(finalExpressionResultOperand, intermediateQuadruples, currentNumericValues, variableValues);
+            propagatedFinalResultValue = getPropagatedValue(finalExpressionResultOperand, intermediateQuadruples, currentNumericValues, knownConstants);
 
             if (finalTarget.equals("print_target")) {
                  finalCommittedQuadruples.add(String.format("PRINT %s", propagatedFinalResultValue));
@@ -1094,11 +1854,6 @@ public class Parser {
                  quadrupleStackSimulationSteps.add(String.format("[] | [] | %-15s | RANGE_END %s [Optimized]", propagatedFinalResultValue, propagatedFinalResultValue));
             } else {
                  finalCommittedQuadruples.add(String.format("%s = %s", finalTarget, propagatedFinalResultValue));
-                 if (isNumericLiteral(propagatedFinalResultValue)) {
-                    variableValues.put(finalTarget, Integer.parseInt(propagatedFinalResultValue));
-                 } else {
-                    variableValues.put(finalTarget, getNumericValueForSimulation(propagatedFinalResultValue, currentNumericValues));
-                 }
                  quadrupleStackSimulationSteps.add(String.format("[] | [] | %-15s | %s = %s [Optimized]", propagatedFinalResultValue, finalTarget, propagatedFinalResultValue));
             }
         }
@@ -1107,6 +1862,8 @@ public class Parser {
         // --- ANÁLISIS DE USO DE TEMPORALES PARA DCE ---
         // 1. Recopilar todas las temporales *usadas* en los `finalCommittedQuadruples`.
         // Esto identifica qué temporales son realmente necesarias para el resultado final.
+        // Como la propagación sólo sustituye copias, una temporal usada puede depender de otras:
+        // el recorrido inverso de los intermedios agrega también esos usos indirectos.
         for (String quad : finalCommittedQuadruples) {
             Matcher m = QUAD_OPERAND_IDENTIFIER_PATTERN.matcher(quad);
             while (m.find()) {
@@ -1118,26 +1875,28 @@ public class Parser {
         }
 
         // 2. Filtrar `intermediateQuadruples` para construir la lista `trulyOptimizedQuadruples`.
-        // Solo incluimos cuádruplos intermedios si su temporal de destino es usada en los cuádruplos finales.
+        // Solo incluimos cuádruplos intermedios si su temporal de destino es usada (directa o indirectamente).
         List<String> trulyOptimizedQuadruples = new ArrayList<>();
-        for (String quad : intermediateQuadruples) {
+        for (int i = intermediateQuadruples.size() - 1; i >= 0; i--) {
+            String quad = intermediateQuadruples.get(i);
             // CORRECCIÓN: Usar el nuevo patrón más flexible para DCE también
             Matcher assignMatcher = QUAD_ASSIGNMENT_PROPAGATION_PATTERN.matcher(quad);
             if (assignMatcher.find()) {
                 String definedTarget = assignMatcher.group(1).trim(); // Captura "tX" o "ID"
                 // Si el objetivo es un temporal Y es usado, lo mantenemos.
                 // Si el objetivo es una variable real (no temporal), SIEMPRE la mantenemos.
-                if (definedTarget.startsWith("t")) {
-                    if (temporariesUsedAsOperands.contains(definedTarget)) {
-                        trulyOptimizedQuadruples.add(quad);
+                if (definedTarget.startsWith("t") && !temporariesUsedAsOperands.contains(definedTarget)) {
+                    continue;
+                }
+                Matcher uses = QUAD_OPERAND_IDENTIFIER_PATTERN.matcher(assignMatcher.group(2));
+                while (uses.find()) {
+                    if (uses.group(1).startsWith("t")) {
+                        temporariesUsedAsOperands.add(uses.group(1));
                     }
-                } else { // Es una variable real (no temporal)
-                    trulyOptimizedQuadruples.add(quad);
                 }
-            } else {
-                // Cuádruplos que no son asignaciones directas, como PRINT. Los mantenemos.
-                trulyOptimizedQuadruples.add(quad);
             }
+            // Cuádruplos que no son asignaciones directas, como PRINT, se mantienen siempre.
+            trulyOptimizedQuadruples.add(0, quad);
         }
         
         // Finalmente, añadir los `finalCommittedQuadruples` a la lista.
@@ -1159,10 +1918,10 @@ public class Parser {
      * @param operand El operando original (puede ser un ID, un literal, o una variable temporal tX).
      * @param intermediateQuadruples La lista de cuádruplos generados hasta el momento para la expresión actual.
      * @param currentNumericValues Mapa de valores numéricos de temporales y variables calculados en esta expresión.
-     * @param globalVariableValues Mapa de valores persistentes de variables globales.
+     * @param knownConstants Constantes de variables que alcanzan la sentencia (ConstantPropagator).
      * @return El valor propagado del operando (literal numérico si es constante, o el operando original).
      */
-    private String getPropagatedValue(String operand, List<String> intermediateQuadruples, Map<String, Integer> currentNumericValues, Map<String, Integer> globalVariableValues) {
+    private String getPropagatedValue(String operand, List<String> intermediateQuadruples, Map<String, Integer> currentNumericValues, Map<String, Integer> knownConstants) {
         String effectiveValue = operand;
         boolean changed;
 
@@ -1176,7 +1935,10 @@ public class Parser {
                     String resultVar = m.group(1).trim();
                     String sourceVal = m.group(2).trim();
 
-                    if (resultVar.equals(effectiveValue) && !sourceVal.equals(effectiveValue)) {
+                    // Sólo se propagan copias (fuente atómica). Sustituir una expresión completa como texto
+                    // rompería la forma de tres direcciones y la precedencia: t2 = t1 * c con t1 = a + b
+                    // quedaría como "a + b * c".
+                    if (resultVar.equals(effectiveValue) && !sourceVal.equals(effectiveValue) && !sourceVal.contains(" ")) {
                         effectiveValue = sourceVal;
                         changed = true;
                         break;
@@ -1185,8 +1947,8 @@ public class Parser {
             }
         } while (changed);
 
-        if (globalVariableValues.containsKey(effectiveValue) && !effectiveValue.startsWith("t") && !isNumericLiteral(effectiveValue)) {
-            Integer val = globalVariableValues.get(effectiveValue);
+        if (knownConstants.containsKey(effectiveValue) && !isNumericLiteral(effectiveValue)) {
+            Integer val = knownConstants.get(effectiveValue);
             if (val != null) {
                 return String.valueOf(val);
             }
@@ -1207,11 +1969,7 @@ public class Parser {
                 Integer val = currentNumericValues.get(operand);
                 return (val != null) ? val : 0;
             }
-            if (variableValues.containsKey(operand)) {
-                Integer val = variableValues.get(operand);
-                return (val != null) ? val : 0;
-            }
-            return 0;
+            return 0; // Variable sin valor constante en este punto
         }
     }
 
@@ -1250,12 +2008,17 @@ public class Parser {
     }
 
 
+    // Único paso de la simulación de un PRINT de una cadena literal
+    static String stringPrintStep(String operand) {
+        return String.format("[] | [] | %-15s | PRINT %s", operand, operand);
+    }
+
     /**
      * Recolecta una expresión para su posterior procesamiento de código intermedio,
      * incluyendo la conversión a prefija y la generación de cuádruplos optimizados.
      */
     private void collectExpression(List<Token> exprTokens, String finalTarget, int lineNumber) {
-        if (exprTokens.isEmpty()) {
+        if (exprTokens.isEmpty() || !generatingCode) {
             return;
         }
 
@@ -1267,24 +2030,38 @@ public class Parser {
                 String operand = exprTokens.get(0).lexeme;
                 data.prefixExpression = operand;
                 data.quadruples.add(String.format("PRINT %s", operand));
-                data.quadrupleStackSimulation.add(String.format("[] | [] | %-15s | PRINT %s", operand, operand));
+                data.quadrupleStackSimulation.add(stringPrintStep(operand));
                 collectedExpressions.add(data);
                 return;
             }
             return;
         }
 
+        CompilerEvents.CollectExpression event = new CompilerEvents.CollectExpression();
+        event.begin();
         ExpressionData data = new ExpressionData(exprTokens, lineNumber);
+        if (!enclosingBlocks.isEmpty() && enclosingBlocks.peek() > 0) {
+            data.loopId = enclosingBlocks.peek();
+            data.loopVariable = forLoopVariables.get(data.loopId);
+        }
 
+        CompilationMetrics.Phase outer = phase(CompilationMetrics.Phase.PREFIX);
         ExpressionConversionResult prefixConversionResult = convertToPrefix(exprTokens);
         data.prefixExpression = tokensToString(prefixConversionResult.prefixTokens);
         data.prefixStackSimulation = prefixConversionResult.stackSimulation;
+        phase(outer);
 
-        QuadrupleGenerationResult quadResult = generateQuadruples(exprTokens, finalTarget);
-        data.quadruples = quadResult.quadruples; // Ahora esta lista contiene los cuádruplos optimizados
-        data.quadrupleStackSimulation = quadResult.stackSimulation;
-        data.numericResultsSimulation = quadResult.numericResults;
+        // Los cuádruplos se generan al terminar el análisis (generateExpressionQuadruples),
+        // cuando ya se sabe qué constantes alcanzan a esta sentencia.
+        data.finalTarget = finalTarget;
+        data.programPoint = programBuilder.getLastStatementStart();
 
         collectedExpressions.add(data);
+        event.end();
+        if (event.shouldCommit()) {
+            event.line = lineNumber;
+            event.tokens = exprTokens.size();
+            event.commit();
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,274 @@
+package simplecalc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Stack;
+import static simplecalc.Token.TokenType.*;
+
+/**
+ * Construye el código de tres direcciones del programa COMPLETO, con etiquetas y saltos.
+ *
+ * Los cuádruplos de ExpressionData describen expresiones aisladas (y omiten condiciones,
+ * cadenas y readLine), así que no alcanzan para ejecutar el programa. El Parser llama a este
+ * constructor mientras reconoce cada sentencia y aquí se genera:
+ *
+ *   x = a op b / x = a            asignaciones (Int o String)
+ *   READ x                        x = readLine()
+ *   PRINT a                       print(a)
+ *   LABEL L1 / GOTO L1            etiquetas y saltos incondicionales
+ *   IF a op b GOTO L1             salta si la condición es verdadera
+ *   IF_FALSE a op b GOTO L1       salta si la condición es falsa
+ *
+ * Cada sentencia se optimiza localmente (QuadOptimizer.simplify) y sus temporales se
+ * asignan con TemporaryAllocator. Aquí no se propagan valores de variables entre sentencias:
+ * eso lo hace después ConstantPropagator, que sí tiene en cuenta los ciclos.
+ */
+public class ProgramBuilder {
+
+    private final List<String> quadruples = new ArrayList<>();
+    private final List<String> pending = new ArrayList<>(); // Cuádruplos de la sentencia en curso
+    private final QuadOptimizer optimizer = new QuadOptimizer();
+    private final TemporaryAllocator allocator = new TemporaryAllocator();
+    private int tempCounter = 0;
+    private int labelCounter = 0;
+    private int lastStatementStart = 0; // Índice del primer cuádruplo de la última sentencia cerrada
+    private boolean enabled = true;
+    private CompilationMetrics.Recorder metrics; // Tiempo por fase (null: no se mide)
+
+    // Deshabilitado no genera nada (sólo cuenta etiquetas): Parser.parseDiagnostics no lo necesita
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    // El Parser le pasa su medición: la simplificación de cada sentencia se carga a OPTIMIZATION
+    void setMetrics(CompilationMetrics.Recorder metrics) {
+        this.metrics = metrics;
+    }
+
+    public List<String> getQuadruples() {
+        return quadruples;
+    }
+
+    // Sustituye el programa por su versión optimizada (ConstantPropagator.rewrite)
+    public void replaceQuadruples(List<String> optimized) {
+        quadruples.clear();
+        quadruples.addAll(optimized);
+    }
+
+    public int getLastStatementStart() {
+        return lastStatementStart;
+    }
+
+    // Etiquetas creadas hasta ahora (forma parte del estado con que se memoriza una sentencia)
+    public int getLabelCount() {
+        return labelCounter;
+    }
+
+    /**
+     * Repite el efecto de una sentencia memorizada (StatementCache): sus cuádruplos ya
+     * cerrados, las etiquetas que creó y la posición de su última sentencia interna.
+     */
+    public void appendStatement(List<String> statementQuadruples, int labelsCreated, int lastStatementOffset) {
+        lastStatementStart = quadruples.size() + lastStatementOffset;
+        quadruples.addAll(statementQuadruples);
+        labelCounter += labelsCreated;
+    }
+
+    public void clear() {
+        quadruples.clear();
+        pending.clear();
+        tempCounter = 0;
+        labelCounter = 0;
+        lastStatementStart = 0;
+    }
+
+    public String newLabel() {
+        return "L" + (++labelCounter);
+    }
+
+    public void label(String label) {
+        if (!enabled) {
+            return;
+        }
+        flush();
+        quadruples.add("LABEL " + label);
+    }
+
+    public void jump(String label) {
+        if (!enabled) {
+            return;
+        }
+        flush();
+        quadruples.add("GOTO " + label);
+    }
+
+    // target = expresión
+    public void assign(String target, List<Token> expression) {
+        if (!enabled) {
+            return;
+        }
+        if (isReadLine(expression)) {
+            pending.add("READ " + target);
+        } else {
+            pending.add(target + " = " + lowerExpression(expression));
+        }
+        flush();
+    }
+
+    // target = target + 1  (incremento de la variable de un 'for')
+    public void increment(String target) {
+        if (!enabled) {
+            return;
+        }
+        pending.add(target + " = " + target + " + 1");
+        flush();
+    }
+
+    public void print(List<Token> expression) {
+        if (!enabled) {
+            return;
+        }
+        pending.add("PRINT " + lowerExpression(expression));
+        flush();
+    }
+
+    /**
+     * Evalúa una expresión una sola vez (p. ej. el fin de un rango). Si resulta un literal se
+     * devuelve tal cual; si no, se guarda en la variable oculta indicada y se devuelve su nombre.
+     */
+    public String evaluateOnce(String hiddenVariable, List<Token> expression) {
+        if (!enabled) {
+            return hiddenVariable;
+        }
+        pending.add(hiddenVariable + " = " + lowerExpression(expression));
+        List<String> simplified = simplify(pending);
+        pending.clear();
+        tempCounter = 0;
+        lastStatementStart = quadruples.size();
+
+        String prefix = hiddenVariable + " = ";
+        if (simplified.size() == 1 && Quad.isIntLiteral(simplified.get(0).substring(prefix.length()))) {
+            return simplified.get(0).substring(prefix.length());
+        }
+        quadruples.addAll(allocator.allocate(simplified).quadruples);
+        return hiddenVariable;
+    }
+
+    // IF_FALSE izquierda op derecha GOTO label
+    public void jumpIfFalse(List<Token> left, Token operator, List<Token> right, String label) {
+        if (!enabled) {
+            return;
+        }
+        String arg1 = lowerExpression(left);
+        String arg2 = lowerExpression(right);
+        pending.add("IF_FALSE " + arg1 + " " + operator.lexeme + " " + arg2 + " GOTO " + label);
+        flush();
+    }
+
+    // IF a op b GOTO label, con operandos ya atómicos
+    public void jumpIf(String arg1, String operator, String arg2, String label) {
+        if (!enabled) {
+            return;
+        }
+        pending.add("IF " + arg1 + " " + operator + " " + arg2 + " GOTO " + label);
+        flush();
+    }
+
+    // Cierra la sentencia en curso: simplificación algebraica y asignación de temporales.
+    private void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<String> simplified = simplify(pending);
+        lastStatementStart = quadruples.size();
+        quadruples.addAll(allocator.allocate(simplified).quadruples);
+        pending.clear();
+        tempCounter = 0;
+    }
+
+    // QuadOptimizer.simplify medido como OPTIMIZATION; luego vuelve a la fase que se medía
+    private List<String> simplify(List<String> statement) {
+        CompilationMetrics.Phase outer = metrics != null ? metrics.switchTo(CompilationMetrics.Phase.OPTIMIZATION) : null;
+        List<String> simplified = optimizer.simplify(statement);
+        if (metrics != null) {
+            metrics.switchTo(outer);
+        }
+        return simplified;
+    }
+
+    // Infija -> cuádruplos (algoritmo de dos pilas). Devuelve el operando con el resultado.
+    private String lowerExpression(List<Token> expression) {
+        Stack<String> operands = new Stack<>();
+        Stack<Token> operators = new Stack<>();
+
+        for (int i = 0; i < expression.size(); i++) {
+            Token token = expression.get(i);
+            switch (token.type) {
+                case ID:
+                case NUMERO_ENTERO:
+                case CADENA_LITERAL:
+                    operands.push(token.lexeme);
+                    break;
+                case READLINE_KEYWORD:
+                    String temp = newTemp();
+                    pending.add("READ " + temp);
+                    operands.push(temp);
+                    i += 2; // '(' ')'
+                    break;
+                case PAREN_IZQ:
+                    operators.push(token);
+                    break;
+                case PAREN_DER:
+                    while (!operators.isEmpty() && operators.peek().type != PAREN_IZQ) {
+                        reduce(operands, operators.pop());
+                    }
+                    if (!operators.isEmpty()) {
+                        operators.pop();
+                    }
+                    break;
+                case OP_SUMA:
+                case OP_RESTA:
+                case OP_MULT:
+                case OP_DIV:
+                    while (!operators.isEmpty() && operators.peek().type != PAREN_IZQ
+                            && precedence(operators.peek().type) >= precedence(token.type)) {
+                        reduce(operands, operators.pop());
+                    }
+                    operators.push(token);
+                    break;
+                default:
+                    break;
+            }
+        }
+        while (!operators.isEmpty()) {
+            Token op = operators.pop();
+            if (op.type != PAREN_IZQ) {
+                reduce(operands, op);
+            }
+        }
+        return operands.isEmpty() ? "0" : operands.pop();
+    }
+
+    private void reduce(Stack<String> operands, Token operator) {
+        if (operands.size() < 2) {
+            return; // Expresión malformada: el Parser ya reportó el error
+        }
+        String arg2 = operands.pop();
+        String arg1 = operands.pop();
+        String temp = newTemp();
+        pending.add(temp + " = " + arg1 + " " + operator.lexeme + " " + arg2);
+        operands.push(temp);
+    }
+
+    private int precedence(Token.TokenType type) {
+        return (type == OP_MULT || type == OP_DIV) ? 2 : 1;
+    }
+
+    private boolean isReadLine(List<Token> expression) {
+        return expression.size() == 3 && expression.get(0).type == READLINE_KEYWORD;
+    }
+
+    private String newTemp() {
+        return "t" + (++tempCounter);
+    }
+}
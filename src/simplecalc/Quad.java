@@ -0,0 +1,249 @@
+package simplecalc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Cuádruplo estructurado. El Parser y los optimizadores siguen intercambiando cuádruplos como
+ * texto; quien los lee (optimizadores, ConstantPropagator, generador de código y backends) los
+ * convierte con parse(), que es un recorrido lineal de caracteres sin expresiones regulares ni
+ * excepciones, y después trabaja con los campos. Aquí está también lo que comparten sobre los
+ * operandos: literales, temporales y el tipo de cada uno (OperandTypes).
+ *
+ * Formas reconocidas (las mismas que emiten Parser, ProgramBuilder y QuadOptimizer):
+ *
+ *   x = a                  COPY
+ *   x = a op b             BINARY   (op: + - * / <<)
+ *   READ x                 READ
+ *   PRINT a                PRINT
+ *   RANGE_START a          RANGE_START
+ *   RANGE_END a            RANGE_END
+ *   LABEL L                LABEL
+ *   GOTO L                 GOTO
+ *   IF a op b GOTO L       IF       (op: < > ==)
+ *   IF_FALSE a op b GOTO L IF_FALSE
+ */
+public final class Quad {
+
+    public enum Kind { COPY, BINARY, READ, PRINT, RANGE_START, RANGE_END, LABEL, GOTO, IF, IF_FALSE }
+
+    public final Kind kind;
+    public final String target;   // COPY, BINARY, READ
+    public final String arg1;     // COPY, BINARY, PRINT, RANGE_START, RANGE_END, IF, IF_FALSE
+    public final String operator; // BINARY, IF, IF_FALSE
+    public final String arg2;     // BINARY, IF, IF_FALSE
+    public final String label;    // LABEL, GOTO, IF, IF_FALSE
+
+    private Quad(Kind kind, String target, String arg1, String operator, String arg2, String label) {
+        this.kind = kind;
+        this.target = target;
+        this.arg1 = arg1;
+        this.operator = operator;
+        this.arg2 = arg2;
+        this.label = label;
+    }
+
+    public static Quad parse(String text) {
+        List<String> parts = split(text);
+        int n = parts.size();
+        if (n == 3 && parts.get(1).equals("=")) {
+            return new Quad(Kind.COPY, parts.get(0), parts.get(2), null, null, null);
+        }
+        if (n == 5 && parts.get(1).equals("=")) {
+            return new Quad(Kind.BINARY, parts.get(0), parts.get(2), parts.get(3), parts.get(4), null);
+        }
+        if (n == 2) {
+            String operand = parts.get(1);
+            switch (parts.get(0)) {
+                case "READ":        return new Quad(Kind.READ, operand, null, null, null, null);
+                case "PRINT":       return new Quad(Kind.PRINT, null, operand, null, null, null);
+                case "RANGE_START": return new Quad(Kind.RANGE_START, null, operand, null, null, null);
+                case "RANGE_END":   return new Quad(Kind.RANGE_END, null, operand, null, null, null);
+                case "LABEL":       return new Quad(Kind.LABEL, null, null, null, null, operand);
+                case "GOTO":        return new Quad(Kind.GOTO, null, null, null, null, operand);
+                default:            break;
+            }
+        }
+        if (n == 6 && parts.get(4).equals("GOTO")) {
+            if (parts.get(0).equals("IF")) {
+                return new Quad(Kind.IF, null, parts.get(1), parts.get(2), parts.get(3), parts.get(5));
+            }
+            if (parts.get(0).equals("IF_FALSE")) {
+                return new Quad(Kind.IF_FALSE, null, parts.get(1), parts.get(2), parts.get(3), parts.get(5));
+            }
+        }
+        throw new IllegalArgumentException("Cuádruplo no reconocido: " + text);
+    }
+
+    // El mismo cuádruplo con el destino y los operandos renombrados (etiquetas y operador no cambian)
+    Quad rename(UnaryOperator<String> names) {
+        return new Quad(kind, target == null ? null : names.apply(target), arg1 == null ? null : names.apply(arg1),
+                        operator, arg2 == null ? null : names.apply(arg2), label);
+    }
+
+    // Temporales que aparecen en el texto de un cuádruplo, en cualquiera de sus formas (también
+    // la prefija 't1 = + a b' del LegacyParser, que parse() no acepta)
+    static void addTemporaries(String text, Collection<String> out) {
+        for (String part : split(text)) {
+            if (isTemporary(part)) {
+                out.add(part);
+            }
+        }
+    }
+
+    public static List<Quad> parseAll(List<String> quadruples) {
+        List<Quad> parsed = new ArrayList<>(quadruples.size());
+        for (String quad : quadruples) {
+            parsed.add(parse(quad));
+        }
+        return parsed;
+    }
+
+    // Separa por espacios; una cadena literal ("...") es una sola parte aunque tenga espacios
+    private static List<String> split(String text) {
+        List<String> parts = new ArrayList<>(6);
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            if (text.charAt(i) == ' ') {
+                i++;
+                continue;
+            }
+            int start = i;
+            if (text.charAt(i) == '"') {
+                int close = text.indexOf('"', i + 1);
+                i = close < 0 ? length : close + 1;
+            } else {
+                while (i < length && text.charAt(i) != ' ') {
+                    i++;
+                }
+            }
+            parts.add(text.substring(start, i));
+        }
+        return parts;
+    }
+
+    // Literal entero que cabe en un Int (lo mismo que aceptaría Integer.parseInt, sin excepciones)
+    public static boolean isIntLiteral(String s) {
+        int length = s.length();
+        int start = length > 1 && (s.charAt(0) == '-' || s.charAt(0) == '+') ? 1 : 0;
+        if (length == start || length - start > 10) {
+            return false;
+        }
+        long value = 0;
+        for (int i = start; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return s.charAt(0) == '-' ? -value >= Integer.MIN_VALUE : value <= Integer.MAX_VALUE;
+    }
+
+    public static boolean isStringLiteral(String s) {
+        return s.length() >= 2 && s.charAt(0) == '"' && s.charAt(s.length() - 1) == '"';
+    }
+
+    // Valor de una cadena literal: sin las comillas y con las secuencias de escape de Kotlin resueltas
+    public static String stringValue(String literal) {
+        String s = literal.substring(1, literal.length() - 1);
+        if (s.indexOf('\\') < 0) {
+            return s;
+        }
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\' && i + 1 < s.length()) {
+                char next = s.charAt(++i);
+                switch (next) {
+                    case 'n': sb.append('\n'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'r': sb.append('\r'); break;
+                    case '\\': sb.append('\\'); break;
+                    case '$': sb.append('$'); break;
+                    default: sb.append('\\').append(next); break;
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    // Temporal generada por el compilador: 't' seguida de dígitos
+    public static boolean isTemporary(String s) {
+        int length = s.length();
+        if (length < 2 || s.charAt(0) != 't') {
+            return false;
+        }
+        for (int i = 1; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tipo ("Int" o "String") de los operandos mientras un backend recorre el programa en orden.
+     * Una temporal tiene el tipo de su última definición (las temporales se reutilizan entre
+     * sentencias); una variable, el de la tabla de símbolos. Las variables ocultas y los
+     * acumuladores de inducción no están en la tabla y son Int.
+     */
+    static final class OperandTypes {
+        private final Map<String, String> variableTypes;
+        private final Map<String, String> temporaryTypes = new HashMap<>();
+
+        OperandTypes(Map<String, String> variableTypes) {
+            this.variableTypes = variableTypes;
+        }
+
+        // Registra el tipo de 'name' si es una temporal (las variables tienen tipo fijo)
+        void define(String name, String type) {
+            if (isTemporary(name)) {
+                temporaryTypes.put(name, type);
+            }
+        }
+
+        String of(String operand) {
+            if (isStringLiteral(operand)) {
+                return "String";
+            }
+            if (isIntLiteral(operand)) {
+                return "Int";
+            }
+            String temporaryType = isTemporary(operand) ? temporaryTypes.get(operand) : null;
+            return temporaryType != null ? temporaryType : variableTypes.getOrDefault(operand, "Int");
+        }
+
+        boolean isString(String operand) {
+            return of(operand).equals("String");
+        }
+
+        // Tipo de 'a op b': con una cadena, el '+' es concatenación
+        String resultOf(String arg1, String arg2) {
+            return isString(arg1) || isString(arg2) ? "String" : "Int";
+        }
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case COPY:        return target + " = " + arg1;
+            case BINARY:      return target + " = " + arg1 + " " + operator + " " + arg2;
+            case READ:        return "READ " + target;
+            case PRINT:       return "PRINT " + arg1;
+            case RANGE_START: return "RANGE_START " + arg1;
+            case RANGE_END:   return "RANGE_END " + arg1;
+            case LABEL:       return "LABEL " + label;
+            case GOTO:        return "GOTO " + label;
+            default:          return kind + " " + arg1 + " " + operator + " " + arg2 + " GOTO " + label;
+        }
+    }
+}
@@ -0,0 +1,496 @@
+package simplecalc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Optimizador de mirilla (peephole) y simplificación algebraica sobre cuádruplos.
+ *
+ * Se aplica después de que el Parser generó los cuádruplos de una expresión (ya con
+ * Constant Folding entre literales). Aquí se resuelven los casos que el Parser no pliega
+ * porque uno de los operandos no es constante:
+ *   x * 1, 1 * x, x / 1, x + 0, 0 + x, x - 0  ->  x
+ *   x * 0, 0 * x, x - x                        ->  0
+ *   x * 2^k, 2^k * x                            ->  x << k   (reducción de fuerza)
+ *
+ * También implementa la reducción de fuerza de variables de inducción dentro de los
+ * rangos de un 'for': un producto i * c (i = variable del ciclo) se sustituye por un
+ * acumulador que se inicializa antes del ciclo y se incrementa en c al final de cada iteración.
+ * Se aplica al programa completo que reciben los backends y, con la misma regla, a los
+ * cuádruplos de cada expresión que muestra el reporte.
+ */
+public class QuadOptimizer {
+
+    /**
+     * Simplifica los cuádruplos de una sola expresión. Las sustituciones de temporales
+     * (copias y constantes) se propagan hacia adelante, se vuelve a plegar lo que resulte
+     * constante, se eliminan las temporales muertas y, si la asignación final sólo copia
+     * a la última temporal, se fusiona con su definición.
+     *
+     * También acepta el programa completo ya con temporales reasignadas: al redefinir una
+     * temporal se descarta su sustitución anterior.
+     */
+    public List<String> simplify(List<String> quadruples) {
+        Map<String, String> substitutions = new HashMap<>();
+        List<String> rewritten = new ArrayList<>();
+
+        for (String text : quadruples) {
+            Quad quad = Quad.parse(text);
+            switch (quad.kind) {
+                case BINARY: {
+                    String arg1 = substitutions.getOrDefault(quad.arg1, quad.arg1);
+                    String arg2 = substitutions.getOrDefault(quad.arg2, quad.arg2);
+                    String simplified = simplifyBinary(arg1, quad.operator, arg2);
+                    redefine(quad.target, substitutions, rewritten);
+
+                    if (Quad.isTemporary(quad.target) && isAtomic(simplified)) {
+                        substitutions.put(quad.target, simplified); // La temporal es sólo un alias
+                    } else {
+                        rewritten.add(quad.target + " = " + simplified);
+                    }
+                    break;
+                }
+                case COPY: {
+                    String src = substitutions.getOrDefault(quad.arg1, quad.arg1);
+                    redefine(quad.target, substitutions, rewritten);
+                    if (Quad.isTemporary(quad.target)) {
+                        substitutions.put(quad.target, src);
+                    } else {
+                        rewritten.add(quad.target + " = " + src);
+                    }
+                    break;
+                }
+                case PRINT:
+                case RANGE_START:
+                case RANGE_END:
+                    rewritten.add(quad.kind + " " + substitutions.getOrDefault(quad.arg1, quad.arg1));
+                    break;
+                case IF:
+                case IF_FALSE: {
+                    String arg1 = substitutions.getOrDefault(quad.arg1, quad.arg1);
+                    String arg2 = substitutions.getOrDefault(quad.arg2, quad.arg2);
+                    String folded = foldConditionalJump(quad.kind.toString(), arg1, quad.operator, arg2, quad.label);
+                    if (folded != null) {
+                        rewritten.add(folded);
+                    }
+                    break;
+                }
+                case READ:
+                    redefine(quad.target, substitutions, rewritten); // readLine() dentro de una expresión
+                    rewritten.add(text);
+                    break;
+                default:
+                    rewritten.add(text); // Etiquetas y saltos
+                    break;
+            }
+        }
+
+        return coalesceFinalCopy(eliminateDeadTemporaries(rewritten));
+    }
+
+    /**
+     * Antes de sobrescribir 'dst': las temporales que eran alias de su valor anterior se
+     * materializan con una copia, y la sustitución propia de 'dst' deja de valer.
+     */
+    private void redefine(String dst, Map<String, String> substitutions, List<String> rewritten) {
+        if (!Quad.isTemporary(dst)) {
+            return; // Una variable se escribe al final de su sentencia, cuando sus temporales ya no se usan
+        }
+        substitutions.remove(dst);
+        List<String> aliases = new ArrayList<>();
+        for (Map.Entry<String, String> entry : substitutions.entrySet()) {
+            if (entry.getValue().equals(dst)) {
+                aliases.add(entry.getKey());
+            }
+        }
+        for (String alias : aliases) {
+            substitutions.remove(alias);
+            rewritten.add(alias + " = " + dst);
+        }
+    }
+
+    /**
+     * Un salto condicional con ambos operandos numéricos se resuelve en compilación:
+     * desaparece si nunca salta o se vuelve un GOTO incondicional si siempre salta.
+     */
+    private String foldConditionalJump(String kind, String arg1, String op, String arg2, String label) {
+        if (!Quad.isIntLiteral(arg1) || !Quad.isIntLiteral(arg2)) {
+            return kind + " " + arg1 + " " + op + " " + arg2 + " GOTO " + label;
+        }
+        int val1 = Integer.parseInt(arg1);
+        int val2 = Integer.parseInt(arg2);
+        boolean condition = op.equals("<") ? val1 < val2 : op.equals(">") ? val1 > val2 : val1 == val2;
+        boolean jumps = kind.equals("IF") == condition;
+        return jumps ? "GOTO " + label : null;
+    }
+
+    /**
+     * Aplica las identidades algebraicas a una operación. Devuelve un operando atómico si la
+     * operación desaparece, o el lado derecho (posiblemente con un desplazamiento) si no.
+     */
+    public String simplifyBinary(String arg1, String op, String arg2) {
+        if (Quad.isIntLiteral(arg1) && Quad.isIntLiteral(arg2)) {
+            Integer value = evaluate(Integer.parseInt(arg1), Integer.parseInt(arg2), op);
+            if (value != null) {
+                return String.valueOf(value);
+            }
+        }
+        switch (op) {
+            case "+":
+                if (isLiteral(arg2, 0)) return arg1;
+                if (isLiteral(arg1, 0)) return arg2;
+                break;
+            case "-":
+                if (isLiteral(arg2, 0)) return arg1;
+                if (arg1.equals(arg2)) return "0";
+                break;
+            case "*":
+                if (isLiteral(arg1, 0) || isLiteral(arg2, 0)) return "0";
+                if (isLiteral(arg2, 1)) return arg1;
+                if (isLiteral(arg1, 1)) return arg2;
+                int shift = powerOfTwoExponent(arg2);
+                if (shift > 0) return arg1 + " << " + shift;
+                shift = powerOfTwoExponent(arg1);
+                if (shift > 0) return arg2 + " << " + shift;
+                break;
+            case "/":
+                // x / 2^k no se convierte en desplazamiento: para negativos '/' trunca hacia cero
+                // y '>>' redondea hacia abajo. x / x tampoco se pliega (x podría ser 0).
+                if (isLiteral(arg2, 1)) return arg1;
+                break;
+            case "<<":
+                if (isLiteral(arg2, 0)) return arg1;
+                if (isLiteral(arg1, 0)) return "0";
+                break;
+            default:
+                break;
+        }
+        return arg1 + " " + op + " " + arg2;
+    }
+
+    /**
+     * Reducción de fuerza de variables de inducción.
+     *
+     * Para cada ciclo 'for' cuya variable no se reasigna dentro del cuerpo, los cuádruplos
+     * 'x = i * c' (o 'x = i << k') de las expresiones que están directamente en su cuerpo
+     * se reemplazan por un acumulador 'iv_i_c'. La inicialización 'iv_i_c = inicio * c' se
+     * inserta en la expresión RANGE_START del ciclo y el incremento 'iv_i_c = iv_i_c + c' se
+     * registra en inductionUpdates de la última expresión del cuerpo que lo usa.
+     *
+     * @param expressions Expresiones recolectadas por el Parser, en orden de aparición.
+     * @param reassignedLoops Ciclos cuya variable se reasigna en el cuerpo (no se optimizan).
+     * @param declaredVariables Variables del programa, para no chocar con sus nombres.
+     */
+    public void reduceInductionVariables(List<Parser.ExpressionData> expressions, Set<Integer> reassignedLoops, Set<String> declaredVariables) {
+        for (Parser.ExpressionData header : expressions) {
+            if (header.headerOfLoopId < 0 || reassignedLoops.contains(header.headerOfLoopId) || header.quadruples.isEmpty()) {
+                continue;
+            }
+            Quad rangeStart = Quad.parse(header.quadruples.get(header.quadruples.size() - 1));
+            if (rangeStart.kind != Quad.Kind.RANGE_START) {
+                continue;
+            }
+            String start = rangeStart.arg1;
+            int loopId = header.headerOfLoopId;
+
+            Map<String, Integer> accumulatorSteps = new LinkedHashMap<>();
+            Map<String, Parser.ExpressionData> lastUsers = new HashMap<>();
+
+            for (Parser.ExpressionData body : expressions) {
+                if (body.loopId != loopId) {
+                    continue;
+                }
+                String loopVar = body.loopVariable;
+                List<String> reduced = new ArrayList<>();
+                boolean changed = false;
+
+                for (String quad : body.quadruples) {
+                    Quad binary = Quad.parse(quad);
+                    Integer factor = binary.kind == Quad.Kind.BINARY ? inductionFactor(binary, loopVar) : null;
+                    if (factor == null) {
+                        reduced.add(quad);
+                        continue;
+                    }
+                    String accumulator = "iv_" + loopVar + "_" + (factor < 0 ? "n" + (-(long) factor) : String.valueOf(factor));
+                    if (declaredVariables.contains(accumulator)) {
+                        reduced.add(quad);
+                        continue;
+                    }
+                    reduced.add(binary.target + " = " + accumulator);
+                    accumulatorSteps.put(accumulator, factor);
+                    lastUsers.put(accumulator, body);
+                    changed = true;
+                }
+
+                if (changed) {
+                    body.quadruples = simplify(reduced);
+                }
+            }
+
+            if (accumulatorSteps.isEmpty()) {
+                continue;
+            }
+
+            List<String> headerQuads = new ArrayList<>(header.quadruples);
+            String rangeStartQuad = headerQuads.remove(headerQuads.size() - 1);
+            for (Map.Entry<String, Integer> entry : accumulatorSteps.entrySet()) {
+                String accumulator = entry.getKey();
+                int step = entry.getValue();
+                headerQuads.add(accumulator + " = " + simplifyBinary(start, "*", String.valueOf(step)));
+                lastUsers.get(accumulator).inductionUpdates.add(accumulator + " = " + accumulator + " + " + step);
+            }
+            headerQuads.add(rangeStartQuad);
+            header.quadruples = headerQuads;
+        }
+    }
+
+    /**
+     * La misma reducción de fuerza sobre el programa completo, que es lo que consumen los
+     * backends (Kotlin, VM y JVM). Los ciclos se reconocen por la forma que emite ProgramBuilder:
+     *
+     *   i = a  [__fin_i_n = b]  LABEL Lc  IF i > b GOTO Lx  ...  i = i + 1  GOTO Lc  LABEL Lx
+     *
+     * Si 'i' no se asigna en el cuerpo, cada 'x = i * c' (o 'x = i << k') del cuerpo, también
+     * dentro de ciclos anidados, pasa a ser 'x = iv_i_c'. 'iv_i_c = a * c' se calcula antes de
+     * 'i = a' y 'iv_i_c = iv_i_c + c' se suma justo antes del incremento de 'i', así que el
+     * ciclo conserva su forma de 'for'. Si 'x' es una temporal, sus usos en el mismo bloque
+     * leen directamente el acumulador (las temporales son locales a su sentencia).
+     *
+     * Los acumuladores se registran en variableIsVar como 'var' (se reasignan en cada iteración).
+     *
+     * @param program Programa ya reescrito por ConstantPropagator.
+     * @param declaredVariables Variables del programa, para no chocar con sus nombres.
+     * @param variableIsVar Tabla val/var del Parser.
+     * @return El programa con los ciclos reducidos.
+     */
+    public List<String> reduceInductionVariables(List<String> program, Set<String> declaredVariables, Map<String, Boolean> variableIsVar) {
+        List<String> reduced = new ArrayList<>(program);
+        // De atrás hacia adelante: lo que se inserta en un ciclo no mueve a los que están antes,
+        // y un ciclo interno se reduce antes que el que lo contiene
+        for (int header = reduced.size() - 2; header >= 1; header--) {
+            Quad label = Quad.parse(reduced.get(header));
+            Quad test = label.kind == Quad.Kind.LABEL ? Quad.parse(reduced.get(header + 1)) : null;
+            if (test == null || test.kind != Quad.Kind.IF || !test.operator.equals(">")) {
+                continue;
+            }
+            String loopVar = test.arg1;
+            int exit = indexOfLabel(reduced, test.label, header + 2);
+            if (exit < 0 || !reduced.get(exit - 1).equals("GOTO " + label.label)
+                    || !reduced.get(exit - 2).equals(loopVar + " = " + loopVar + " + 1")) {
+                continue;
+            }
+            int increment = exit - 2;
+            int init = header - 1;
+            while (init >= 0 && isRangeSetup(Quad.parse(reduced.get(init)), loopVar)) {
+                init--;
+            }
+            Quad start = init >= 0 ? Quad.parse(reduced.get(init)) : null;
+            if (start == null || !loopVar.equals(start.target)
+                    || (start.kind != Quad.Kind.COPY && start.kind != Quad.Kind.BINARY)
+                    || assignsInRange(reduced, loopVar, header + 2, increment)) {
+                continue;
+            }
+
+            Map<String, Integer> accumulatorSteps = new LinkedHashMap<>();
+            for (int i = header + 2; i < increment; i++) {
+                Quad binary = Quad.parse(reduced.get(i));
+                Integer factor = binary.kind == Quad.Kind.BINARY ? inductionFactor(binary, loopVar) : null;
+                if (factor == null) {
+                    continue;
+                }
+                String accumulator = "iv_" + loopVar + "_" + (factor < 0 ? "n" + (-(long) factor) : String.valueOf(factor));
+                if (declaredVariables.contains(accumulator)) {
+                    continue;
+                }
+                accumulatorSteps.put(accumulator, factor);
+                if (Quad.isTemporary(binary.target) && forwardTemporary(reduced, i + 1, increment, binary.target, accumulator)) {
+                    reduced.remove(i);
+                    increment--;
+                    exit--;
+                    i--;
+                } else {
+                    reduced.set(i, binary.target + " = " + accumulator);
+                }
+            }
+            if (accumulatorSteps.isEmpty()) {
+                continue;
+            }
+
+            List<String> updates = new ArrayList<>();
+            List<String> initializations = new ArrayList<>();
+            for (Map.Entry<String, Integer> entry : accumulatorSteps.entrySet()) {
+                String accumulator = entry.getKey();
+                String step = String.valueOf(entry.getValue());
+                updates.add(accumulator + " = " + accumulator + " + " + step);
+                if (start.kind == Quad.Kind.COPY) {
+                    initializations.add(accumulator + " = " + simplifyBinary(start.arg1, "*", step));
+                } else {
+                    initializations.add(accumulator + " = " + start.arg1 + " " + start.operator + " " + start.arg2);
+                    String scaled = simplifyBinary(accumulator, "*", step);
+                    if (!scaled.equals(accumulator)) {
+                        initializations.add(accumulator + " = " + scaled);
+                    }
+                }
+                variableIsVar.put(accumulator, true);
+            }
+            reduced.addAll(increment, updates);
+            reduced.addAll(init, initializations);
+        }
+        return reduced;
+    }
+
+    // Temporales y la variable oculta del límite que ProgramBuilder pone entre 'i = a' y 'LABEL Lc'
+    private static boolean isRangeSetup(Quad quad, String loopVar) {
+        return quad.target != null && quad.kind != Quad.Kind.READ
+                && (Quad.isTemporary(quad.target) || quad.target.startsWith("__fin_" + loopVar + "_"));
+    }
+
+    private static int indexOfLabel(List<String> program, String label, int from) {
+        String text = "LABEL " + label;
+        for (int i = from; i < program.size(); i++) {
+            if (program.get(i).equals(text)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean assignsInRange(List<String> program, String variable, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (variable.equals(Quad.parse(program.get(i)).target)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reemplaza 'temporary' por 'accumulator' en los cuádruplos siguientes del mismo bloque
+     * (hasta una etiqueta o un salto, que también puede leerla). Devuelve true si la copia
+     * 'temporary = accumulator' ya no hace falta: la temporal se redefine o el bloque termina.
+     * Si antes se reasigna el acumulador, la copia se queda.
+     */
+    private static boolean forwardTemporary(List<String> program, int from, int to, String temporary, String accumulator) {
+        for (int i = from; i < to; i++) {
+            Quad quad = Quad.parse(program.get(i));
+            if (quad.kind == Quad.Kind.LABEL || quad.kind == Quad.Kind.GOTO) {
+                return true;
+            }
+            if (accumulator.equals(quad.target)) {
+                return false;
+            }
+            String arg1 = temporary.equals(quad.arg1) ? accumulator : quad.arg1;
+            String arg2 = temporary.equals(quad.arg2) ? accumulator : quad.arg2;
+            switch (quad.kind) {
+                case COPY:        program.set(i, quad.target + " = " + arg1); break;
+                case BINARY:      program.set(i, quad.target + " = " + arg1 + " " + quad.operator + " " + arg2); break;
+                case PRINT:
+                case RANGE_START:
+                case RANGE_END:   program.set(i, quad.kind + " " + arg1); break;
+                case IF:
+                case IF_FALSE:    program.set(i, quad.kind + " " + arg1 + " " + quad.operator + " " + arg2 + " GOTO " + quad.label); return true;
+                default:          break;
+            }
+            if (temporary.equals(quad.target)) {
+                return true;
+            }
+        }
+        return true;
+    }
+
+    // Devuelve c si el cuádruplo es 'dst = i * c', 'dst = c * i' o 'dst = i << k' (c = 2^k); null en otro caso.
+    private Integer inductionFactor(Quad binary, String loopVar) {
+        if (loopVar == null) {
+            return null;
+        }
+        String arg1 = binary.arg1;
+        String op = binary.operator;
+        String arg2 = binary.arg2;
+        if (op.equals("*")) {
+            if (arg1.equals(loopVar) && Quad.isIntLiteral(arg2)) return Integer.parseInt(arg2);
+            if (arg2.equals(loopVar) && Quad.isIntLiteral(arg1)) return Integer.parseInt(arg1);
+        } else if (op.equals("<<") && arg1.equals(loopVar) && Quad.isIntLiteral(arg2)) {
+            int shift = Integer.parseInt(arg2);
+            if (shift > 0 && shift < 31) return 1 << shift;
+        }
+        return null;
+    }
+
+    // Elimina definiciones de temporales que ya no se usan (análisis de vida hacia atrás).
+    private List<String> eliminateDeadTemporaries(List<String> quadruples) {
+        Set<String> live = new HashSet<>();
+        List<String> kept = new ArrayList<>();
+        for (int i = quadruples.size() - 1; i >= 0; i--) {
+            String text = quadruples.get(i);
+            Quad quad = Quad.parse(text);
+            boolean assignment = quad.kind == Quad.Kind.BINARY || quad.kind == Quad.Kind.COPY;
+
+            if (assignment && Quad.isTemporary(quad.target) && !live.contains(quad.target)) {
+                continue;
+            }
+            if (quad.target != null) {
+                live.remove(quad.target); // También READ: la define (pero no se elimina)
+            }
+            for (String operand : new String[] {quad.arg1, quad.arg2}) {
+                if (operand != null && Quad.isTemporary(operand)) {
+                    live.add(operand);
+                }
+            }
+            kept.add(0, text);
+        }
+        return kept;
+    }
+
+    // 'tK = a op b' seguido de 'x = tK' (último cuádruplo) se fusiona en 'x = a op b'.
+    private List<String> coalesceFinalCopy(List<String> quadruples) {
+        int n = quadruples.size();
+        if (n < 2) {
+            return quadruples;
+        }
+        Quad finalCopy = Quad.parse(quadruples.get(n - 1));
+        Quad previous = Quad.parse(quadruples.get(n - 2));
+        if (finalCopy.kind == Quad.Kind.COPY && previous.kind == Quad.Kind.BINARY && Quad.isTemporary(finalCopy.arg1)
+                && finalCopy.arg1.equals(previous.target)) {
+            List<String> merged = new ArrayList<>(quadruples.subList(0, n - 2));
+            merged.add(finalCopy.target + " = " + previous.arg1 + " " + previous.operator + " " + previous.arg2);
+            return merged;
+        }
+        return quadruples;
+    }
+
+    private int powerOfTwoExponent(String s) {
+        if (!Quad.isIntLiteral(s)) {
+            return -1;
+        }
+        int value = Integer.parseInt(s);
+        if (value <= 1 || Integer.bitCount(value) != 1) {
+            return -1;
+        }
+        return Integer.numberOfTrailingZeros(value);
+    }
+
+    // null si no se debe plegar: la división entre cero se deja para que falle al ejecutarse
+    private Integer evaluate(int val1, int val2, String op) {
+        switch (op) {
+            case "+": return val1 + val2;
+            case "-": return val1 - val2;
+            case "*": return val1 * val2;
+            case "<<": return val1 << val2;
+            case "/": return val2 == 0 ? null : val1 / val2;
+            default: return null;
+        }
+    }
+
+    private boolean isAtomic(String s) {
+        return s.indexOf(' ') < 0;
+    }
+
+    private boolean isLiteral(String s, int value) {
+        return Quad.isIntLiteral(s) && Integer.parseInt(s) == value;
+    }
+}
@@ -0,0 +1,79 @@
+package simplecalc;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Búferes de trabajo de una compilación que se pueden reutilizar en la siguiente: el
+ * StringBuilder de las claves de memoización, el digest SHA-256 con su búfer de UTF-8 y el
+ * StringBuilder donde se genera el código Kotlin. CompilerPipeline los presta de un pool.
+ *
+ * No es thread-safe: lo usa una sola compilación a la vez.
+ */
+final class ScratchBuffers {
+
+    // Un búfer que creció más que esto (un programa enorme) no se guarda para la siguiente compilación
+    private static final int MAX_RETAINED_CHARS = 1 << 20;
+
+    private StringBuilder keyBuffer = new StringBuilder(256);
+    private StringBuilder outputBuffer = new StringBuilder(8192);
+    private ByteBuffer encoded = ByteBuffer.allocate(1024);
+    private final CharsetEncoder utf8 = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final MessageDigest sha256;
+
+    ScratchBuffers() {
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e); // Obligatorio en toda JVM
+        }
+    }
+
+    // Vacío; válido hasta la siguiente llamada
+    StringBuilder keyBuffer() {
+        keyBuffer.setLength(0);
+        return keyBuffer;
+    }
+
+    // Vacío; válido hasta la siguiente llamada
+    StringBuilder outputBuffer() {
+        outputBuffer.setLength(0);
+        return outputBuffer;
+    }
+
+    // Igual que StatementCache.sha256(text.toString()), sin copiar el texto ni crear el digest
+    String sha256(CharSequence text) {
+        int maxBytes = (int) Math.ceil(text.length() * (double) utf8.maxBytesPerChar());
+        if (encoded.capacity() < maxBytes) {
+            encoded = ByteBuffer.allocate(Math.max(maxBytes, encoded.capacity() * 2));
+        }
+        encoded.clear();
+        utf8.reset();
+        utf8.encode(CharBuffer.wrap(text), encoded, true);
+        utf8.flush(encoded);
+        encoded.flip();
+        sha256.reset();
+        sha256.update(encoded);
+        return StatementCache.hex(sha256.digest());
+    }
+
+    // Antes de devolverlo al pool: se descartan los búferes que crecieron demasiado
+    void trim() {
+        if (keyBuffer.capacity() > MAX_RETAINED_CHARS) {
+            keyBuffer = new StringBuilder(256);
+        }
+        if (outputBuffer.capacity() > MAX_RETAINED_CHARS) {
+            outputBuffer = new StringBuilder(8192);
+        }
+        if (encoded.capacity() > 3 * MAX_RETAINED_CHARS) {
+            encoded = ByteBuffer.allocate(1024);
+        }
+    }
+}
@@ -10,12 +10,12 @@ public class SemanticError extends RuntimeException {
         this.specificMessage = specificMessage;
     }
     
+    public Diagnostic toDiagnostic() {
+        return Diagnostic.semantic(token, specificMessage);
+    }
+
     @Override
     public String getMessage() {
-        if (token != null) {
-            return String.format("[Línea %d, Col %d] Error semántico cerca de '%s': %s",
-                    token.line, token.column, token.lexeme, specificMessage);
-        }
-        return specificMessage;
+        return toDiagnostic().format();
     }
 }
\ No newline at end of file
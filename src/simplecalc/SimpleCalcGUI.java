@@ -1,18 +1,26 @@
 package simplecalc;
 
 import javax.swing.*;
-import javax.swing.text.BadLocationException;
-import javax.swing.text.DefaultHighlighter;
-import javax.swing.text.Highlighter;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.DefaultTableModel;
+import javax.swing.text.Document;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import java.nio.file.Files;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.HashSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.Set;
 import javax.swing.JFileChooser;
 import java.io.File;
@@ -23,21 +31,74 @@ import java.nio.file.Path;
 public class SimpleCalcGUI extends JFrame {
     private JTextArea inputArea;
     private JTextArea outputArea; // Declara aquí para que sea accesible
+    // Los reportes de código intermedio se muestran en una JList paginada (PagedReportModel)
+    // que ocupa el lugar de outputArea: un JTextArea con megabytes de texto se vuelve inutilizable
+    private static final String TEXT_OUTPUT = "texto";
+    private static final String REPORT_OUTPUT = "reporte";
+    private static final int REPORT_COLUMNS = 160;
+    private JPanel outputPanel;
+    private JList<String> reportList;
+    private JList<String> reportLineNumbers;
+    // Tabla de tokens del análisis léxico (TokenTableModel), en el mismo lugar
+    private static final String TOKENS_OUTPUT = "tokens";
+    private static final String ALL_TOKEN_TYPES = "Todos los tipos";
+    private JTable tokenTable;
+    private JComboBox<String> tokenTypeFilter;
+    private JLabel tokenCountLabel;
+    private TokenTableModel tokenModel; // null si no se muestra la tabla
+    private int tokenErrorCount;
     private JLabel statusLabel;
-    private Highlighter.HighlightPainter errorPainter;
+    private ErrorHighlighter errorHighlighter;
 
     // Campos para almacenar métricas del Parser OPTIMIZADO
     private int lastOptimizedTotalQuadruples;
     private int lastOptimizedUniqueTempVars;
-    private long lastOptimizedCompilationDurationMs;
+    private int lastOptimizedMaxTempPressure;
 
     // Campos para almacenar métricas del LegacyParser (NO OPTIMIZADO)
     private int lastLegacyTotalQuadruples;
     private int lastLegacyUniqueTempVars;
-    private long lastLegacyCompilationDurationMs;
 
-    // Campo para almacenar la instancia del parser si el análisis optimizado fue exitoso
-    private Parser lastSuccessfulParser;
+    // Tiempo y memoria por fase de las últimas compilaciones, la más reciente primero
+    private static final int METRICS_HISTORY = 20;
+    private final Deque<CompilationMetrics> optimizedMetricsHistory = new ArrayDeque<>();
+    private final Deque<CompilationMetrics> legacyMetricsHistory = new ArrayDeque<>();
+
+    // Campo para almacenar la compilación si el análisis optimizado fue exitoso
+    private CompilationResult lastSuccessfulCompilation;
+
+    // Compilaciones recientes indexadas por el contenido del editor. La caché en disco es opcional:
+    // se activa con -Dsimplecalc.cache.dir=<directorio>
+    private final CompilationCache compilationCache = new CompilationCache(32,
+        System.getProperty("simplecalc.cache.dir") != null ? Path.of(System.getProperty("simplecalc.cache.dir")) : null);
+
+    // Límite de saltos (VM y backend JVM) para que un ciclo infinito no congele la interfaz
+    private static final long MAX_VM_JUMPS = 500_000_000L;
+
+    // Cada cuántos elementos (tokens, expresiones) una tarea actualiza el avance
+    private static final int PROGRESS_STEP = 1024;
+
+    // Las compilaciones y la salida de los botones se arman en estos hilos, no en el EDT (ver OutputTask)
+    private final ExecutorService taskExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "simplecalc-tarea");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private OutputTask currentTask; // Sólo se usa en el EDT
+
+    // Trazas DEBUG del Parser en los análisis sintáctico y semántico (-Dsimplecalc.debug=true)
+    private static final boolean DEBUG_OUTPUT = Boolean.getBoolean("simplecalc.debug");
+
+    // Diagnósticos mientras se escribe: se analizan tras DIAGNOSTICS_DELAY_MS sin cambios en el editor
+    private static final int DIAGNOSTICS_DELAY_MS = 30;
+    private final IncrementalLexer diagnosticsLexer = new IncrementalLexer();
+    private Timer diagnosticsTimer;
+    private SwingWorker<ErrorHighlighter.Ranges, Void> diagnosticsWorker; // Sólo se usan en el EDT
+    private int documentVersion;
+
+    // Desde este tamaño un archivo se abre mapeado en memoria y de sólo lectura (MappedDocument)
+    private static final long MAPPED_FILE_BYTES = 4L << 20;
+    private Document editableDocument; // El documento propio del editor, mientras no se muestra uno mapeado
 
 
     public SimpleCalcGUI() {
@@ -47,7 +108,10 @@ public class SimpleCalcGUI extends JFrame {
         setLocationRelativeTo(null);
 
         initComponents();
-        errorPainter = new DefaultHighlighter.DefaultHighlightPainter(Color.PINK);
+        errorHighlighter = new ErrorHighlighter(Color.PINK);
+        inputArea.setHighlighter(errorHighlighter);
+        editableDocument = inputArea.getDocument();
+        installLiveDiagnostics();
     }
 
     private void initComponents() {
@@ -129,6 +193,57 @@ public class SimpleCalcGUI extends JFrame {
         LineNumberingTextArea lineNumbersOutput = new LineNumberingTextArea(outputArea);
         outputScrollPane.setRowHeaderView(lineNumbersOutput);
 
+        // Con una fila de prototipo la JList no mide cada fila: sólo pide y dibuja las visibles
+        reportList = new JList<>();
+        reportList.setFont(outputArea.getFont());
+        reportList.setPrototypeCellValue("X".repeat(REPORT_COLUMNS));
+        reportLineNumbers = new JList<>();
+        reportLineNumbers.setFont(outputArea.getFont());
+        reportLineNumbers.setBackground(Color.LIGHT_GRAY);
+        reportLineNumbers.setFocusable(false);
+        reportLineNumbers.setPrototypeCellValue("9999999");
+        reportLineNumbers.setFixedCellHeight(reportList.getFixedCellHeight());
+        JScrollPane reportScrollPane = new JScrollPane(reportList);
+        reportScrollPane.setBorder(BorderFactory.createTitledBorder("Salida del Compilador"));
+        reportScrollPane.setRowHeaderView(reportLineNumbers);
+
+        // Sin RowSorter: el modelo ordena y filtra sus índices; un clic en el encabezado elige la columna
+        tokenTable = new JTable();
+        tokenTable.setFont(outputArea.getFont());
+        tokenTable.setFillsViewportHeight(true);
+        tokenTable.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int column = tokenTable.convertColumnIndexToModel(tokenTable.columnAtPoint(e.getPoint()));
+                if (tokenModel != null && column >= 0) {
+                    tokenModel.sortBy(column);
+                    updateTokenHeaders();
+                }
+            }
+        });
+        tokenTypeFilter = new JComboBox<>();
+        tokenTypeFilter.addItem(ALL_TOKEN_TYPES);
+        for (Token.TokenType type : Token.TokenType.values()) {
+            if (type != Token.TokenType.EOL && type != Token.TokenType.EOF) {
+                tokenTypeFilter.addItem(type.name());
+            }
+        }
+        tokenTypeFilter.addActionListener(e -> filterTokens());
+        tokenCountLabel = new JLabel();
+        JPanel tokenFilterPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        tokenFilterPanel.add(new JLabel("Tipo:"));
+        tokenFilterPanel.add(tokenTypeFilter);
+        tokenFilterPanel.add(tokenCountLabel);
+        JPanel tokenPanel = new JPanel(new BorderLayout());
+        tokenPanel.setBorder(BorderFactory.createTitledBorder("Tokens Reconocidos"));
+        tokenPanel.add(tokenFilterPanel, BorderLayout.NORTH);
+        tokenPanel.add(new JScrollPane(tokenTable), BorderLayout.CENTER);
+
+        outputPanel = new JPanel(new CardLayout());
+        outputPanel.add(outputScrollPane, TEXT_OUTPUT);
+        outputPanel.add(reportScrollPane, REPORT_OUTPUT);
+        outputPanel.add(tokenPanel, TOKENS_OUTPUT);
+
 
         JButton processButton = new JButton("Compilar");
         processButton.addActionListener(new ActionListener() {
@@ -207,6 +322,37 @@ public class SimpleCalcGUI extends JFrame {
             }
         });
 
+        JButton runProgramButton = new JButton("Ejecutar");
+        runProgramButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                runProgram(false);
+            }
+        });
+
+        JButton runJvmProgramButton = new JButton("Ejecutar JVM");
+        runJvmProgramButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                runProgram(true);
+            }
+        });
+
+        JButton exportIrButton = new JButton("Exportar IR");
+        exportIrButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                exportIntermediateFile();
+            }
+        });
+
+        JButton openIrButton = new JButton("Abrir IR");
+        openIrButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                openIntermediateFile();
+            }
+        });
 
         JButton loadFileButton = new JButton("Cargar Archivo");
         loadFileButton.addActionListener(new ActionListener() {
@@ -235,6 +381,10 @@ public class SimpleCalcGUI extends JFrame {
         buttonPanel.add(generateLegacyIntermediateButton);
         buttonPanel.add(showLegacyMetricsButton);
         buttonPanel.add(showOptimizedKotlinCodeButton);
+        buttonPanel.add(runProgramButton);
+        buttonPanel.add(runJvmProgramButton);
+        buttonPanel.add(exportIrButton);
+        buttonPanel.add(openIrButton);
         buttonPanel.add(loadFileButton);
         buttonPanel.add(clearButton);
 
@@ -243,7 +393,7 @@ public class SimpleCalcGUI extends JFrame {
         topPanel.add(inputScrollPane, BorderLayout.CENTER);
         topPanel.add(buttonPanel, BorderLayout.SOUTH);
 
-        centerPanel.add(outputScrollPane);
+        centerPanel.add(outputPanel);
 
         bottomPanel.add(statusLabel);
 
@@ -253,334 +403,262 @@ public class SimpleCalcGUI extends JFrame {
 
         inputScrollPane.setPreferredSize(new Dimension(980, 200));
         outputScrollPane.setPreferredSize(new Dimension(980, 300));
+        reportScrollPane.setPreferredSize(new Dimension(980, 300));
+        tokenPanel.setPreferredSize(new Dimension(980, 300));
 
         setContentPane(mainPanel);
     }
 
     private void processCode() {
-        outputArea.setText("");
-        inputArea.getHighlighter().removeAllHighlights();
-        statusLabel.setText("Iniciando compilación completa...");
-        statusLabel.setForeground(Color.BLACK);
-
-        String sourceCode = inputArea.getText();
-        Lexer lexer = new Lexer(sourceCode);
-        List<Token> tokens = lexer.scanTokens();
+        CharSequence sourceCode = sourceText();
+        startTask("Iniciando compilación completa...", new OutputTask() {
+            @Override
+            protected void compute() {
+                phase("Compilando...", 10);
+                // Si el texto no cambió desde la última compilación, el resultado sale de la caché
+                CompilationResult compilation = compilationCache.compile(sourceCode);
+                phase("Preparando resultado...", 80);
+
+                List<Diagnostic> lexicalErrors = compilation.getLexicalErrors();
+                List<Diagnostic> allParserErrors = compilation.getParserErrors();
+
+                if (!lexicalErrors.isEmpty()) {
+                    sb.append("--- Errores Léxicos Detectados ---\n");
+                    appendErrors(lexicalErrors);
+                    sb.append("\n");
+                }
 
-        StringBuilder sb = new StringBuilder();
-        List<String> lexicalErrors = tokens.stream()
-                                           .filter(t -> t.type == Token.TokenType.ERROR)
-                                           .map(t -> String.format("[Línea %d, Col %d] Error Léxico: %s", t.line, t.column,
-                                                                   t.errorMessage != null ? t.errorMessage : t.lexeme + " (Caracter inesperado)"))
-                                           .collect(Collectors.toList());
-
-        // Instancia un nuevo parser cada vez para asegurar un estado limpio
-        Parser parser = new Parser(tokens);
-        parser.parse();
-        List<String> allParserErrors = parser.getErrors();
-
-        if (!lexicalErrors.isEmpty()) {
-            sb.append("--- Errores Léxicos Detectados ---\n");
-            for (String err : lexicalErrors) {
-                sb.append(err).append("\n");
-                highlightErrorFromMessage(err);
-            }
-            sb.append("\n");
-        }
+                if (!allParserErrors.isEmpty()) {
+                    sb.append("--- Errores Sintácticos/Semánticos Detectados ---\n");
+                    appendErrors(allParserErrors);
+                    sb.append("\n");
+                }
 
-        if (!allParserErrors.isEmpty()) {
-            sb.append("--- Errores Sintácticos/Semánticos Detectados ---\n");
-            for (String err : allParserErrors) {
-                sb.append(err).append("\n");
-                highlightErrorFromMessage(err);
+                if (lexicalErrors.isEmpty() && allParserErrors.isEmpty()) {
+                    sb.append(">>> El código Kotlin es léxica, sintáctica y semánticamente VÁLIDO. <<<\n");
+                    finish("Resultado: VÁLIDO.", new Color(0, 128, 0));
+                } else {
+                    sb.append(">>> El código contiene errores. <<<\n");
+                    finish("Resultado: INVÁLIDO.", Color.RED);
+                }
+                // NOTA: NO GUARDAMOS la compilación aquí. lastSuccessfulCompilation solo se actualiza
+                // si se ejecuta "Generar Intermedio (Optimizado)" exitosamente.
             }
-            sb.append("\n");
-        }
-
-        if (lexicalErrors.isEmpty() && allParserErrors.isEmpty()) {
-            sb.append(">>> El código Kotlin es léxica, sintáctica y semánticamente VÁLIDO. <<<\n");
-            statusLabel.setText("Resultado: VÁLIDO.");
-            statusLabel.setForeground(new Color(0, 128, 0));
-        } else {
-            sb.append(">>> El código contiene errores. <<<\n");
-            statusLabel.setText("Resultado: INVÁLIDO.");
-            statusLabel.setForeground(Color.RED);
-        }
-
-        outputArea.setText(sb.toString());
-        outputArea.setCaretPosition(0);
-        // NOTA: NO GUARDAMOS el parser aquí. lastSuccessfulParser solo se actualiza
-        // si se ejecuta "Generar Intermedio (Optimizado)" exitosamente.
+        });
     }
 
     private void processLexicalAnalysis() {
-        outputArea.setText("");
-        inputArea.getHighlighter().removeAllHighlights();
-        statusLabel.setText("Realizando análisis léxico...");
-        statusLabel.setForeground(Color.BLACK);
-
-        String sourceCode = inputArea.getText();
-        Lexer lexer = new Lexer(sourceCode);
-        List<Token> tokens = lexer.scanTokens();
-
-        StringBuilder sb = new StringBuilder();
-        sb.append("--- Tokens Reconocidos ---\n");
-        sb.append(Token.getTableHeader()).append("\n");
-        for (Token token : tokens) {
-            if (token.type != Token.TokenType.EOL && token.type != Token.TokenType.EOF) {
-                sb.append(token.toString()).append("\n");
-            }
-        }
-        sb.append(Token.getTableFooter()).append("\n\n");
-
-        List<String> lexicalErrors = tokens.stream()
-                                           .filter(t -> t.type == Token.TokenType.ERROR)
-                                           .map(t -> String.format("[Línea %d, Col %d] Error Léxico: %s", t.line, t.column,
-                                                                   t.errorMessage != null ? t.errorMessage : t.lexeme + " (Caracter inesperado)"))
-                                           .collect(Collectors.toList());
-
-        if (!lexicalErrors.isEmpty()) {
-            sb.append("--- Errores Léxicos Detectados ---\n");
-            for (String err : lexicalErrors) {
-                sb.append(err).append("\n");
-                highlightErrorFromMessage(err);
+        CharSequence sourceCode = sourceText();
+        startTask("Realizando análisis léxico...", new OutputTask() {
+            @Override
+            protected void compute() {
+                Lexer lexer = new Lexer(sourceCode);
+                List<Token> tokens = lexer.scanTokens();
+                phase("Preparando tabla de tokens...", 60);
+
+                // La tabla lee de la lista de tokens: no se formatea nada hasta que una fila se ve
+                TokenTableModel table = new TokenTableModel(tokens);
+                List<Diagnostic> lexicalErrors = Lexer.lexicalErrors(tokens);
+                highlightErrors(lexicalErrors);
+
+                if (!lexicalErrors.isEmpty()) {
+                    finish("Resultado: Léxicamente INVÁLIDO (" + lexicalErrors.size() + " errores; filtre por ERROR para verlos).", Color.RED);
+                } else {
+                    finish("Resultado: Léxicamente VÁLIDO.", new Color(0, 128, 0));
+                }
+                afterDone(() -> showTokens(table, lexicalErrors.size()));
             }
-            sb.append("\n");
-            statusLabel.setText("Resultado: Léxicamente INVÁLIDO.");
-            statusLabel.setForeground(Color.RED);
-        } else {
-            sb.append(">>> El código es léxicamente VÁLIDO. <<<\n");
-            statusLabel.setText("Resultado: Léxicamente VÁLIDO.");
-            statusLabel.setForeground(new Color(0, 128, 0));
-        }
-
-        outputArea.setText(sb.toString());
-        outputArea.setCaretPosition(0);
+        });
     }
 
     private void processSyntaxAnalysis() {
-        outputArea.setText("");
-        inputArea.getHighlighter().removeAllHighlights();
-        statusLabel.setText("Realizando análisis sintáctico...");
-        statusLabel.setForeground(Color.BLACK);
-
-        String sourceCode = inputArea.getText();
-        Lexer lexer = new Lexer(sourceCode);
-        List<Token> tokens = lexer.scanTokens();
-
-        List<String> lexicalErrors = tokens.stream()
-                                           .filter(t -> t.type == Token.TokenType.ERROR)
-                                           .map(t -> String.format("[Línea %d, Col %d] Error Léxico: %s", t.line, t.column,
-                                                                   t.errorMessage != null ? t.errorMessage : t.lexeme + " (Caracter inesperado)"))
-                                           .collect(Collectors.toList());
-
-        StringBuilder sb = new StringBuilder();
-
-        // Instancia un nuevo parser cada vez para asegurar un estado limpio
-        Parser parser = new Parser(tokens);
-        parser.parse();
-        List<String> allParserErrors = parser.getErrors();
-        List<String> syntaxErrors = allParserErrors.stream()
-                                              .filter(err -> !err.contains("Error semántico"))
-                                              .collect(Collectors.toList());
+        CharSequence sourceCode = sourceText();
+        startTask("Realizando análisis sintáctico...", new OutputTask() {
+            @Override
+            protected void compute() {
+                Lexer lexer = new Lexer(sourceCode);
+                List<Token> tokens = lexer.scanTokens();
+                List<Diagnostic> lexicalErrors = Lexer.lexicalErrors(tokens);
+                phase("Analizando sintaxis...", 20);
+
+                // Instancia un nuevo parser cada vez para asegurar un estado limpio
+                Parser parser = new Parser(tokens);
+                parser.setDebugOutput(DEBUG_OUTPUT);
+                parser.parse();
+                phase("Preparando resultado...", 80);
+                List<Diagnostic> allParserErrors = parser.getErrors();
+                List<Diagnostic> syntaxErrors = allParserErrors.stream()
+                                                      .filter(err -> err.kind() != Diagnostic.Kind.SEMANTIC)
+                                                      .collect(Collectors.toList());
+
+                if (!lexicalErrors.isEmpty()) {
+                    sb.append("--- Errores Léxicos Detectados ---\n");
+                    appendErrors(lexicalErrors);
+                    sb.append("\n");
+                }
 
-        if (!lexicalErrors.isEmpty()) {
-            sb.append("--- Errores Léxicos Detectados ---\n");
-            for (String err : lexicalErrors) {
-                sb.append(err).append("\n");
-                highlightErrorFromMessage(err);
-            }
-            sb.append("\n");
-        }
+                if (!syntaxErrors.isEmpty()) {
+                    sb.append("--- Errores Sintácticos Detectados ---\n");
+                    appendErrors(syntaxErrors);
+                    sb.append("\n");
+                }
 
-        if (!syntaxErrors.isEmpty()) {
-            sb.append("--- Errores Sintácticos Detectados ---\n");
-            for (String err : syntaxErrors) {
-                sb.append(err).append("\n");
-                highlightErrorFromMessage(err);
+                if (lexicalErrors.isEmpty() && syntaxErrors.isEmpty()) {
+                    sb.append(">>> El código es sintácticamente VÁLIDO. <<<\n");
+                    finish("Resultado: Sintácticamente VÁLIDO.", new Color(0, 128, 0));
+                } else {
+                    sb.append(">>> El código contiene errores sintácticos o léxicos. <<<\n");
+                    finish("Resultado: Sintácticamente INVÁLIDO.", Color.RED);
+                }
             }
-            sb.append("\n");
-        }
-
-        if (lexicalErrors.isEmpty() && syntaxErrors.isEmpty()) {
-            sb.append(">>> El código es sintácticamente VÁLIDO. <<<\n");
-            statusLabel.setText("Resultado: Sintácticamente VÁLIDO.");
-            statusLabel.setForeground(new Color(0, 128, 0));
-        } else {
-            sb.append(">>> El código contiene errores sintácticos o léxicos. <<<\n");
-            statusLabel.setText("Resultado: Sintácticamente INVÁLIDO.");
-            statusLabel.setForeground(Color.RED);
-        }
-
-        outputArea.setText(sb.toString());
-        outputArea.setCaretPosition(0);
+        });
     }
 
     private void processSemanticAnalysis() {
-        outputArea.setText("");
-        inputArea.getHighlighter().removeAllHighlights();
-        statusLabel.setText("Realizando análisis semántico...");
-        statusLabel.setForeground(Color.BLACK);
-
-        String sourceCode = inputArea.getText();
-        Lexer lexer = new Lexer(sourceCode);
-        List<Token> tokens = lexer.scanTokens();
-
-        List<String> lexicalErrors = tokens.stream()
-                                           .filter(t -> t.type == Token.TokenType.ERROR)
-                                           .map(t -> String.format("[Línea %d, Col %d] Error Léxico: %s", t.line, t.column,
-                                                                   t.errorMessage != null ? t.errorMessage : t.lexeme + " (Caracter inesperado)"))
-                                           .collect(Collectors.toList());
-
-        StringBuilder sb = new StringBuilder();
+        CharSequence sourceCode = sourceText();
+        startTask("Realizando análisis semántico...", new OutputTask() {
+            @Override
+            protected void compute() {
+                Lexer lexer = new Lexer(sourceCode);
+                List<Token> tokens = lexer.scanTokens();
+                List<Diagnostic> lexicalErrors = Lexer.lexicalErrors(tokens);
+                phase("Analizando semántica...", 20);
+
+                // Instancia un nuevo parser cada vez para asegurar un estado limpio
+                Parser parser = new Parser(tokens);
+                parser.setDebugOutput(DEBUG_OUTPUT);
+                parser.parse();
+                phase("Preparando resultado...", 80);
+                List<Diagnostic> allParserErrors = parser.getErrors();
+                List<Diagnostic> semanticErrors = allParserErrors.stream()
+                                                       .filter(err -> err.kind() == Diagnostic.Kind.SEMANTIC)
+                                                       .collect(Collectors.toList());
+                List<Diagnostic> syntaxErrors = allParserErrors.stream()
+                                                        .filter(err -> err.kind() != Diagnostic.Kind.SEMANTIC)
+                                                        .collect(Collectors.toList());
+
+                if (!lexicalErrors.isEmpty()) {
+                    sb.append("--- Errores Léxicos Detectados ---\n");
+                    appendErrors(lexicalErrors);
+                    sb.append("\n");
+                }
 
-        // Instancia un nuevo parser cada vez para asegurar un estado limpio
-        Parser parser = new Parser(tokens);
-        parser.parse();
-        List<String> allParserErrors = parser.getErrors();
-        List<String> semanticErrors = allParserErrors.stream()
-                                               .filter(err -> err.contains("Error semántico"))
-                                               .collect(Collectors.toList());
-        List<String> syntaxErrors = allParserErrors.stream()
-                                                .filter(err -> !err.contains("Error semántico"))
-                                                .collect(Collectors.toList());
-
-        if (!lexicalErrors.isEmpty()) {
-            sb.append("--- Errores Léxicos Detectados ---\n");
-            for (String err : lexicalErrors) {
-                sb.append(err).append("\n");
-                highlightErrorFromMessage(err);
-            }
-            sb.append("\n");
-        }
+                if (!syntaxErrors.isEmpty()) {
+                    sb.append("--- Errores Sintácticos Detectados ---\n");
+                    appendErrors(syntaxErrors);
+                    sb.append("\n");
+                }
 
-        if (!syntaxErrors.isEmpty()) {
-            sb.append("--- Errores Sintácticos Detectados ---\n");
-            for (String err : syntaxErrors) {
-                sb.append(err).append("\n");
-                highlightErrorFromMessage(err);
-            }
-            sb.append("\n");
-        }
+                if (!semanticErrors.isEmpty()) {
+                    sb.append("--- Errores Semánticos Detectados ---\n");
+                    appendErrors(semanticErrors);
+                    sb.append("\n");
+                }
 
-        if (!semanticErrors.isEmpty()) {
-            sb.append("--- Errores Semánticos Detectados ---\n");
-            for (String err : semanticErrors) {
-                sb.append(err).append("\n");
-                highlightErrorFromMessage(err);
+                if (lexicalErrors.isEmpty() && syntaxErrors.isEmpty() && semanticErrors.isEmpty()) {
+                    sb.append(">>> El código es semánticamente VÁLIDO. <<<\n");
+                    finish("Resultado: Semánticamente VÁLIDO.", new Color(0, 128, 0));
+                } else {
+                    sb.append(">>> El código contiene errores. <<<\n");
+                    finish("Resultado: Semánticamente INVÁLIDO.", Color.RED);
+                }
             }
-            sb.append("\n");
-        }
-
-        if (lexicalErrors.isEmpty() && syntaxErrors.isEmpty() && semanticErrors.isEmpty()) {
-            sb.append(">>> El código es semánticamente VÁLIDO. <<<\n");
-            statusLabel.setText("Resultado: Semánticamente VÁLIDO.");
-            statusLabel.setForeground(new Color(0, 128, 0));
-        } else {
-            sb.append(">>> El código contiene errores. <<<\n");
-            statusLabel.setText("Resultado: Semánticamente INVÁLIDO.");
-            statusLabel.setForeground(Color.RED);
-        }
-
-        outputArea.setText(sb.toString());
-        outputArea.setCaretPosition(0);
+        });
     }
 
     // --- Métodos para el Parser OPTIMIZADO ---
     private void generateOptimizedIntermediateCode() {
-        outputArea.setText("");
-        inputArea.getHighlighter().removeAllHighlights();
-        statusLabel.setText("Generando código intermedio (Optimizado)...");
-        statusLabel.setForeground(Color.BLACK);
-
-        String sourceCode = inputArea.getText();
-        Lexer lexer = new Lexer(sourceCode);
-        List<Token> tokens = lexer.scanTokens();
-
-        StringBuilder sb = new StringBuilder();
-        List<String> lexicalErrors = tokens.stream()
-                                           .filter(t -> t.type == Token.TokenType.ERROR)
-                                           .map(t -> String.format("[Línea %d, Col %d] Error Léxico: %s", t.line, t.column,
-                                                                   t.errorMessage != null ? t.errorMessage : t.lexeme + " (Caracter inesperado)"))
-                                           .collect(Collectors.toList());
-
-        long startTime = System.nanoTime();
-
-        // Siempre crear un nuevo parser para asegurar un estado limpio
-        Parser parser = new Parser(tokens);
-        parser.parse();
-        List<String> allParserErrors = parser.getErrors();
-
-        long endTime = System.nanoTime();
-        lastOptimizedCompilationDurationMs = (endTime - startTime) / 1_000_000;
-
-        if (!lexicalErrors.isEmpty() || !allParserErrors.isEmpty()) {
-            sb.append("--- Errores Detectados (Impiden Generación de Código Intermedio) ---\n");
-            for (String err : lexicalErrors) {
-                sb.append(err).append("\n");
-                highlightErrorFromMessage(err);
-            }
-            for (String err : allParserErrors) {
-                sb.append(err).append("\n");
-                highlightErrorFromMessage(err);
-            }
-            sb.append("\n>>> No se puede generar código intermedio optimizado debido a los errores anteriores. <<<\n");
-            statusLabel.setText("Resultado: Generación de Intermedio Optimizado FALLIDA.");
-            statusLabel.setForeground(Color.RED);
+        CharSequence sourceCode = sourceText();
+        startTask("Generando código intermedio (Optimizado)...", new OutputTask() {
+            @Override
+            protected void compute() {
+                boolean fromCache = compilationCache.isCached(sourceCode);
+                phase("Compilando...", 10);
+                CompilationResult compilation = compilationCache.compile(sourceCode);
+                phase("Generando listado de cuádruplos...", 50);
+                // Las métricas son las de la compilación original, también cuando viene de la caché
+                CompilationMetrics metrics = compilation.getMetrics();
+
+                List<Diagnostic> lexicalErrors = compilation.getLexicalErrors();
+                List<Diagnostic> allParserErrors = compilation.getParserErrors();
+
+                if (!lexicalErrors.isEmpty() || !allParserErrors.isEmpty()) {
+                    sb.append("--- Errores Detectados (Impiden Generación de Código Intermedio) ---\n");
+                    appendErrors(lexicalErrors);
+                    appendErrors(allParserErrors);
+                    sb.append("\n>>> No se puede generar código intermedio optimizado debido a los errores anteriores. <<<\n");
+                    finish("Resultado: Generación de Intermedio Optimizado FALLIDA.", Color.RED);
+
+                    afterDone(() -> {
+                        recordMetrics(optimizedMetricsHistory, metrics);
+                        lastOptimizedTotalQuadruples = 0;
+                        lastOptimizedUniqueTempVars = 0;
+                        lastOptimizedMaxTempPressure = 0;
+                        lastSuccessfulCompilation = null; // Reiniciar si hay errores
+                    });
+                    return;
+                }
 
-            lastOptimizedTotalQuadruples = 0;
-            lastOptimizedUniqueTempVars = 0;
-            this.lastSuccessfulParser = null; // Reiniciar si hay errores
-
-        } else {
-            sb.append("--- Generación de Código Intermedio (Optimizado) ---\n\n");
-            List<Parser.ExpressionData> expressions = parser.getCollectedExpressions();
-
-            int currentTotalQuadruples = 0;
-            Set<String> currentUniqueTempVars = new HashSet<>();
-
-            if (expressions.isEmpty()) {
-                sb.append("No se encontraron expresiones válidas para procesar.\n");
-            } else {
-                for (int i = 0; i < expressions.size(); i++) {
-                    Parser.ExpressionData data = expressions.get(i);
-                    sb.append("Expresión #").append(i + 1).append(" ");
-                    sb.append("Línea ").append(data.lineNumber).append("\n");
-                    sb.append(data.toString()).append("\n");
-
-                    currentTotalQuadruples += data.quadruples.size();
-                    Pattern p = Pattern.compile("t\\d+");
-                    for (String quad : data.quadruples) {
-                        Matcher m = p.matcher(quad);
-                        while (m.find()) {
-                            currentUniqueTempVars.add(m.group());
+                // El detalle de cada expresión se arma recién cuando queda a la vista
+                PagedReportModel report = new PagedReportModel();
+                report.addText("--- Generación de Código Intermedio (Optimizado) ---\n\n");
+                List<Parser.ExpressionData> expressions = compilation.getCollectedExpressions();
+
+                int currentTotalQuadruples = 0;
+                Set<String> currentUniqueTempVars = new HashSet<>();
+
+                if (expressions.isEmpty()) {
+                    report.addText("No se encontraron expresiones válidas para procesar.\n");
+                } else {
+                    for (int i = 0; i < expressions.size(); i++) {
+                        Parser.ExpressionData data = expressions.get(i);
+                        int number = i + 1;
+                        // Encabezado, detalle y una línea en blanco
+                        report.addSection(data.reportLineCount() + 2,
+                                          () -> "Expresión #" + number + " Línea " + data.lineNumber + "\n" + data + "\n");
+
+                        currentTotalQuadruples += data.quadruples.size();
+                        for (String quad : data.quadruples) {
+                            Quad.addTemporaries(quad, currentUniqueTempVars);
+                        }
+                        if (i % PROGRESS_STEP == 0) {
+                            phase("Generando listado de cuádruplos...", 50 + 40 * i / expressions.size());
                         }
                     }
                 }
-            }
-
-            lastOptimizedTotalQuadruples = currentTotalQuadruples;
-            lastOptimizedUniqueTempVars = currentUniqueTempVars.size();
 
-            sb.append(">>> Código intermedio optimizado generado exitosamente. <<<\n");
-            statusLabel.setText("Resultado: Intermedio Optimizado Generado.");
-            statusLabel.setForeground(new Color(0, 128, 0));
-            this.lastSuccessfulParser = parser; // ¡Guarda la instancia del parser si es exitoso!
-        }
-
-        outputArea.setText(sb.toString());
-        outputArea.setCaretPosition(0);
+                report.addText("--- Programa Completo (Código de Tres Direcciones con Saltos) ---\n");
+                List<String> program = compilation.getProgramQuadruples();
+                report.addRows(program.size(), i -> program.get(i).startsWith("LABEL ") ? program.get(i) : "    " + program.get(i));
+                report.addText("\n>>> Código intermedio optimizado generado exitosamente. <<<\n");
+                finish("Resultado: Intermedio Optimizado Generado." + (fromCache ? " (desde caché)" : ""), new Color(0, 128, 0));
+
+                int totalQuadruples = currentTotalQuadruples;
+                int uniqueTempVars = currentUniqueTempVars.size();
+                afterDone(() -> {
+                    recordMetrics(optimizedMetricsHistory, metrics);
+                    lastOptimizedTotalQuadruples = totalQuadruples;
+                    lastOptimizedUniqueTempVars = uniqueTempVars;
+                    lastOptimizedMaxTempPressure = compilation.getMaxTemporaryPressure();
+                    lastSuccessfulCompilation = compilation; // ¡Guarda la compilación si es exitosa!
+                    showReport(report);
+                });
+            }
+        });
     }
 
     private void displayOptimizedMetrics() {
+        cancelCurrentTask();
         outputArea.setText("");
-        inputArea.getHighlighter().removeAllHighlights();
+        errorHighlighter.clearErrors();
 
         StringBuilder sb = new StringBuilder();
         sb.append("--- Métricas de la Última Generación de Código Intermedio (Optimizado) ---\n");
-        sb.append("  Tiempo de procesamiento del Parser (con optimizaciones): ").append(lastOptimizedCompilationDurationMs).append(" ms\n");
         sb.append("  Total de Cuádruplos generados: ").append(lastOptimizedTotalQuadruples).append("\n");
         sb.append("  Máximo de Variables Temporales distintas: ").append(lastOptimizedUniqueTempVars).append("\n");
+        sb.append("  Presión máxima de registros temporales (barrido lineal): ").append(lastOptimizedMaxTempPressure).append("\n");
+        sb.append("  Caché de compilación: ").append(compilationCache.getStatistics()).append("\n");
+        appendPhaseMetrics(sb, optimizedMetricsHistory);
         sb.append("\nPara obtener métricas actualizadas, genere el código intermedio (Optimizado) primero.\n");
 
         outputArea.setText(sb.toString());
@@ -591,14 +669,15 @@ public class SimpleCalcGUI extends JFrame {
 
     // --- NUEVO MÉTODO: Mostrar Código SimpleCalc Optimizado ---
     private void showOptimizedKotlinCode() {
+        cancelCurrentTask();
         outputArea.setText("");
-        inputArea.getHighlighter().removeAllHighlights();
+        errorHighlighter.clearErrors();
         statusLabel.setText("Generando código SimpleCalc optimizado...");
         statusLabel.setForeground(Color.BLACK);
 
         // Se requiere que el paso de "Generar Intermedio (Optimizado)" se haya ejecutado exitosamente
-        // para que 'lastSuccessfulParser' contenga una instancia válida y sin errores.
-        if (lastSuccessfulParser == null || !lastSuccessfulParser.getErrors().isEmpty()) {
+        // para que 'lastSuccessfulCompilation' contenga una compilación válida y sin errores.
+        if (lastSuccessfulCompilation == null || !lastSuccessfulCompilation.isSuccessful()) {
             outputArea.setText("No se pudo generar código SimpleCalc optimizado. Asegúrese de que el análisis de Código Intermedio (Optimizado) haya sido exitoso (sin errores léxicos, sintácticos o semánticos).\n");
             statusLabel.setText("Generación de Código SimpleCalc Optimizado FALLIDA (errores o no se compiló).");
             statusLabel.setForeground(Color.RED);
@@ -606,12 +685,8 @@ public class SimpleCalcGUI extends JFrame {
         }
 
         try {
-            KotlinCodeGenerator codeGenerator = new KotlinCodeGenerator(
-                lastSuccessfulParser.getCollectedExpressions(),
-                lastSuccessfulParser.getVariableTypes(), // Usar el getter público
-                lastSuccessfulParser.getVariableIsVar()
-            );
-            String optimizedKotlinCode = codeGenerator.generateOptimizedKotlinCode();
+            // El código Kotlin se generó junto con la compilación (y quedó en la caché)
+            String optimizedKotlinCode = lastSuccessfulCompilation.getKotlinCode();
 
             outputArea.setText("--- Código SimpleCalc Optimizado ---\n\n");
             outputArea.append(optimizedKotlinCode);
@@ -651,99 +726,244 @@ if (userSelection == JFileChooser.APPROVE_OPTION) {
     }
 
 
-    // --- Métodos para el LegacyParser (NO OPTIMIZADO) ---
-    private void generateLegacyIntermediateCode() {
-        outputArea.setText("");
-        inputArea.getHighlighter().removeAllHighlights();
-        statusLabel.setText("Generando código intermedio (No Optimizado)...");
-        statusLabel.setForeground(Color.BLACK);
+    // --- Ejecución del programa: máquina virtual propia o clase JVM generada ---
+    private void runProgram(boolean useJvmBackend) {
+        CharSequence sourceCode = sourceText();
+        startTask(useJvmBackend ? "Generando clase JVM..." : "Compilando a bytecode...", new OutputTask() {
+            @Override
+            protected void compute() throws Exception {
+                CompilationResult compilation = compilationCache.compile(sourceCode);
+                List<Diagnostic> errors = new ArrayList<>(compilation.getLexicalErrors());
+                errors.addAll(compilation.getParserErrors());
+
+                if (!errors.isEmpty()) {
+                    sb.append("--- Errores Detectados (Impiden la Ejecución) ---\n");
+                    appendErrors(errors);
+                    finish("Resultado: Ejecución FALLIDA.", Color.RED);
+                    return;
+                }
 
-        String sourceCode = inputArea.getText();
-        Lexer lexer = new Lexer(sourceCode);
-        List<Token> tokens = lexer.scanTokens();
+                phase("Ejecutando...", 50);
+                StringBuilder programOutput = new StringBuilder();
+                // readLine() abre el diálogo en el EDT y espera la respuesta desde este hilo
+                Supplier<String> programInput = () -> askOnEventDispatchThread("readLine():");
+                VmProgram program = null;
+
+                long startTime = System.nanoTime();
+                try {
+                    String summary;
+                    if (useJvmBackend) {
+                        JvmBytecodeGenerator.CompiledProgram compiled =
+                            new JvmBytecodeGenerator(compilation.getProgramQuadruples(), compilation.getVariableTypes()).load();
+                        compiled.run(programInput, programOutput, MAX_VM_JUMPS);
+                        summary = "clase JVM de " + compiled.classFileSize + " bytes";
+                    } else {
+                        program = new VmCompiler(compilation.getVariableTypes()).compile(compilation.getProgramQuadruples());
+                        VirtualMachine vm = new VirtualMachine(programInput, programOutput);
+                        vm.setMaxJumps(MAX_VM_JUMPS);
+                        vm.run(program);
+                        summary = program.getInstructionCount() + " instrucciones, "
+                                + (program.getIntRegisterCount() + program.getStringRegisterCount()) + " registros";
+                    }
+                    long durationMs = (System.nanoTime() - startTime) / 1_000_000;
+                    sb.append("--- Salida del Programa ---\n");
+                    sb.append(programOutput).append("\n");
+                    sb.append("\n--- Ejecución terminada en ").append(durationMs).append(" ms (")
+                      .append(summary).append(") ---\n");
+                    finish("Resultado: Programa ejecutado.", new Color(0, 128, 0));
+                } catch (ArithmeticException | IllegalStateException ex) {
+                    sb.append("--- Salida del Programa ---\n");
+                    sb.append(programOutput).append("\n");
+                    sb.append("\nError de ejecución: ").append(ex.getMessage()).append("\n");
+                    finish("Resultado: Error de ejecución.", Color.RED);
+                }
+                if (program != null) {
+                    flush();
+                    sb.append("\n--- Bytecode ---\n").append(program.disassemble());
+                }
+            }
+        });
+    }
 
-        StringBuilder sb = new StringBuilder();
-        List<String> lexicalErrors = tokens.stream()
-                                           .filter(t -> t.type == Token.TokenType.ERROR)
-                                           .map(t -> String.format("[Línea %d, Col %d] Error Léxico: %s", t.line, t.column,
-                                                                   t.errorMessage != null ? t.errorMessage : t.lexeme + " (Caracter inesperado)"))
-                                           .collect(Collectors.toList());
-
-        long startTime = System.nanoTime();
-
-        // Siempre crear un nuevo legacyParser para asegurar un estado limpio
-        LegacyParser legacyParser = new LegacyParser(tokens);
-        legacyParser.parse();
-        List<String> allParserErrors = legacyParser.getErrors();
-
-        long endTime = System.nanoTime();
-        lastLegacyCompilationDurationMs = (endTime - startTime) / 1_000_000;
-
-        if (!lexicalErrors.isEmpty() || !allParserErrors.isEmpty()) {
-            sb.append("--- Errores Detectados (Impiden Generación de Código Intermedio) ---\n");
-            for (String err : lexicalErrors) {
-                sb.append(err).append("\n");
-                highlightErrorFromMessage(err);
-            }
-            for (String err : allParserErrors) {
-                sb.append(err).append("\n");
-                highlightErrorFromMessage(err);
-            }
-            sb.append("\n>>> No se puede generar código intermedio no optimizado debido a los errores anteriores. <<<\n");
-            statusLabel.setText("Resultado: Generación de Intermedio No Optimizado FALLIDA.");
+    // --- Código intermedio binario (.scir): se guarda el bytecode de la VM ya compilado ---
+    // En el EDT sólo se elige el archivo; la compilación y la escritura van en la tarea
+    private void exportIntermediateFile() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setSelectedFile(new File("programa." + VmProgramFile.EXTENSION));
+        fileChooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("Código intermedio SimpleCalc (*.scir)", VmProgramFile.EXTENSION));
+        if (fileChooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            statusLabel.setText("Guardado de archivo cancelado.");
             statusLabel.setForeground(Color.RED);
+            return;
+        }
+        File fileToSave = fileChooser.getSelectedFile();
 
-            lastLegacyTotalQuadruples = 0;
-            lastLegacyUniqueTempVars = 0;
-
-        } else {
-            sb.append("--- Generación de Código Intermedio (No Optimizado) ---\n\n");
-            List<LegacyParser.ExpressionData> expressions = legacyParser.getCollectedExpressions(); // Usar LegacyParser.ExpressionData
-
-            int currentTotalQuadruples = 0;
-            Set<String> currentUniqueTempVars = new HashSet<>();
-
-            if (expressions.isEmpty()) {
-                sb.append("No se encontraron expresiones válidas para procesar.\n");
-            } else {
-                for (int i = 0; i < expressions.size(); i++) {
-                    LegacyParser.ExpressionData data = expressions.get(i); // Usar LegacyParser.ExpressionData
-                    sb.append("Expresión #").append(i + 1).append(" ");
-                    sb.append("Línea ").append(data.lineNumber).append("\n");
-                    sb.append(data.toString()).append("\n");
-
-                    currentTotalQuadruples += data.quadruples.size();
-                    Pattern p = Pattern.compile("t\\d+");
-                    for (String quad : data.quadruples) {
-                        Matcher m = p.matcher(quad);
-                        while (m.find()) {
-                            currentUniqueTempVars.add(m.group());
-                        }
-                    }
+        CharSequence sourceCode = sourceText();
+        startTask("Compilando a bytecode...", new OutputTask() {
+            @Override
+            protected void compute() {
+                CompilationResult compilation = compilationCache.compile(sourceCode);
+                if (!compilation.isSuccessful()) {
+                    sb.append("El programa tiene errores. Use 'Compilar' para verlos antes de exportar el código intermedio.\n");
+                    finish("Exportación de IR FALLIDA.", Color.RED);
+                    return;
                 }
-            }
 
-            lastLegacyTotalQuadruples = currentTotalQuadruples;
-            lastLegacyUniqueTempVars = currentUniqueTempVars.size();
+                phase("Guardando código intermedio...", 60);
+                VmProgram program = new VmCompiler(compilation.getVariableTypes()).compile(compilation.getProgramQuadruples());
+                try {
+                    VmProgramFile.write(program, fileToSave.toPath());
+                } catch (java.io.IOException ex) {
+                    sb.append("Error al guardar el código intermedio: ").append(ex.getMessage()).append("\n");
+                    finish("Exportación de IR FALLIDA.", Color.RED);
+                    return;
+                }
+                sb.append("--- Código intermedio exportado (").append(fileToSave.length()).append(" bytes) ---\n");
+                sb.append(program.disassemble());
+                finish("Código intermedio guardado en: " + fileToSave.getAbsolutePath(), new Color(0, 128, 0));
+            }
+        });
+    }
 
-            sb.append(">>> Código intermedio no optimizado generado exitosamente. <<<\n");
-            statusLabel.setText("Resultado: Intermedio No Optimizado Generado.");
-            statusLabel.setForeground(new Color(0, 128, 0));
+    // Carga un .scir mapeándolo en memoria y lo ejecuta en la VM sin pasar por el lexer ni el parser
+    private void openIntermediateFile() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setCurrentDirectory(new java.io.File("."));
+        fileChooser.setDialogTitle("Seleccionar Código Intermedio");
+        fileChooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("Código intermedio SimpleCalc (*.scir)", VmProgramFile.EXTENSION));
+        if (fileChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
         }
+        File selectedFile = fileChooser.getSelectedFile();
 
-        outputArea.setText(sb.toString());
-        outputArea.setCaretPosition(0);
+        startTask("Cargando código intermedio...", new OutputTask() {
+            @Override
+            protected void compute() {
+                VmProgram program;
+                long loadStart = System.nanoTime();
+                try {
+                    program = VmProgramFile.read(selectedFile.toPath());
+                } catch (java.io.IOException ex) {
+                    sb.append("Error al leer el código intermedio: ").append(ex.getMessage()).append("\n");
+                    finish("Error al cargar archivo.", Color.RED);
+                    return;
+                }
+                long loadMicros = (System.nanoTime() - loadStart) / 1_000;
+
+                phase("Ejecutando...", 50);
+                StringBuilder programOutput = new StringBuilder();
+                // readLine() abre el diálogo en el EDT y espera la respuesta desde este hilo
+                VirtualMachine vm = new VirtualMachine(() -> askOnEventDispatchThread("readLine():"), programOutput);
+                vm.setMaxJumps(MAX_VM_JUMPS);
+                long startTime = System.nanoTime();
+                try {
+                    vm.run(program);
+                    long durationMs = (System.nanoTime() - startTime) / 1_000_000;
+                    sb.append("--- Salida del Programa (").append(selectedFile.getName()).append(") ---\n");
+                    sb.append(programOutput).append("\n");
+                    sb.append("\n--- Cargado en ").append(loadMicros).append(" µs, ejecutado en ").append(durationMs)
+                      .append(" ms (").append(program.getInstructionCount()).append(" instrucciones) ---\n");
+                    finish("Resultado: Programa ejecutado.", new Color(0, 128, 0));
+                } catch (ArithmeticException | IllegalStateException ex) {
+                    sb.append("--- Salida del Programa ---\n");
+                    sb.append(programOutput).append("\n");
+                    sb.append("\nError de ejecución: ").append(ex.getMessage()).append("\n");
+                    finish("Resultado: Error de ejecución.", Color.RED);
+                }
+                flush();
+                sb.append("\n--- Bytecode ---\n").append(program.disassemble());
+            }
+        });
+    }
+
+    // --- Métodos para el LegacyParser (NO OPTIMIZADO) ---
+    private void generateLegacyIntermediateCode() {
+        CharSequence sourceCode = sourceText();
+        startTask("Generando código intermedio (No Optimizado)...", new OutputTask() {
+            @Override
+            protected void compute() {
+                CompilationMetrics.Recorder recorder = new CompilationMetrics.Recorder();
+                recorder.switchTo(CompilationMetrics.Phase.LEXER);
+                Lexer lexer = new Lexer(sourceCode);
+                List<Token> tokens = lexer.scanTokens();
+                List<Diagnostic> lexicalErrors = Lexer.lexicalErrors(tokens);
+                phase("Analizando (sin optimizaciones)...", 20);
+
+                // Siempre crear un nuevo legacyParser para asegurar un estado limpio
+                recorder.switchTo(CompilationMetrics.Phase.PARSER);
+                LegacyParser legacyParser = new LegacyParser(tokens);
+                legacyParser.setMetrics(recorder);
+                legacyParser.parse();
+                List<Diagnostic> allParserErrors = legacyParser.getErrors();
+                CompilationMetrics metrics = recorder.finish();
+                phase("Generando listado de cuádruplos...", 50);
+
+                if (!lexicalErrors.isEmpty() || !allParserErrors.isEmpty()) {
+                    sb.append("--- Errores Detectados (Impiden Generación de Código Intermedio) ---\n");
+                    appendErrors(lexicalErrors);
+                    appendErrors(allParserErrors);
+                    sb.append("\n>>> No se puede generar código intermedio no optimizado debido a los errores anteriores. <<<\n");
+                    finish("Resultado: Generación de Intermedio No Optimizado FALLIDA.", Color.RED);
+
+                    afterDone(() -> {
+                        recordMetrics(legacyMetricsHistory, metrics);
+                        lastLegacyTotalQuadruples = 0;
+                        lastLegacyUniqueTempVars = 0;
+                    });
+                    return;
+                }
+
+                PagedReportModel report = new PagedReportModel();
+                report.addText("--- Generación de Código Intermedio (No Optimizado) ---\n\n");
+                List<LegacyParser.ExpressionData> expressions = legacyParser.getCollectedExpressions(); // Usar LegacyParser.ExpressionData
+
+                int currentTotalQuadruples = 0;
+                Set<String> currentUniqueTempVars = new HashSet<>();
+
+                if (expressions.isEmpty()) {
+                    report.addText("No se encontraron expresiones válidas para procesar.\n");
+                } else {
+                    for (int i = 0; i < expressions.size(); i++) {
+                        LegacyParser.ExpressionData data = expressions.get(i); // Usar LegacyParser.ExpressionData
+                        int number = i + 1;
+                        report.addSection(data.reportLineCount() + 2,
+                                          () -> "Expresión #" + number + " Línea " + data.lineNumber + "\n" + data + "\n");
+
+                        currentTotalQuadruples += data.quadruples.size();
+                        for (String quad : data.quadruples) {
+                            Quad.addTemporaries(quad, currentUniqueTempVars);
+                        }
+                        if (i % PROGRESS_STEP == 0) {
+                            phase("Generando listado de cuádruplos...", 50 + 50 * i / expressions.size());
+                        }
+                    }
+                }
+
+                report.addText(">>> Código intermedio no optimizado generado exitosamente. <<<\n");
+                finish("Resultado: Intermedio No Optimizado Generado.", new Color(0, 128, 0));
+
+                int totalQuadruples = currentTotalQuadruples;
+                int uniqueTempVars = currentUniqueTempVars.size();
+                afterDone(() -> {
+                    recordMetrics(legacyMetricsHistory, metrics);
+                    lastLegacyTotalQuadruples = totalQuadruples;
+                    lastLegacyUniqueTempVars = uniqueTempVars;
+                    showReport(report);
+                });
+            }
+        });
     }
 
     private void displayLegacyMetrics() {
+        cancelCurrentTask();
         outputArea.setText("");
-        inputArea.getHighlighter().removeAllHighlights();
+        errorHighlighter.clearErrors();
 
         StringBuilder sb = new StringBuilder();
         sb.append("--- Métricas de la Última Generación de Código Intermedio (No Optimizado) ---\n");
-        sb.append("  Tiempo de procesamiento del Parser (sin optimizaciones): ").append(lastLegacyCompilationDurationMs).append(" ms\n");
         sb.append("  Total de Cuádruplos generados: ").append(lastLegacyTotalQuadruples).append("\n");
         sb.append("  Máximo de Variables Temporales distintas: ").append(lastLegacyUniqueTempVars).append("\n");
+        appendPhaseMetrics(sb, legacyMetricsHistory);
         sb.append("\nPara obtener métricas actualizadas, genere el código intermedio (No Optimizado) primero.\n");
 
         outputArea.setText(sb.toString());
@@ -753,86 +973,351 @@ if (userSelection == JFileChooser.APPROVE_OPTION) {
     }
 
 
-    private void highlightErrorFromMessage(String errorMessage) {
-        try {
-            if (errorMessage.startsWith("[")) {
-                String locationPart = errorMessage.substring(1, errorMessage.indexOf("]"));
-                String[] parts = locationPart.split(",");
-                int line = Integer.parseInt(parts[0].replace("Línea ", "").trim());
-                int col = Integer.parseInt(parts[1].replace("Col ", "").trim());
-
-                String lexemeToHighlight = "";
-                int lexemeLength = 1;
-
-                int startLexicalError = errorMessage.indexOf("Error Léxico: '");
-                if (startLexicalError != -1) {
-                    startLexicalError += "Error Léxico: '".length();
-                    int endLexicalError = errorMessage.indexOf("'", startLexicalError);
-                    if (endLexicalError != -1) {
-                        lexemeToHighlight = errorMessage.substring(startLexicalError, endLexicalError);
-                        lexemeLength = lexemeToHighlight.length();
-                        highlightError(line, col, lexemeLength);
-                        return;
-                    }
-                }
+    // Una compilación que sale otra vez de la caché trae las mismas métricas: no se repite
+    private static void recordMetrics(Deque<CompilationMetrics> history, CompilationMetrics metrics) {
+        if (history.peekFirst() == metrics) {
+            return;
+        }
+        history.addFirst(metrics);
+        if (history.size() > METRICS_HISTORY) {
+            history.removeLast();
+        }
+    }
+
+    // Tiempo y memoria asignada por fase de la última compilación, y el historial de las anteriores
+    private static void appendPhaseMetrics(StringBuilder sb, Deque<CompilationMetrics> history) {
+        if (history.isEmpty()) {
+            sb.append("  Tiempo por fase: todavía no hay compilaciones medidas.\n");
+            return;
+        }
+        CompilationMetrics last = history.peekFirst();
+        sb.append("\n  Tiempo y memoria asignada por fase (última compilación):\n");
+        sb.append(String.format("    %-34s %12s %12s\n", "Fase", "Tiempo (ms)", "Memoria"));
+        for (CompilationMetrics.Phase phase : CompilationMetrics.Phase.values()) {
+            if (last.getNanos(phase) > 0) { // Las fases que no corrieron no se listan
+                sb.append(String.format("    %-34s %12.3f %12s\n", phase.getLabel(), last.getNanos(phase) / 1e6,
+                                        formatBytes(last.getAllocatedBytes(phase))));
+            }
+        }
+        sb.append(String.format("    %-34s %12.3f %12s\n", "Total", last.getTotalNanos() / 1e6,
+                                formatBytes(last.getTotalAllocatedBytes())));
+
+        sb.append("\n  Historial (la más reciente primero; tiempos en ms):\n");
+        sb.append(String.format("    %3s %-8s %10s %10s", "#", "Hora", "Total", "Memoria"));
+        for (CompilationMetrics.Phase phase : CompilationMetrics.Phase.values()) {
+            sb.append(String.format(" %10s", phase.getShortLabel()));
+        }
+        sb.append("\n");
+        int number = 1;
+        for (CompilationMetrics metrics : history) {
+            sb.append(String.format("    %3d %tT %10.3f %10s", number++, metrics.getRecordedAtMillis(),
+                                    metrics.getTotalNanos() / 1e6, formatBytes(metrics.getTotalAllocatedBytes())));
+            for (CompilationMetrics.Phase phase : CompilationMetrics.Phase.values()) {
+                long nanos = metrics.getNanos(phase);
+                sb.append(nanos > 0 ? String.format(" %10.3f", nanos / 1e6) : String.format(" %10s", "-"));
+            }
+            sb.append("\n");
+        }
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 0) {
+            return "n/d"; // La JVM no mide la memoria asignada por hilo
+        }
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+
+    /**
+     * Trabajo de un botón fuera del EDT: compila y arma el texto de salida en un hilo de
+     * taskExecutor, lo publica en trozos de CHUNK_CHARS que el EDT va agregando a outputArea
+     * (así el EDT nunca recibe de golpe un texto de megabytes) y, al terminar, aplica en el EDT
+     * el estado, los resaltados de errores y los campos de la interfaz.
+     *
+     * Lanzar otra tarea cancela esta: se interrumpe su hilo (el Parser lo revisa entre
+     * sentencias) y su salida pendiente y su resultado se descartan.
+     */
+    private abstract class OutputTask extends SwingWorker<Void, String> {
+        private static final int CHUNK_CHARS = 64 * 1024;
+
+        // Salida pendiente de publicar; sólo la usa el hilo de la tarea
+        protected final StringBuilder sb = new StringBuilder();
+        private final List<Diagnostic> errorsToHighlight = new ArrayList<>();
+        private ErrorHighlighter.Ranges errorRanges;
+        private final List<Runnable> afterDone = new ArrayList<>();
+        private volatile String phase = "";
+        private String status = "Listo.";
+        private Color statusColor = Color.BLACK;
+
+        // Corre en el hilo de la tarea: no debe tocar componentes Swing
+        protected abstract void compute() throws Exception;
+
+        @Override
+        protected Void doInBackground() throws Exception {
+            compute();
+            errorRanges = ErrorHighlighter.ranges(errorsToHighlight); // Se ordenan aquí, fuera del EDT
+            publishPending();
+            return null;
+        }
+
+        // Fase y avance (0-100) que se muestran en statusLabel
+        protected void phase(String description, int percent) {
+            checkCancelled();
+            phase = description;
+            setProgress(Math.max(0, Math.min(100, percent)));
+        }
+
+        // Publica la salida acumulada cuando ya forma un trozo; también es punto de cancelación
+        protected void flush() {
+            checkCancelled();
+            if (sb.length() >= CHUNK_CHARS) {
+                publishPending();
+            }
+        }
+
+        private void publishPending() {
+            if (sb.length() > 0) {
+                publish(sb.toString());
+                sb.setLength(0);
+            }
+        }
+
+        protected void checkCancelled() {
+            if (isCancelled()) {
+                throw new CancellationException();
+            }
+        }
+
+        protected void appendErrors(List<Diagnostic> errors) {
+            for (Diagnostic err : errors) {
+                sb.append(err.format()).append("\n");
+            }
+            highlightErrors(errors);
+            flush();
+        }
 
-                int startSyntaxSemanticError = errorMessage.indexOf("Error en '");
-                if (startSyntaxSemanticError != -1) {
-                     startSyntaxSemanticError += "Error en '".length();
-                     int endSyntaxSemanticError = errorMessage.indexOf("'", startSyntaxSemanticError);
-                     if (endSyntaxSemanticError != -1) {
-                         lexemeToHighlight = errorMessage.substring(startSyntaxSemanticError, endSyntaxSemanticError);
-                         lexemeLength = lexemeToHighlight.length();
-                         highlightError(line, col, lexemeLength);
-                         return;
-                     }
+        // Sólo los resalta en el editor, sin escribirlos en la salida
+        protected void highlightErrors(List<Diagnostic> errors) {
+            errorsToHighlight.addAll(errors);
+        }
+
+        // Cambios de estado de la ventana (campos de métricas, última compilación) que se aplican en el EDT
+        protected void afterDone(Runnable update) {
+            afterDone.add(update);
+        }
+
+        protected void finish(String status, Color color) {
+            this.status = status;
+            this.statusColor = color;
+        }
+
+        @Override
+        protected void process(List<String> chunks) {
+            if (this != currentTask) {
+                return; // Una tarea vieja que todavía no vio la cancelación
+            }
+            for (String chunk : chunks) {
+                outputArea.append(chunk);
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled() || this != currentTask) {
+                return;
+            }
+            currentTask = null;
+            try {
+                get();
+            } catch (InterruptedException | ExecutionException e) {
+                Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                outputArea.append("\nError interno: " + cause + "\n");
+                statusLabel.setText("Error interno.");
+                statusLabel.setForeground(Color.RED);
+                cause.printStackTrace();
+                return;
+            }
+            errorHighlighter.setErrors(errorRanges);
+            afterDone.forEach(Runnable::run);
+            statusLabel.setText(status);
+            statusLabel.setForeground(statusColor);
+            outputArea.setCaretPosition(0);
+        }
+    }
+
+    // --- Diagnósticos mientras se escribe ---
+    // Cada cambio del texto reinicia el temporizador y descarta el análisis en curso; cuando el
+    // editor queda quieto se analiza en segundo plano (sólo las líneas cambiadas pasan otra vez
+    // por el lexer y el Parser no genera código) y se actualizan los resaltados de errores.
+    private void installLiveDiagnostics() {
+        diagnosticsTimer = new Timer(DIAGNOSTICS_DELAY_MS, e -> startDiagnostics());
+        diagnosticsTimer.setRepeats(false);
+        inputArea.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                documentChanged();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                documentChanged();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                // Sólo cambian atributos: el texto es el mismo
+            }
+        });
+        diagnosticsTimer.start(); // Código de ejemplo
+    }
+
+    private void documentChanged() {
+        documentVersion++;
+        if (diagnosticsWorker != null) {
+            diagnosticsWorker.cancel(true);
+            diagnosticsWorker = null;
+        }
+        diagnosticsTimer.restart();
+    }
+
+    // Cada pausa vuelve a analizar el archivo completo (parseDiagnostics, sin código). Medido con
+    // 10 000 líneas en un núcleo: 30-80 ms en las primeras pausas, ~4 ms (p90 ~20 ms) con el JIT
+    // caliente. La StatementCache no se usa aquí: calcular la clave de cada sentencia costaba
+    // más que analizarla (25-50 ms con la caché).
+    private void startDiagnostics() {
+        String sourceCode = inputArea.getText();
+        int version = documentVersion;
+        SwingWorker<ErrorHighlighter.Ranges, Void> worker = new SwingWorker<ErrorHighlighter.Ranges, Void>() {
+            @Override
+            protected ErrorHighlighter.Ranges doInBackground() {
+                List<Token> tokens = diagnosticsLexer.update(sourceCode);
+                List<Diagnostic> diagnostics = Lexer.lexicalErrors(tokens);
+                Parser parser = new Parser(tokens);
+                parser.parseDiagnostics();
+                diagnostics.addAll(parser.getErrors());
+                return ErrorHighlighter.ranges(diagnostics);
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled() || this != diagnosticsWorker || version != documentVersion) {
+                    return; // El texto cambió mientras se analizaba
                 }
-                int startSemanticErrorNear = errorMessage.indexOf("Error semántico cerca de '");
-                if (startSemanticErrorNear != -1) {
-                    startSemanticErrorNear += "Error semántico cerca de '".length();
-                    int endSemanticErrorNear = errorMessage.indexOf("'", startSemanticErrorNear);
-                    if (endSemanticErrorNear != -1) {
-                        lexemeToHighlight = errorMessage.substring(startSemanticErrorNear, endSemanticErrorNear);
-                        lexemeLength = lexemeToHighlight.length();
-                        highlightError(line, col, lexemeLength);
-                        return;
-                    }
+                diagnosticsWorker = null;
+                try {
+                    errorHighlighter.setErrors(get());
+                } catch (InterruptedException | ExecutionException e) {
+                    // Un fallo del análisis en vivo no interrumpe la edición; el error se verá al compilar
+                    System.err.println("Error en los diagnósticos en vivo: " + e.getMessage());
                 }
+            }
+        };
+        diagnosticsWorker = worker;
+        taskExecutor.execute(worker);
+    }
 
-                highlightError(line, col, 1);
-
+    // Cancela la tarea en curso (si la hay), limpia la salida y lanza 'task' en segundo plano
+    private void startTask(String description, OutputTask task) {
+        cancelCurrentTask();
+        currentTask = task;
+        outputArea.setText("");
+        errorHighlighter.clearErrors();
+        statusLabel.setText(description);
+        statusLabel.setForeground(Color.BLACK);
+        task.addPropertyChangeListener(evt -> {
+            if ("progress".equals(evt.getPropertyName()) && task == currentTask) {
+                statusLabel.setText(task.phase + " " + evt.getNewValue() + "%");
             }
-        } catch (Exception ex) {
-            System.err.println("Error al intentar resaltar desde el mensaje: " + ex.getMessage());
+        });
+        taskExecutor.execute(task);
+    }
+
+    // Toda acción que escribe en la salida pasa por aquí: vuelve a mostrar outputArea
+    private void cancelCurrentTask() {
+        if (currentTask != null) {
+            currentTask.cancel(true);
+            currentTask = null;
         }
+        showTextOutput();
     }
 
-    private void highlightError(int line, int col) {
-        highlightError(line, col, 1);
+    private void showReport(PagedReportModel report) {
+        reportList.setModel(report);
+        reportLineNumbers.setModel(lineNumbers(report.getSize()));
+        reportList.ensureIndexIsVisible(0);
+        ((CardLayout) outputPanel.getLayout()).show(outputPanel, REPORT_OUTPUT);
     }
 
-    private void highlightError(int line, int col, int length) {
-        try {
-            int docLine = line - 1;
-            int docCol = col - 1;
+    private void showTextOutput() {
+        if (reportList.getModel().getSize() > 0) {
+            reportList.setModel(new DefaultListModel<>()); // Suelta el reporte anterior
+            reportLineNumbers.setModel(new DefaultListModel<>());
+        }
+        if (tokenModel != null) {
+            tokenModel = null;
+            tokenTable.setModel(new DefaultTableModel()); // Y la lista de tokens
+        }
+        ((CardLayout) outputPanel.getLayout()).show(outputPanel, TEXT_OUTPUT);
+    }
+
+    private void showTokens(TokenTableModel model, int errorCount) {
+        tokenModel = model;
+        tokenErrorCount = errorCount;
+        tokenTable.setModel(model);
+        tokenTypeFilter.setSelectedItem(ALL_TOKEN_TYPES); // Dispara filterTokens (también si ya estaba elegido)
+        ((CardLayout) outputPanel.getLayout()).show(outputPanel, TOKENS_OUTPUT);
+    }
 
-            int startOffset = inputArea.getLineStartOffset(docLine) + docCol;
-            int endOffset = startOffset + length;
+    private void filterTokens() {
+        if (tokenModel == null) {
+            return;
+        }
+        String selected = (String) tokenTypeFilter.getSelectedItem();
+        tokenModel.setTypeFilter(ALL_TOKEN_TYPES.equals(selected) ? null : Token.TokenType.valueOf(selected));
+        tokenCountLabel.setText(String.format("%d de %d tokens, %d errores léxicos",
+                                              tokenModel.getRowCount(), tokenModel.getTotalCount(), tokenErrorCount));
+    }
+
+    // El orden elegido se marca en el encabezado (setModel sólo lee los nombres al crear las columnas)
+    private void updateTokenHeaders() {
+        for (int i = 0; i < tokenTable.getColumnCount(); i++) {
+            tokenTable.getColumnModel().getColumn(i).setHeaderValue(tokenModel.getColumnName(tokenTable.convertColumnIndexToModel(i)));
+        }
+        tokenTable.getTableHeader().repaint();
+    }
 
-            if (startOffset < inputArea.getDocument().getLength()) {
-                 endOffset = Math.min(endOffset, inputArea.getDocument().getLength());
-                 endOffset = Math.min(endOffset, inputArea.getLineEndOffset(docLine));
+    private static ListModel<String> lineNumbers(int count) {
+        return new AbstractListModel<String>() {
+            @Override
+            public int getSize() {
+                return count;
+            }
 
-                 if(startOffset < endOffset){
-                     inputArea.getHighlighter().addHighlight(startOffset, endOffset, errorPainter);
-                 } else if (startOffset == endOffset && startOffset < inputArea.getDocument().getLength()){
-                     inputArea.getHighlighter().addHighlight(startOffset, startOffset +1, errorPainter);
-                 }
+            @Override
+            public String getElementAt(int index) {
+                return String.valueOf(index + 1);
             }
+        };
+    }
 
-        } catch (BadLocationException ex) {
-            System.err.println("Error al resaltar: No se pudo obtener la ubicación " + line + "," + col + ". Detalle: " + ex.getMessage());
+    // Desde el hilo de una tarea: pregunta en el EDT y espera la respuesta (null si se cancela)
+    private String askOnEventDispatchThread(String prompt) {
+        String[] answer = new String[1];
+        try {
+            SwingUtilities.invokeAndWait(() ->
+                answer[0] = JOptionPane.showInputDialog(this, prompt, "Entrada", JOptionPane.QUESTION_MESSAGE));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Ejecución cancelada.");
+        } catch (java.lang.reflect.InvocationTargetException e) {
+            throw new IllegalStateException("No se pudo leer la entrada: " + e.getCause(), e.getCause());
         }
+        return answer[0];
     }
 
     private void loadFile() {
@@ -845,8 +1330,14 @@ if (userSelection == JFileChooser.APPROVE_OPTION) {
 
         if (result == JFileChooser.APPROVE_OPTION) {
             java.io.File selectedFile = fileChooser.getSelectedFile();
+            cancelCurrentTask();
             try {
+                if (Files.size(selectedFile.toPath()) >= MAPPED_FILE_BYTES) {
+                    loadMappedFile(selectedFile.toPath());
+                    return;
+                }
                 String content = new String(Files.readAllBytes(selectedFile.toPath()));
+                setEditorDocument(editableDocument);
                 inputArea.setText(content);
                 outputArea.setText("Archivo '" + selectedFile.getName() + "' cargado exitosamente.\n");
                 statusLabel.setText("Archivo cargado.");
@@ -861,10 +1352,55 @@ if (userSelection == JFileChooser.APPROVE_OPTION) {
         }
     }
 
+    // El índice de líneas se arma en el hilo de una tarea; el editor cambia de documento al terminar
+    private void loadMappedFile(Path file) {
+        startTask("Abriendo archivo grande...", new OutputTask() {
+            @Override
+            protected void compute() {
+                MappedDocument document;
+                try {
+                    document = MappedDocument.open(file);
+                } catch (java.io.IOException ex) {
+                    sb.append("Error al leer el archivo: ").append(ex.getMessage()).append("\n");
+                    finish("Error al cargar archivo.", Color.RED);
+                    return;
+                }
+                afterDone(() -> setEditorDocument(document));
+                sb.append("Archivo '").append(file.getFileName()).append("' cargado exitosamente (")
+                  .append(document.getLineCount()).append(" líneas).\n")
+                  .append("Por su tamaño se abre de sólo lectura y se compila directamente desde el archivo.\n");
+                finish("Archivo cargado (sólo lectura).", Color.BLACK);
+            }
+        });
+    }
+
+    // Un documento mapeado no se puede editar ni tiene diagnósticos en vivo
+    private void setEditorDocument(Document document) {
+        if (inputArea.getDocument() == document) {
+            return;
+        }
+        diagnosticsTimer.stop();
+        if (diagnosticsWorker != null) {
+            diagnosticsWorker.cancel(true);
+            diagnosticsWorker = null;
+        }
+        documentVersion++;
+        inputArea.setDocument(document);
+        inputArea.setEditable(!(document instanceof MappedDocument));
+    }
+
+    // Texto a compilar: el de un archivo mapeado se lee del mapeo, sin copiarlo a un String
+    private CharSequence sourceText() {
+        Document document = inputArea.getDocument();
+        return document instanceof MappedDocument ? ((MappedDocument) document).text() : inputArea.getText();
+    }
+
     private void clearEditorAndOutput() {
+        cancelCurrentTask();
+        setEditorDocument(editableDocument);
         inputArea.setText("");
         outputArea.setText("");
-        inputArea.getHighlighter().removeAllHighlights();
+        errorHighlighter.clearErrors();
         statusLabel.setText("Editor y salida limpios.");
         statusLabel.setForeground(Color.BLACK);
     }
@@ -0,0 +1,197 @@
+package simplecalc;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Memoización por sentencia para la recompilación incremental.
+ *
+ * Guarda dos cosas entre un Parser y el siguiente:
+ *
+ *  - Por cada sentencia de primer nivel (un 'val', un 'for' completo con su cuerpo, ...)
+ *    el efecto de analizarla: declaraciones, ciclos, cuádruplos del programa y expresiones
+ *    recolectadas. La clave es el hash de sus tokens (con la posición relativa al primero) y
+ *    del estado que lee al entrar: la tabla de símbolos de los nombres que aparecen en ella y,
+ *    si tiene control de flujo, los contadores de etiquetas y de ciclos. Si el usuario cambia
+ *    una línea, las sentencias anteriores se reutilizan; desde la primera afectada se vuelve a
+ *    analizar, y las siguientes vuelven a coincidir en cuanto el estado que reciben sea el
+ *    mismo, aunque hayan cambiado de línea (al reutilizarlas se corrigen sus posiciones).
+ *
+ *  - Por cada expresión, los cuádruplos generados a partir de sus tokens y de las constantes
+ *    de las variables que usa (lo único que consulta generateQuadruples).
+ *
+ * Sólo se memorizan sentencias sin errores: las que tienen errores son las que se están
+ * editando y su recuperación sintáctica puede leer tokens de la sentencia siguiente.
+ * El análisis de flujo de datos y las pasadas sobre el programa completo (ConstantPropagator,
+ * reducción de variables de inducción, asignación de temporales) se repiten siempre.
+ */
+public class StatementCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 20_000;
+
+    // Efecto de analizar una sentencia de primer nivel (relativo al estado de entrada)
+    static class StatementEntry {
+        final List<Token> tokens;                   // Tokens de la sentencia y el que la cierra, sin los EOL finales
+        final List<String[]> symbols;               // {nombre, tipo, esVar} tras la sentencia (tipo null: no declarada)
+        final int loopCount;                        // Ciclos 'for' que abre
+        final Map<Integer, String> loopVariables;   // Id de ciclo -> variable del 'for'
+        final List<Integer> reassignedLoops;        // Ciclos cuya variable se reasigna en el cuerpo
+        final List<String> programQuadruples;
+        final int labelCount;
+        final int lastStatementOffset;
+        final List<Parser.ExpressionData> expressions; // programPoint relativo al primer cuádruplo
+
+        StatementEntry(List<Token> tokens, List<String[]> symbols, int loopCount, Map<Integer, String> loopVariables,
+                       List<Integer> reassignedLoops, List<String> programQuadruples, int labelCount,
+                       int lastStatementOffset, List<Parser.ExpressionData> expressions) {
+            this.tokens = tokens;
+            this.symbols = symbols;
+            this.loopCount = loopCount;
+            this.loopVariables = loopVariables;
+            this.reassignedLoops = reassignedLoops;
+            this.programQuadruples = programQuadruples;
+            this.labelCount = labelCount;
+            this.lastStatementOffset = lastStatementOffset;
+            this.expressions = expressions;
+        }
+    }
+
+    // Cuádruplos de una expresión ya simplificados; numericResults sólo guarda las temporales.
+    // Los tokens son los de la expresión que se guardó, para llevar la simulación a otra posición.
+    static class ExpressionEntry {
+        final List<Token> infixTokens;
+        final List<String> quadruples;
+        final List<String> stackSimulation;
+        final Map<String, Integer> temporaryResults;
+
+        ExpressionEntry(List<Token> infixTokens, List<String> quadruples, List<String> stackSimulation,
+                        Map<String, Integer> temporaryResults) {
+            this.infixTokens = new ArrayList<>(infixTokens);
+            this.quadruples = new ArrayList<>(quadruples);
+            this.stackSimulation = new ArrayList<>(stackSimulation);
+            this.temporaryResults = new HashMap<>(temporaryResults);
+        }
+    }
+
+    private final Map<String, StatementEntry> statements;
+    private final Map<String, ExpressionEntry> expressions;
+
+    private long statementHits;
+    private long statementMisses;
+    private long expressionHits;
+    private long expressionMisses;
+
+    public StatementCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public StatementCache(int maxEntries) {
+        this.statements = lruMap(maxEntries);
+        this.expressions = lruMap(maxEntries);
+    }
+
+    synchronized StatementEntry getStatement(String key) {
+        StatementEntry entry = statements.get(key);
+        if (entry != null) {
+            statementHits++;
+        } else {
+            statementMisses++;
+        }
+        return entry;
+    }
+
+    synchronized void putStatement(String key, StatementEntry entry) {
+        statements.put(key, entry);
+    }
+
+    synchronized ExpressionEntry getExpression(String key) {
+        ExpressionEntry entry = expressions.get(key);
+        if (entry != null) {
+            expressionHits++;
+        } else {
+            expressionMisses++;
+        }
+        return entry;
+    }
+
+    synchronized void putExpression(String key, ExpressionEntry entry) {
+        expressions.put(key, entry);
+    }
+
+    public synchronized void clear() {
+        statements.clear();
+        expressions.clear();
+    }
+
+    public synchronized String getStatistics() {
+        return String.format("sentencias reutilizadas %d/%d, expresiones reutilizadas %d/%d",
+                             statementHits, statementHits + statementMisses,
+                             expressionHits, expressionHits + expressionMisses);
+    }
+
+    // SHA-256 en hexadecimal (también lo usa CompilationCache para sus claves)
+    static String sha256(String text) {
+        try {
+            return hex(MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e); // Obligatorio en toda JVM
+        }
+    }
+
+    // Igual que sha256(prefix + text), pero el texto se codifica por partes sin copiarlo entero
+    static String sha256(String prefix, CharSequence text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(prefix.getBytes(StandardCharsets.UTF_8));
+            CharsetEncoder utf8 = StandardCharsets.UTF_8.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            CharBuffer in = CharBuffer.wrap(text);
+            ByteBuffer out = ByteBuffer.allocate(64 * 1024);
+            CoderResult result;
+            do {
+                result = utf8.encode(in, out, true);
+                out.flip();
+                digest.update(out);
+                out.clear();
+            } while (result.isOverflow());
+            utf8.flush(out);
+            out.flip();
+            digest.update(out);
+            return hex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e); // Obligatorio en toda JVM
+        }
+    }
+
+    static String hex(byte[] hash) {
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static <V> Map<String, V> lruMap(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("La caché necesita al menos una entrada: " + maxEntries);
+        }
+        return new LinkedHashMap<String, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+}
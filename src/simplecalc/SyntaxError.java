@@ -10,15 +10,12 @@ public class SyntaxError extends RuntimeException {
         this.specificMessage = specificMessage;
     }
     
+    public Diagnostic toDiagnostic() {
+        return Diagnostic.syntax(token, specificMessage);
+    }
+
     @Override
     public String getMessage() {
-        if (token != null && token.type != Token.TokenType.EOF) {
-            return String.format("[Línea %d, Col %d] Error en '%s': %s",
-                    token.line, token.column, token.lexeme, specificMessage);
-        } else if (token != null) {
-            return String.format("[Línea %d, Col %d] Error al final de la entrada: %s",
-                    token.line, token.column, specificMessage);
-        }
-        return specificMessage;
+        return toDiagnostic().format();
     }
 }
\ No newline at end of file
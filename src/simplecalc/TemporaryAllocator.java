@@ -0,0 +1,100 @@
+package simplecalc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+/**
+ * Asignación de registros temporales por barrido lineal (linear scan).
+ *
+ * El generador de cuádruplos crea una temporal nueva (t1, t2, ...) para cada resultado
+ * intermedio. Aquí se calcula el intervalo de vida de cada temporal (desde su definición
+ * hasta su último uso) y se renombran para que dos temporales cuyos intervalos no se
+ * solapan compartan el mismo registro. El número de registros resultante es la presión
+ * máxima de registros de la expresión: la cantidad de temporales vivas al mismo tiempo.
+ */
+public class TemporaryAllocator {
+
+    // Resultado de la asignación para una lista de cuádruplos
+    public static class Allocation {
+        public final List<String> quadruples;
+        public final int originalTemporaries; // Temporales distintas antes de la asignación
+        public final int maxPressure;         // Registros necesarios (temporales vivas simultáneamente)
+
+        public Allocation(List<String> quadruples, int originalTemporaries, int maxPressure) {
+            this.quadruples = quadruples;
+            this.originalTemporaries = originalTemporaries;
+            this.maxPressure = maxPressure;
+        }
+    }
+
+    // Intervalo de vida de una temporal: [start, end] en índices de cuádruplo
+    private static class LiveInterval {
+        final String name;
+        final int start;
+        int end;
+
+        LiveInterval(String name, int start) {
+            this.name = name;
+            this.start = start;
+            this.end = start;
+        }
+    }
+
+    public Allocation allocate(List<String> quadruples) {
+        // 1. Intervalos de vida, en orden de definición
+        List<Quad> parsed = Quad.parseAll(quadruples);
+        Map<String, LiveInterval> intervals = new LinkedHashMap<>();
+        for (int i = 0; i < parsed.size(); i++) {
+            Quad quad = parsed.get(i);
+            if (quad.target != null && Quad.isTemporary(quad.target)) {
+                intervals.putIfAbsent(quad.target, new LiveInterval(quad.target, i)); // Definición
+            }
+            use(intervals, quad.arg1, i);
+            use(intervals, quad.arg2, i);
+        }
+
+        // 2. Barrido lineal: los intervalos vencidos liberan su registro antes de asignar el siguiente.
+        // Un intervalo que termina donde empieza otro también se libera (el operando se lee antes de escribir).
+        PriorityQueue<LiveInterval> active = new PriorityQueue<>((a, b) -> Integer.compare(a.end, b.end));
+        Map<String, Integer> registerOf = new HashMap<>();
+        TreeSet<Integer> freeRegisters = new TreeSet<>();
+        int registerCount = 0;
+        int maxPressure = 0;
+
+        for (LiveInterval interval : intervals.values()) {
+            while (!active.isEmpty() && active.peek().end <= interval.start) {
+                freeRegisters.add(registerOf.get(active.poll().name));
+            }
+            int register = freeRegisters.isEmpty() ? ++registerCount : freeRegisters.pollFirst();
+            registerOf.put(interval.name, register);
+            active.add(interval);
+            maxPressure = Math.max(maxPressure, active.size());
+        }
+
+        // 3. Renombrar
+        List<String> renamed = new ArrayList<>(quadruples.size());
+        for (Quad quad : parsed) {
+            renamed.add(quad.rename(name -> Quad.isTemporary(name) ? "t" + registerOf.get(name) : name).toString());
+        }
+
+        return new Allocation(renamed, intervals.size(), maxPressure);
+    }
+
+    // Un operando que es temporal extiende su intervalo hasta 'index' (o lo abre, si se lee antes de definirse)
+    private static void use(Map<String, LiveInterval> intervals, String operand, int index) {
+        if (operand == null || !Quad.isTemporary(operand)) {
+            return;
+        }
+        LiveInterval interval = intervals.get(operand);
+        if (interval == null) {
+            intervals.put(operand, new LiveInterval(operand, index));
+        } else {
+            interval.end = index;
+        }
+    }
+}
@@ -1,6 +1,10 @@
 package simplecalc;
 
-public class Token {
+import java.io.Serializable;
+
+public class Token implements Serializable {
+    private static final long serialVersionUID = 2L;
+
     public enum TokenType {
         // ... (todos tus tipos de token existentes)
         FUN_KEYWORD, VAL_KEYWORD, VAR_KEYWORD, IF_KEYWORD, PRINT_KEYWORD, READLINE_KEYWORD,
@@ -30,42 +34,40 @@ public class Token {
     public final Object literal;
     public final int line;
     public final int column;
+    public final int offset; // Posición del primer caracter en el texto fuente (desde 0)
     public final String errorMessage; 
     
-    public Token(TokenType type, String lexeme, Object literal, int line, int column) {
-        this.type = type;
-        this.lexeme = lexeme;
-        this.literal = literal;
-        this.line = line;
-        this.column = column;
-        this.errorMessage = null; 
+    public Token(TokenType type, String lexeme, Object literal, int line, int column, int offset) {
+        this(type, lexeme, literal, line, column, offset, null);
     }
 
-    public Token(TokenType type, String lexeme, Object literal, int line, int column, String errorMessage) {
+    public Token(TokenType type, String lexeme, Object literal, int line, int column, int offset, String errorMessage) {
         this.type = type;
         this.lexeme = lexeme;
         this.literal = literal;
         this.line = line;
         this.column = column;
+        this.offset = offset;
         this.errorMessage = errorMessage; 
     }
     
-    @Override
-    public String toString() {
-        String literalStr = (literal != null) ? literal.toString() : "";
-        // Para ERROR tokens, incluimos el lexema original y el errorMessage para claridad en la tabla
-        String displayLexeme;
+    // Para ERROR tokens, incluimos el lexema original y el errorMessage para claridad en la tabla
+    public String displayLexeme() {
         if (type == TokenType.ERROR) {
-            displayLexeme = "'" + lexeme + "'"; // Mostrar el lexema real del token de error
+            String displayLexeme = "'" + lexeme + "'"; // Mostrar el lexema real del token de error
             if (errorMessage != null) {
                 displayLexeme += " (" + errorMessage + ")"; // Añadir el mensaje de error contextual
             }
-        } else {
-            displayLexeme = lexeme;
+            return displayLexeme;
         }
-        
+        return lexeme;
+    }
+
+    @Override
+    public String toString() {
+        String literalStr = (literal != null) ? literal.toString() : "";
         return String.format("| %-25s | %-20s | %-15s | %4d | %4d |",
-                type, displayLexeme, literalStr, line, column);
+                type, displayLexeme(), literalStr, line, column);
     }
     
     public static String getTableHeader() {
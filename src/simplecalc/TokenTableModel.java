@@ -0,0 +1,189 @@
+package simplecalc;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Modelo de la tabla de tokens del análisis léxico: lee directamente de la lista que devolvió
+ * el Lexer y sólo arma el texto de las celdas que la JTable dibuja (las visibles).
+ *
+ * El filtro por tipo y el orden trabajan sobre un arreglo de índices de la lista de tokens,
+ * sin copiarlos ni crear objetos por fila: filtrar es una pasada; ordenar por posición es el
+ * orden original (el Lexer los produce por línea y columna), por tipo o por columna un
+ * ordenamiento por conteo y sólo por lexema o literal se comparan textos. Como en la tabla de texto anterior,
+ * no se muestran los EOL ni el EOF.
+ *
+ * Se arma en el hilo de una tarea; una vez entregado a la JTable sólo se usa en el EDT.
+ */
+public class TokenTableModel extends AbstractTableModel {
+
+    public static final int TYPE_COLUMN = 0;
+    public static final int LEXEME_COLUMN = 1;
+    public static final int LITERAL_COLUMN = 2;
+    public static final int LINE_COLUMN = 3;
+    public static final int COLUMN_COLUMN = 4;
+
+    private static final String[] COLUMN_NAMES = {"Tipo de Token", "Lexema", "Literal", "Línea", "Col"};
+
+    private final List<Token> tokens;
+    private int[] rows;           // Fila visible -> índice en 'tokens'
+    private Token.TokenType typeFilter; // null: todos los tipos
+    private int sortColumn = LINE_COLUMN;
+    private boolean ascending = true;
+
+    public TokenTableModel(List<Token> tokens) {
+        this.tokens = tokens;
+        this.rows = filter(null);
+    }
+
+    // Tokens que se muestran, sin filtrar (los de todos los tipos menos EOL y EOF)
+    public int getTotalCount() {
+        return typeFilter == null ? rows.length : filter(null).length;
+    }
+
+    public void setTypeFilter(Token.TokenType type) {
+        typeFilter = type;
+        rows = filter(type);
+        sort();
+        fireTableDataChanged();
+    }
+
+    // Un clic en la misma columna invierte el orden
+    public void sortBy(int column) {
+        ascending = column != sortColumn || !ascending;
+        sortColumn = column;
+        sort();
+        fireTableDataChanged();
+    }
+
+    private int[] filter(Token.TokenType type) {
+        int[] selected = new int[tokens.size()];
+        int count = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            Token.TokenType tokenType = tokens.get(i).type;
+            if (type == null ? tokenType != Token.TokenType.EOL && tokenType != Token.TokenType.EOF : tokenType == type) {
+                selected[count++] = i;
+            }
+        }
+        return Arrays.copyOf(selected, count);
+    }
+
+    private void sort() {
+        switch (sortColumn) {
+            case TYPE_COLUMN:
+                rows = sortByType(rows);
+                break;
+            case LEXEME_COLUMN:
+                rows = sortByText(rows, i -> tokens.get(i).lexeme);
+                break;
+            case LITERAL_COLUMN:
+                rows = sortByText(rows, i -> tokens.get(i).literal != null ? tokens.get(i).literal.toString() : "");
+                break;
+            case COLUMN_COLUMN:
+                rows = sortByColumn(rows);
+                break;
+            default:
+                Arrays.sort(rows); // Posición: el orden del Lexer
+                break;
+        }
+        if (!ascending) {
+            for (int i = 0, j = rows.length - 1; i < j; i++, j--) {
+                int swap = rows[i];
+                rows[i] = rows[j];
+                rows[j] = swap;
+            }
+        }
+    }
+
+    // Por conteo sobre el ordinal del tipo: estable y lineal
+    private int[] sortByType(int[] indices) {
+        Token.TokenType[] types = Token.TokenType.values();
+        int[] starts = new int[types.length + 1];
+        for (int index : indices) {
+            starts[tokens.get(index).type.ordinal() + 1]++;
+        }
+        for (int t = 0; t < types.length; t++) {
+            starts[t + 1] += starts[t];
+        }
+        int[] sorted = new int[indices.length];
+        int[] sortedByPosition = indices.clone();
+        Arrays.sort(sortedByPosition);
+        for (int index : sortedByPosition) {
+            sorted[starts[tokens.get(index).type.ordinal()]++] = index;
+        }
+        return sorted;
+    }
+
+    // Por conteo sobre la columna, como sortByType; a igual columna queda el orden del Lexer
+    private int[] sortByColumn(int[] indices) {
+        int maxColumn = 0;
+        for (int index : indices) {
+            maxColumn = Math.max(maxColumn, tokens.get(index).column);
+        }
+        int[] starts = new int[maxColumn + 2];
+        for (int index : indices) {
+            starts[tokens.get(index).column + 1]++;
+        }
+        for (int c = 0; c <= maxColumn; c++) {
+            starts[c + 1] += starts[c];
+        }
+        int[] sorted = new int[indices.length];
+        int[] sortedByPosition = indices.clone();
+        Arrays.sort(sortedByPosition);
+        for (int index : sortedByPosition) {
+            sorted[starts[tokens.get(index).column]++] = index;
+        }
+        return sorted;
+    }
+
+    private interface TextOf {
+        String apply(int index);
+    }
+
+    private static int[] sortByText(int[] indices, TextOf text) {
+        Integer[] boxed = new Integer[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            boxed[i] = indices[i];
+        }
+        Arrays.sort(boxed, Comparator.comparing((Integer i) -> text.apply(i)).thenComparingInt(i -> i));
+        int[] sorted = new int[indices.length];
+        for (int i = 0; i < boxed.length; i++) {
+            sorted[i] = boxed[i];
+        }
+        return sorted;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows.length;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column] + (column == sortColumn ? (ascending ? " ▲" : " ▼") : "");
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column == LINE_COLUMN || column == COLUMN_COLUMN ? Integer.class : String.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Token token = tokens.get(rows[row]);
+        switch (column) {
+            case TYPE_COLUMN:    return token.type.name();
+            case LEXEME_COLUMN:  return token.displayLexeme();
+            case LITERAL_COLUMN: return token.literal != null ? token.literal.toString() : "";
+            case LINE_COLUMN:    return token.line;
+            default:             return token.column;
+        }
+    }
+}
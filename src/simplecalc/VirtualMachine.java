@@ -0,0 +1,168 @@
+package simplecalc;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CancellationException;
+import java.util.function.Supplier;
+
+/**
+ * Máquina virtual de registros que ejecuta un VmProgram.
+ *
+ * El ciclo de despacho lee el opcode directamente del arreglo 'code' y trabaja sobre
+ * un int[] de registros (más un String[] para las variables 'String'). No hay objetos
+ * por instrucción ni búsquedas por nombre durante la ejecución.
+ */
+public class VirtualMachine {
+
+    private final Supplier<String> input;  // Origen de readLine()
+    private final Appendable output;       // Destino de print()
+    private long maxJumps = Long.MAX_VALUE; // Límite de saltos incondicionales (protege de ciclos infinitos)
+
+    private int[] intRegisters;
+    private String[] stringRegisters;
+
+    public VirtualMachine(Supplier<String> input, Appendable output) {
+        this.input = input;
+        this.output = output;
+    }
+
+    public void setMaxJumps(long maxJumps) {
+        this.maxJumps = maxJumps;
+    }
+
+    public void run(VmProgram program) {
+        final int[] code = program.code;
+        final int[] r = program.initialIntRegisters.clone();
+        final String[] s = program.initialStringRegisters.clone();
+        intRegisters = r;
+        stringRegisters = s;
+        long jumpBudget = maxJumps;
+        int pc = 0;
+
+        try {
+            while (true) {
+                switch (code[pc]) {
+                    case VmProgram.HALT:
+                        return;
+                    case VmProgram.MOV:
+                        r[code[pc + 1]] = r[code[pc + 2]];
+                        pc += VmProgram.WIDTH;
+                        break;
+                    case VmProgram.ADD:
+                        r[code[pc + 1]] = r[code[pc + 2]] + r[code[pc + 3]];
+                        pc += VmProgram.WIDTH;
+                        break;
+                    case VmProgram.SUB:
+                        r[code[pc + 1]] = r[code[pc + 2]] - r[code[pc + 3]];
+                        pc += VmProgram.WIDTH;
+                        break;
+                    case VmProgram.MUL:
+                        r[code[pc + 1]] = r[code[pc + 2]] * r[code[pc + 3]];
+                        pc += VmProgram.WIDTH;
+                        break;
+                    case VmProgram.DIV:
+                        r[code[pc + 1]] = r[code[pc + 2]] / r[code[pc + 3]];
+                        pc += VmProgram.WIDTH;
+                        break;
+                    case VmProgram.SHL:
+                        r[code[pc + 1]] = r[code[pc + 2]] << r[code[pc + 3]];
+                        pc += VmProgram.WIDTH;
+                        break;
+                    case VmProgram.JMP:
+                        if (--jumpBudget < 0) {
+                            throw new IllegalStateException("Límite de ejecución excedido (" + maxJumps + " saltos). ¿Ciclo infinito?");
+                        }
+                        if (Thread.interrupted()) {
+                            throw new CancellationException("Ejecución cancelada.");
+                        }
+                        pc = code[pc + 1];
+                        break;
+                    case VmProgram.JLT:
+                        pc = r[code[pc + 1]] < r[code[pc + 2]] ? code[pc + 3] : pc + VmProgram.WIDTH;
+                        break;
+                    case VmProgram.JGE:
+                        pc = r[code[pc + 1]] >= r[code[pc + 2]] ? code[pc + 3] : pc + VmProgram.WIDTH;
+                        break;
+                    case VmProgram.JGT:
+                        pc = r[code[pc + 1]] > r[code[pc + 2]] ? code[pc + 3] : pc + VmProgram.WIDTH;
+                        break;
+                    case VmProgram.JLE:
+                        pc = r[code[pc + 1]] <= r[code[pc + 2]] ? code[pc + 3] : pc + VmProgram.WIDTH;
+                        break;
+                    case VmProgram.JEQ:
+                        pc = r[code[pc + 1]] == r[code[pc + 2]] ? code[pc + 3] : pc + VmProgram.WIDTH;
+                        break;
+                    case VmProgram.JNE:
+                        pc = r[code[pc + 1]] != r[code[pc + 2]] ? code[pc + 3] : pc + VmProgram.WIDTH;
+                        break;
+                    case VmProgram.PRINT_INT:
+                        output.append(Integer.toString(r[code[pc + 1]]));
+                        pc += VmProgram.WIDTH;
+                        break;
+                    case VmProgram.PRINT_STR:
+                        output.append(s[code[pc + 1]]);
+                        pc += VmProgram.WIDTH;
+                        break;
+                    case VmProgram.READ_STR: {
+                        String line = input.get();
+                        s[code[pc + 1]] = line != null ? line : "";
+                        pc += VmProgram.WIDTH;
+                        break;
+                    }
+                    case VmProgram.SMOV:
+                        s[code[pc + 1]] = s[code[pc + 2]];
+                        pc += VmProgram.WIDTH;
+                        break;
+                    case VmProgram.SCONCAT:
+                        s[code[pc + 1]] = s[code[pc + 2]].concat(s[code[pc + 3]]);
+                        pc += VmProgram.WIDTH;
+                        break;
+                    case VmProgram.SJLT:
+                        pc = s[code[pc + 1]].compareTo(s[code[pc + 2]]) < 0 ? code[pc + 3] : pc + VmProgram.WIDTH;
+                        break;
+                    case VmProgram.SJGE:
+                        pc = s[code[pc + 1]].compareTo(s[code[pc + 2]]) >= 0 ? code[pc + 3] : pc + VmProgram.WIDTH;
+                        break;
+                    case VmProgram.SJGT:
+                        pc = s[code[pc + 1]].compareTo(s[code[pc + 2]]) > 0 ? code[pc + 3] : pc + VmProgram.WIDTH;
+                        break;
+                    case VmProgram.SJLE:
+                        pc = s[code[pc + 1]].compareTo(s[code[pc + 2]]) <= 0 ? code[pc + 3] : pc + VmProgram.WIDTH;
+                        break;
+                    case VmProgram.SJEQ:
+                        pc = s[code[pc + 1]].equals(s[code[pc + 2]]) ? code[pc + 3] : pc + VmProgram.WIDTH;
+                        break;
+                    case VmProgram.SJNE:
+                        pc = !s[code[pc + 1]].equals(s[code[pc + 2]]) ? code[pc + 3] : pc + VmProgram.WIDTH;
+                        break;
+                    default:
+                        throw new IllegalStateException("Opcode inválido " + code[pc] + " en la instrucción " + pc / VmProgram.WIDTH);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ArithmeticException e) {
+            throw new ArithmeticException("División por cero en la instrucción " + pc / VmProgram.WIDTH);
+        }
+    }
+
+    // Valor final de una variable 'Int' tras run() (null si el programa no la usa)
+    public Integer getIntValue(VmProgram program, String name) {
+        for (int i = 0; i < program.intRegisterNames.length; i++) {
+            if (program.intRegisterNames[i].equals(name)) {
+                return intRegisters[i];
+            }
+        }
+        return null;
+    }
+
+    // Valor final de una variable 'String' tras run() (null si el programa no la usa)
+    public String getStringValue(VmProgram program, String name) {
+        for (int i = 0; i < program.stringRegisterNames.length; i++) {
+            if (program.stringRegisterNames[i].equals(name)) {
+                return stringRegisters[i];
+            }
+        }
+        return null;
+    }
+}
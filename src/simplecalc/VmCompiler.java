@@ -0,0 +1,171 @@
+package simplecalc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Traduce el código de tres direcciones del programa completo (Parser.getProgramQuadruples)
+ * a un VmProgram. Cada variable, temporal y literal recibe un registro fijo; las variables
+ * 'Int' van al banco de enteros y las 'String' al banco de cadenas. Las etiquetas se
+ * resuelven en una segunda pasada a índices absolutos de instrucción.
+ */
+public class VmCompiler {
+
+    private final Quad.OperandTypes types;
+
+    private final List<Integer> code = new ArrayList<>();
+    private final Map<String, Integer> labelAddresses = new HashMap<>();
+    private final Map<Integer, String> pendingJumps = new HashMap<>(); // posición en code -> etiqueta
+
+    private final Map<String, Integer> intRegisters = new LinkedHashMap<>();
+    private final Map<String, Integer> stringRegisters = new LinkedHashMap<>();
+    private final List<Integer> intConstants = new ArrayList<>();
+    private final List<String> stringConstants = new ArrayList<>();
+
+    public VmCompiler(Map<String, String> variableTypes) {
+        this.types = new Quad.OperandTypes(variableTypes);
+    }
+
+    public VmProgram compile(List<String> programQuadruples) {
+        for (String quad : programQuadruples) {
+            compileQuad(Quad.parse(quad));
+        }
+        emit(VmProgram.HALT, 0, 0, 0);
+
+        // Segunda pasada: resolver etiquetas
+        for (Map.Entry<Integer, String> jump : pendingJumps.entrySet()) {
+            Integer address = labelAddresses.get(jump.getValue());
+            if (address == null) {
+                throw new IllegalStateException("Etiqueta no definida en el código intermedio: " + jump.getValue());
+            }
+            code.set(jump.getKey(), address);
+        }
+
+        int[] codeArray = new int[code.size()];
+        for (int i = 0; i < codeArray.length; i++) {
+            codeArray[i] = code.get(i);
+        }
+        int[] ints = new int[intConstants.size()];
+        for (int i = 0; i < ints.length; i++) {
+            ints[i] = intConstants.get(i);
+        }
+        return new VmProgram(codeArray, ints, stringConstants.toArray(new String[0]),
+                intRegisters.keySet().toArray(new String[0]), stringRegisters.keySet().toArray(new String[0]));
+    }
+
+    private void compileQuad(Quad quad) {
+        switch (quad.kind) {
+            case LABEL:
+                labelAddresses.put(quad.label, code.size());
+                break;
+            case GOTO:
+                emitJump(VmProgram.JMP, 0, 0, quad.label, 1);
+                break;
+            case IF:
+            case IF_FALSE:
+                compileConditionalJump(quad.kind == Quad.Kind.IF, quad.arg1, quad.operator, quad.arg2, quad.label);
+                break;
+            case READ:
+                types.define(quad.target, "String");
+                emit(VmProgram.READ_STR, stringRegister(quad.target), 0, 0);
+                break;
+            case PRINT:
+                if (types.isString(quad.arg1)) {
+                    emit(VmProgram.PRINT_STR, stringRegister(quad.arg1), 0, 0);
+                } else {
+                    emit(VmProgram.PRINT_INT, intRegister(quad.arg1), 0, 0);
+                }
+                break;
+            case BINARY:
+                compileBinary(quad.target, quad.arg1, quad.operator, quad.arg2);
+                break;
+            case COPY:
+                String type = types.of(quad.arg1);
+                types.define(quad.target, type);
+                if (type.equals("String")) {
+                    emit(VmProgram.SMOV, stringRegister(quad.target), stringRegister(quad.arg1), 0);
+                } else {
+                    emit(VmProgram.MOV, intRegister(quad.target), intRegister(quad.arg1), 0);
+                }
+                break;
+            default:
+                throw new IllegalStateException("Cuádruplo no reconocido por la VM: " + quad);
+        }
+    }
+
+    private void compileBinary(String dst, String arg1, String op, String arg2) {
+        if (types.resultOf(arg1, arg2).equals("String")) {
+            types.define(dst, "String");
+            emit(VmProgram.SCONCAT, stringRegister(dst), stringRegister(arg1), stringRegister(arg2));
+            return;
+        }
+        types.define(dst, "Int");
+        int opcode;
+        switch (op) {
+            case "+": opcode = VmProgram.ADD; break;
+            case "-": opcode = VmProgram.SUB; break;
+            case "*": opcode = VmProgram.MUL; break;
+            case "/": opcode = VmProgram.DIV; break;
+            default:  opcode = VmProgram.SHL; break;
+        }
+        emit(opcode, intRegister(dst), intRegister(arg1), intRegister(arg2));
+    }
+
+    private void compileConditionalJump(boolean jumpIfTrue, String arg1, String op, String arg2, String label) {
+        boolean strings = types.isString(arg1);
+        int opcode;
+        switch (op) {
+            case "<":
+                opcode = jumpIfTrue ? VmProgram.JLT : VmProgram.JGE;
+                break;
+            case ">":
+                opcode = jumpIfTrue ? VmProgram.JGT : VmProgram.JLE;
+                break;
+            default:
+                opcode = jumpIfTrue ? VmProgram.JEQ : VmProgram.JNE;
+                break;
+        }
+        if (strings) {
+            opcode += VmProgram.SJLT - VmProgram.JLT; // Misma disposición para la versión de cadenas
+            emitJump(opcode, stringRegister(arg1), stringRegister(arg2), label, 3);
+        } else {
+            emitJump(opcode, intRegister(arg1), intRegister(arg2), label, 3);
+        }
+    }
+
+    private void emit(int op, int a, int b, int c) {
+        code.add(op);
+        code.add(a);
+        code.add(b);
+        code.add(c);
+    }
+
+    // Emite un salto cuyo destino (en la posición slot de la instrucción) se resuelve al final
+    private void emitJump(int op, int a, int b, String label, int slot) {
+        pendingJumps.put(code.size() + slot, label);
+        emit(op, a, b, 0);
+    }
+
+    private int intRegister(String operand) {
+        Integer register = intRegisters.get(operand);
+        if (register == null) {
+            register = intRegisters.size();
+            intRegisters.put(operand, register);
+            intConstants.add(Quad.isIntLiteral(operand) ? Integer.parseInt(operand) : 0);
+        }
+        return register;
+    }
+
+    private int stringRegister(String operand) {
+        Integer register = stringRegisters.get(operand);
+        if (register == null) {
+            register = stringRegisters.size();
+            stringRegisters.put(operand, register);
+            stringConstants.add(Quad.isStringLiteral(operand) ? Quad.stringValue(operand) : "");
+        }
+        return register;
+    }
+}
@@ -0,0 +1,126 @@
+package simplecalc;
+
+/**
+ * Programa compilado para la VirtualMachine.
+ *
+ * El código es un arreglo denso de enteros con instrucciones de ancho fijo
+ * [opcode, a, b, c]. Los operandos son índices de registro; los literales se precargan en
+ * registros de constantes (initialIntRegisters / initialStringRegisters), de modo que toda
+ * operación aritmética es registro-registro-registro. Los saltos guardan el índice absoluto
+ * de la instrucción destino dentro de 'code'.
+ */
+public class VmProgram {
+
+    public static final int WIDTH = 4;
+
+    // --- Opcodes ---
+    public static final int HALT = 0;
+    public static final int MOV = 1;        // r[a] = r[b]
+    public static final int ADD = 2;        // r[a] = r[b] + r[c]
+    public static final int SUB = 3;        // r[a] = r[b] - r[c]
+    public static final int MUL = 4;        // r[a] = r[b] * r[c]
+    public static final int DIV = 5;        // r[a] = r[b] / r[c]
+    public static final int SHL = 6;        // r[a] = r[b] << r[c]
+    public static final int JMP = 7;        // pc = a
+    public static final int JLT = 8;        // if (r[a] <  r[b]) pc = c
+    public static final int JGE = 9;        // if (r[a] >= r[b]) pc = c
+    public static final int JGT = 10;       // if (r[a] >  r[b]) pc = c
+    public static final int JLE = 11;       // if (r[a] <= r[b]) pc = c
+    public static final int JEQ = 12;       // if (r[a] == r[b]) pc = c
+    public static final int JNE = 13;       // if (r[a] != r[b]) pc = c
+    public static final int PRINT_INT = 14; // print(r[a])
+    public static final int PRINT_STR = 15; // print(s[a])
+    public static final int READ_STR = 16;  // s[a] = readLine()
+    public static final int SMOV = 17;      // s[a] = s[b]
+    public static final int SCONCAT = 18;   // s[a] = s[b] + s[c]
+    public static final int SJLT = 19;      // if (s[a] <  s[b]) pc = c  (orden lexicográfico)
+    public static final int SJGE = 20;
+    public static final int SJGT = 21;
+    public static final int SJLE = 22;
+    public static final int SJEQ = 23;      // if (s[a] == s[b]) pc = c
+    public static final int SJNE = 24;
+
+    public static final String[] OPCODE_NAMES = {
+        "HALT", "MOV", "ADD", "SUB", "MUL", "DIV", "SHL", "JMP",
+        "JLT", "JGE", "JGT", "JLE", "JEQ", "JNE",
+        "PRINT_INT", "PRINT_STR", "READ_STR", "SMOV", "SCONCAT",
+        "SJLT", "SJGE", "SJGT", "SJLE", "SJEQ", "SJNE"
+    };
+
+    final int[] code;
+    final int[] initialIntRegisters;       // Constantes enteras en su registro; el resto en 0
+    final String[] initialStringRegisters; // Constantes de cadena en su registro; el resto en ""
+    final String[] intRegisterNames;       // Para el desensamblado: variable, temporal o literal
+    final String[] stringRegisterNames;
+
+    public VmProgram(int[] code, int[] initialIntRegisters, String[] initialStringRegisters,
+                     String[] intRegisterNames, String[] stringRegisterNames) {
+        this.code = code;
+        this.initialIntRegisters = initialIntRegisters;
+        this.initialStringRegisters = initialStringRegisters;
+        this.intRegisterNames = intRegisterNames;
+        this.stringRegisterNames = stringRegisterNames;
+    }
+
+    public int getInstructionCount() {
+        return code.length / WIDTH;
+    }
+
+    public int getIntRegisterCount() {
+        return initialIntRegisters.length;
+    }
+
+    public int getStringRegisterCount() {
+        return initialStringRegisters.length;
+    }
+
+    // Listado legible del código, una instrucción por línea
+    public String disassemble() {
+        StringBuilder sb = new StringBuilder();
+        for (int pc = 0; pc < code.length; pc += WIDTH) {
+            int op = code[pc];
+            sb.append(String.format("%04d  %-10s", pc / WIDTH, OPCODE_NAMES[op]));
+            switch (op) {
+                case MOV:
+                    sb.append(reg(code[pc + 1])).append(", ").append(reg(code[pc + 2]));
+                    break;
+                case ADD: case SUB: case MUL: case DIV: case SHL:
+                    sb.append(reg(code[pc + 1])).append(", ").append(reg(code[pc + 2])).append(", ").append(reg(code[pc + 3]));
+                    break;
+                case JMP:
+                    sb.append("@").append(code[pc + 1] / WIDTH);
+                    break;
+                case JLT: case JGE: case JGT: case JLE: case JEQ: case JNE:
+                    sb.append(reg(code[pc + 1])).append(", ").append(reg(code[pc + 2])).append(", @").append(code[pc + 3] / WIDTH);
+                    break;
+                case PRINT_INT:
+                    sb.append(reg(code[pc + 1]));
+                    break;
+                case PRINT_STR: case READ_STR:
+                    sb.append(sreg(code[pc + 1]));
+                    break;
+                case SMOV:
+                    sb.append(sreg(code[pc + 1])).append(", ").append(sreg(code[pc + 2]));
+                    break;
+                case SCONCAT:
+                    sb.append(sreg(code[pc + 1])).append(", ").append(sreg(code[pc + 2])).append(", ").append(sreg(code[pc + 3]));
+                    break;
+                case SJLT: case SJGE: case SJGT: case SJLE: case SJEQ: case SJNE:
+                    sb.append(sreg(code[pc + 1])).append(", ").append(sreg(code[pc + 2])).append(", @").append(code[pc + 3] / WIDTH);
+                    break;
+                default:
+                    break;
+            }
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+
+    private String reg(int r) {
+        return "r" + r + "(" + intRegisterNames[r] + ")";
+    }
+
+    private String sreg(int r) {
+        return "s" + r + "(" + stringRegisterNames[r] + ")";
+    }
+}
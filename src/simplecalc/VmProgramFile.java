@@ -0,0 +1,218 @@
+package simplecalc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Formato binario del código intermedio compilado (archivos .scir).
+ *
+ * Guarda un VmProgram tal como lo ejecuta la VirtualMachine, de modo que cargarlo es
+ * copiar arreglos y no volver a analizar texto. Todos los enteros son little-endian:
+ *
+ *   Cabecera (32 bytes)
+ *     magic 'SCIR', versión, ancho de instrucción,
+ *     longitud del código (en enteros), registros Int, registros String,
+ *     desplazamiento de la tabla de cadenas, desplazamiento de la tabla de símbolos
+ *   Código             int[longitud]   instrucciones [op, a, b, c]
+ *   Constantes Int     int[registros Int]   valor inicial de cada registro
+ *   Cadenas            por registro String: u32 longitud + UTF-8 (valor inicial)
+ *   Símbolos           por registro Int y luego String: u32 longitud + UTF-8 (nombre)
+ *
+ * El código va justo después de la cabecera para que quede alineado a 4 bytes y se pueda
+ * leer como IntBuffer sobre el archivo mapeado en memoria.
+ */
+public class VmProgramFile {
+
+    public static final String EXTENSION = "scir";
+
+    private static final int MAGIC = 0x52494353; // "SCIR" leído como little-endian
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+
+    public static void write(VmProgram program, Path path) throws IOException {
+        Files.write(path, encode(program));
+    }
+
+    // Mapea el archivo (sin copiarlo a un búfer intermedio) y reconstruye el programa
+    public static VmProgram read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return decode(mapped);
+        }
+    }
+
+    public static byte[] encode(VmProgram program) {
+        byte[][] strings = utf8(program.initialStringRegisters);
+        byte[][] intNames = utf8(program.intRegisterNames);
+        byte[][] stringNames = utf8(program.stringRegisterNames);
+
+        int stringTableOffset = HEADER_SIZE + 4 * (program.code.length + program.initialIntRegisters.length);
+        int symbolTableOffset = stringTableOffset + tableSize(strings);
+        int totalSize = symbolTableOffset + tableSize(intNames) + tableSize(stringNames);
+
+        ByteBuffer buffer = ByteBuffer.allocate(totalSize).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putShort((short) VERSION);
+        buffer.putShort((short) VmProgram.WIDTH);
+        buffer.putInt(program.code.length);
+        buffer.putInt(program.initialIntRegisters.length);
+        buffer.putInt(program.initialStringRegisters.length);
+        buffer.putInt(stringTableOffset);
+        buffer.putInt(symbolTableOffset);
+        buffer.putInt(0); // Reservado
+
+        buffer.asIntBuffer().put(program.code).put(program.initialIntRegisters);
+        buffer.position(stringTableOffset);
+        putTable(buffer, strings);
+        putTable(buffer, intNames);
+        putTable(buffer, stringNames);
+        return buffer.array();
+    }
+
+    public static VmProgram decode(ByteBuffer source) throws IOException {
+        ByteBuffer buffer = source.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("No es un archivo de código intermedio SimpleCalc (.scir).");
+        }
+        int version = buffer.getShort(4);
+        int width = buffer.getShort(6);
+        if (version != VERSION || width != VmProgram.WIDTH) {
+            throw new IOException("Versión de código intermedio no soportada: " + version + " (ancho " + width + ").");
+        }
+        int codeLength = buffer.getInt(8);
+        int intRegisterCount = buffer.getInt(12);
+        int stringRegisterCount = buffer.getInt(16);
+        int stringTableOffset = buffer.getInt(20);
+        int symbolTableOffset = buffer.getInt(24);
+        if (codeLength < 0 || intRegisterCount < 0 || stringRegisterCount < 0
+                || HEADER_SIZE + 4L * (codeLength + (long) intRegisterCount) > stringTableOffset
+                || stringTableOffset > symbolTableOffset || symbolTableOffset > buffer.limit()) {
+            throw new IOException("Archivo de código intermedio dañado (cabecera inconsistente).");
+        }
+
+        // Código y constantes: copia en bloque desde la vista de enteros
+        buffer.position(HEADER_SIZE);
+        IntBuffer ints = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        int[] code = new int[codeLength];
+        int[] initialIntRegisters = new int[intRegisterCount];
+        ints.get(code).get(initialIntRegisters);
+
+        buffer.position(stringTableOffset);
+        String[] initialStringRegisters = getTable(buffer, stringRegisterCount);
+        buffer.position(symbolTableOffset);
+        String[] intRegisterNames = getTable(buffer, intRegisterCount);
+        String[] stringRegisterNames = getTable(buffer, stringRegisterCount);
+
+        verify(code, intRegisterCount, stringRegisterCount);
+        return new VmProgram(code, initialIntRegisters, initialStringRegisters, intRegisterNames, stringRegisterNames);
+    }
+
+    // La VM no comprueba límites al ejecutar: un archivo alterado se rechaza aquí
+    private static void verify(int[] code, int intRegisterCount, int stringRegisterCount) throws IOException {
+        if (code.length % VmProgram.WIDTH != 0 || code.length == 0 || code[code.length - VmProgram.WIDTH] != VmProgram.HALT) {
+            throw new IOException("Archivo de código intermedio dañado (código incompleto).");
+        }
+        for (int pc = 0; pc < code.length; pc += VmProgram.WIDTH) {
+            int op = code[pc];
+            if (op < 0 || op >= VmProgram.OPCODE_NAMES.length) {
+                throw new IOException("Opcode inválido " + op + " en la instrucción " + pc / VmProgram.WIDTH + ".");
+            }
+            boolean ok;
+            switch (op) {
+                case VmProgram.HALT:
+                    ok = true;
+                    break;
+                case VmProgram.JMP:
+                    ok = isJumpTarget(code[pc + 1], code.length);
+                    break;
+                case VmProgram.MOV:
+                    ok = inRange(code[pc + 1], intRegisterCount) && inRange(code[pc + 2], intRegisterCount);
+                    break;
+                case VmProgram.PRINT_INT:
+                    ok = inRange(code[pc + 1], intRegisterCount);
+                    break;
+                case VmProgram.PRINT_STR: case VmProgram.READ_STR:
+                    ok = inRange(code[pc + 1], stringRegisterCount);
+                    break;
+                case VmProgram.SMOV:
+                    ok = inRange(code[pc + 1], stringRegisterCount) && inRange(code[pc + 2], stringRegisterCount);
+                    break;
+                case VmProgram.SCONCAT:
+                    ok = inRange(code[pc + 1], stringRegisterCount) && inRange(code[pc + 2], stringRegisterCount)
+                            && inRange(code[pc + 3], stringRegisterCount);
+                    break;
+                default:
+                    if (op >= VmProgram.SJLT) {
+                        ok = inRange(code[pc + 1], stringRegisterCount) && inRange(code[pc + 2], stringRegisterCount)
+                                && isJumpTarget(code[pc + 3], code.length);
+                    } else if (op >= VmProgram.JLT) {
+                        ok = inRange(code[pc + 1], intRegisterCount) && inRange(code[pc + 2], intRegisterCount)
+                                && isJumpTarget(code[pc + 3], code.length);
+                    } else { // ADD, SUB, MUL, DIV, SHL
+                        ok = inRange(code[pc + 1], intRegisterCount) && inRange(code[pc + 2], intRegisterCount)
+                                && inRange(code[pc + 3], intRegisterCount);
+                    }
+                    break;
+            }
+            if (!ok) {
+                throw new IOException("Operando fuera de rango en la instrucción " + pc / VmProgram.WIDTH + ".");
+            }
+        }
+    }
+
+    private static boolean inRange(int register, int count) {
+        return register >= 0 && register < count;
+    }
+
+    private static boolean isJumpTarget(int target, int codeLength) {
+        return target >= 0 && target < codeLength && target % VmProgram.WIDTH == 0;
+    }
+
+    private static byte[][] utf8(String[] values) {
+        byte[][] encoded = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            encoded[i] = values[i].getBytes(StandardCharsets.UTF_8);
+        }
+        return encoded;
+    }
+
+    private static int tableSize(byte[][] entries) {
+        int size = 0;
+        for (byte[] entry : entries) {
+            size += 4 + entry.length;
+        }
+        return size;
+    }
+
+    private static void putTable(ByteBuffer buffer, byte[][] entries) {
+        for (byte[] entry : entries) {
+            buffer.putInt(entry.length);
+            buffer.put(entry);
+        }
+    }
+
+    private static String[] getTable(ByteBuffer buffer, int count) throws IOException {
+        String[] values = new String[count];
+        for (int i = 0; i < count; i++) {
+            if (buffer.remaining() < 4) {
+                throw new IOException("Archivo de código intermedio dañado (tabla truncada).");
+            }
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                throw new IOException("Archivo de código intermedio dañado (tabla truncada).");
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            values[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return values;
+    }
+}
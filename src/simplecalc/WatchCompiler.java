@@ -0,0 +1,200 @@
+package simplecalc;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Modo vigilancia del BatchCompiler: registra el directorio de fuentes (y sus
+ * subdirectorios, que WatchService no recorre solo) y, cada vez que algo cambia, recompila
+ * sólo los archivos afectados con el mismo BatchCompiler (y su CompilerPipeline).
+ *
+ * Los eventos se agrupan: un guardado suele producir varios (crear, escribir, renombrar el
+ * temporal del editor), así que se espera a que pasen DEBOUNCE_MILLIS sin eventos nuevos y
+ * se compila cada archivo una sola vez. Se escriben sólo las salidas de esos archivos (o se
+ * borra la de un archivo eliminado, la de cada archivo de un directorio eliminado o la de uno
+ * que dejó de compilar) y se imprimen sus diagnósticos; el reporte completo, si se pidió, se
+ * reescribe desde los resultados en memoria. Sólo se vuelve a recorrer todo el directorio si
+ * el sistema avisa que perdió eventos (OVERFLOW).
+ */
+public class WatchCompiler {
+
+    private static final long DEBOUNCE_MILLIS = 200;
+
+    private final BatchCompiler compiler;
+    private final Path reportFile; // null: sin reporte en archivo
+    private final PrintStream out;
+    private final Map<Path, BatchCompiler.FileReport> reports = new TreeMap<>(); // Orden de ruta, como compileAll
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+
+    public WatchCompiler(BatchCompiler compiler, List<BatchCompiler.FileReport> initialReports, Path reportFile, PrintStream out) {
+        this.compiler = compiler;
+        this.reportFile = reportFile;
+        this.out = out;
+        for (BatchCompiler.FileReport report : initialReports) {
+            reports.put(report.file, report);
+        }
+    }
+
+    // Vigila hasta que se interrumpe el hilo
+    public void run() throws IOException, InterruptedException {
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            registerTree(watcher, compiler.getSourceDirectory());
+            out.println("Vigilando " + compiler.getSourceDirectory().toAbsolutePath() + " (Ctrl+C para terminar)");
+            while (true) {
+                Set<Path> changed = new LinkedHashSet<>();
+                boolean overflow = collect(watcher, watcher.take(), changed);
+                // Debounce: se siguen juntando eventos hasta un intervalo sin ninguno
+                WatchKey key;
+                while ((key = watcher.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    overflow |= collect(watcher, key, changed);
+                }
+                if (overflow) {
+                    rescan(watcher);
+                } else if (!changed.isEmpty()) {
+                    recompile(changed);
+                }
+            }
+        }
+    }
+
+    // Anota los archivos de un WatchKey y registra los subdirectorios nuevos; true si hubo OVERFLOW
+    private boolean collect(WatchService watcher, WatchKey key, Set<Path> changed) throws IOException {
+        Path directory = watchedDirectories.get(key);
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+            Path path = directory.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                try {
+                    registerTree(watcher, path);
+                    // Lo que se copió dentro antes de registrarlo no generó eventos
+                    try (Stream<Path> walk = Files.walk(path)) {
+                        walk.filter(Files::isRegularFile).forEach(changed::add);
+                    }
+                } catch (NoSuchFileException e) {
+                    // Se borró (o se movió) antes de recorrerlo: lo que alcanzó a anotarse se revisa igual
+                } catch (UncheckedIOException e) {
+                    if (!(e.getCause() instanceof NoSuchFileException)) {
+                        throw e;
+                    }
+                }
+            } else {
+                changed.add(path);
+            }
+        }
+        if (!key.reset()) {
+            watchedDirectories.remove(key); // Directorio borrado
+        }
+        return overflow;
+    }
+
+    private void registerTree(WatchService watcher, Path root) throws IOException {
+        try (Stream<Path> walk = Files.walk(root)) {
+            for (Path directory : walk.filter(Files::isDirectory).collect(Collectors.toList())) {
+                WatchKey key = directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                                                  StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                watchedDirectories.put(key, directory);
+            }
+        }
+    }
+
+    private void recompile(Set<Path> changed) throws IOException {
+        long start = System.nanoTime();
+        List<Path> toCompile = new ArrayList<>();
+        for (Path path : changed) {
+            if (!Files.exists(path)) {
+                removeDeleted(path);
+            } else if (Files.isRegularFile(path) && compiler.isSourceFile(path)) {
+                toCompile.add(path);
+            }
+        }
+        for (BatchCompiler.FileReport report : compiler.compileFiles(toCompile)) {
+            reports.put(report.file, report);
+            if (!report.successful) {
+                deleteOutput(report.file); // Una salida vieja ya no corresponde al fuente
+            }
+            out.printf("%-7s %s  (%.2f ms)%n", report.successful ? "OK" : "ERROR",
+                       compiler.getSourceDirectory().relativize(report.file), report.nanos / 1e6);
+            for (String diagnostic : report.diagnostics) {
+                out.println("        " + diagnostic);
+            }
+        }
+        writeReport(System.nanoTime() - start);
+    }
+
+    // Se perdieron eventos: no se sabe qué cambió, así que se vuelve a compilar todo
+    private void rescan(WatchService watcher) throws IOException {
+        out.println("Se perdieron eventos del sistema de archivos; recompilando todo el directorio.");
+        registerTree(watcher, compiler.getSourceDirectory()); // Volver a registrar un directorio ya vigilado no duplica la clave
+        long start = System.nanoTime();
+        List<BatchCompiler.FileReport> all = compiler.compileAll();
+        for (Path removed : new ArrayList<>(reports.keySet())) {
+            if (!Files.exists(removed)) {
+                deleteOutput(removed);
+            }
+        }
+        reports.clear();
+        for (BatchCompiler.FileReport report : all) {
+            reports.put(report.file, report);
+        }
+        long wallNanos = System.nanoTime() - start;
+        if (reportFile == null) {
+            compiler.printReport(all, wallNanos, out);
+        }
+        writeReport(wallNanos);
+    }
+
+    // Un archivo borrado, o todos los que estaban dentro de un directorio borrado (su evento
+    // ENTRY_DELETE es el único que llega: los de su contenido no)
+    private void removeDeleted(Path path) throws IOException {
+        Iterator<Path> files = reports.keySet().iterator();
+        while (files.hasNext()) {
+            Path file = files.next();
+            if (file.startsWith(path)) {
+                files.remove();
+                deleteOutput(file);
+                out.println("BORRADO " + compiler.getSourceDirectory().relativize(file));
+            }
+        }
+    }
+
+    private void deleteOutput(Path file) throws IOException {
+        Path output = compiler.outputFile(file);
+        if (output != null) {
+            Files.deleteIfExists(output);
+        }
+    }
+
+    private void writeReport(long wallNanos) throws IOException {
+        if (reportFile == null) {
+            return;
+        }
+        try (PrintStream report = new PrintStream(Files.newOutputStream(reportFile), false, StandardCharsets.UTF_8)) {
+            compiler.printReport(new ArrayList<>(reports.values()), wallNanos, report);
+        }
+    }
+}